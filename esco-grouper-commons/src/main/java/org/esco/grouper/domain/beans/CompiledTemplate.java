@@ -0,0 +1,204 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package org.esco.grouper.domain.beans;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Template compiled into a list of segments: literal strings and slots
+ * for the registered template elements.
+ * The evaluation is performed in a single pass, without regular expressions,
+ * so the values may contain any character (including <code>$</code> and <code>\</code>).
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public final class CompiledTemplate implements Serializable {
+
+    /** Serial version UID.*/
+    private static final long serialVersionUID = 6062357218437911538L;
+
+    /** Separator for the template elements. */
+    private static final char SEPARATOR = '%';
+
+    /** Index used for the literal segments. */
+    private static final int LITERAL = -1;
+
+    /** Capacity above which the builder of a thread is not kept. */
+    private static final int MAX_KEPT_CAPACITY = 4096;
+
+    /** The builders reused by each thread. */
+    private static final ThreadLocal<StringBuilder> BUILDERS = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder();
+        }
+    };
+
+    /** The source string of the template. */
+    private final String source;
+
+    /** The text of the segments: the literal value or the key of the template element. */
+    private final String[] segments;
+
+    /** The index of the template element for each segment, or LITERAL for the literal segments. */
+    private final int[] elementIndexes;
+
+    /** Length of the literal segments. */
+    private final int literalsLength;
+
+    /** Flag for the templates which contain at least one template element. */
+    private final boolean withSlots;
+
+    /**
+     * Builds an instance of CompiledTemplate.
+     * @param source The source string.
+     * @param segments The segments.
+     * @param elementIndexes The indexes of the template elements for each segment.
+     * @param literalsLength The length of the literal segments.
+     */
+    private CompiledTemplate(final String source,
+            final String[] segments,
+            final int[] elementIndexes,
+            final int literalsLength) {
+        this.source = source;
+        this.segments = segments;
+        this.elementIndexes = elementIndexes;
+        this.literalsLength = literalsLength;
+        boolean slotFound = false;
+        for (int i = 0; i < elementIndexes.length && !slotFound; i++) {
+            slotFound = elementIndexes[i] != LITERAL;
+        }
+        this.withSlots = slotFound;
+    }
+
+    /**
+     * Compiles a template against the registered template elements.
+     * When several template elements match at the same position, the first registered
+     * one is used.
+     * @param src The source string.
+     * @return The compiled template.
+     */
+    public static CompiledTemplate compile(final String src) {
+        final List<String> segments = new ArrayList<String>();
+        final List<Integer> indexes = new ArrayList<Integer>();
+        final int nbElements = TemplateElement.countAvailableTemplateElements();
+        int literalsLength = 0;
+        int literalStart = 0;
+        int pos = src.indexOf(SEPARATOR);
+
+        while (pos >= 0) {
+            int matched = LITERAL;
+            String matchedKey = null;
+            for (int i = 0; i < nbElements && matched == LITERAL; i++) {
+                final String key = TemplateElement.getAvailableTemplateElement(i).toString();
+                if (src.startsWith(key, pos)) {
+                    matched = i;
+                    matchedKey = key;
+                }
+            }
+
+            if (matched == LITERAL) {
+                pos = src.indexOf(SEPARATOR, pos + 1);
+            } else {
+                if (pos > literalStart) {
+                    segments.add(src.substring(literalStart, pos));
+                    indexes.add(LITERAL);
+                    literalsLength += pos - literalStart;
+                }
+                segments.add(matchedKey);
+                indexes.add(matched);
+                literalStart = pos + matchedKey.length();
+                pos = src.indexOf(SEPARATOR, literalStart);
+            }
+        }
+
+        if (literalStart < src.length()) {
+            segments.add(src.substring(literalStart));
+            indexes.add(LITERAL);
+            literalsLength += src.length() - literalStart;
+        }
+
+        final int[] elementIndexes = new int[indexes.size()];
+        for (int i = 0; i < elementIndexes.length; i++) {
+            elementIndexes[i] = indexes.get(i);
+        }
+        return new CompiledTemplate(src, segments.toArray(new String[segments.size()]),
+                elementIndexes, literalsLength);
+    }
+
+    /**
+     * Evaluates the template.
+     * The values are given in the same order than the registered template elements.
+     * If a value is empty and the template element has a default value, the default
+     * value is used. The template elements without value are kept unchanged.
+     * @param values The values used to evaluate the template elements.
+     * @return The evaluated string.
+     */
+    public String evaluate(final String...values) {
+        if (!withSlots) {
+            return source;
+        }
+
+        StringBuilder builder = BUILDERS.get();
+        if (builder.capacity() > MAX_KEPT_CAPACITY) {
+            builder = new StringBuilder(literalsLength);
+            BUILDERS.set(builder);
+        }
+        builder.setLength(0);
+
+        for (int i = 0; i < segments.length; i++) {
+            final int index = elementIndexes[i];
+            if (index == LITERAL || index >= values.length) {
+                builder.append(segments[i]);
+            } else {
+                builder.append(TemplateElement.getAvailableTemplateElement(index).checkValue(values[index]));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Tests if the template contains at least one template element.
+     * @return True if there is at least one slot for a template element.
+     */
+    public boolean hasSlots() {
+        return withSlots;
+    }
+
+    /**
+     * Gives the source string of the template.
+     * @return The source string.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Gives the string representation of the template.
+     * @return The source string.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return source;
+    }
+}
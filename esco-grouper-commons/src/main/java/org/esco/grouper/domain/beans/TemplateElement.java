@@ -130,7 +130,7 @@ public class TemplateElement {
      * @return The new string. 
      */
     public String replace(final String src, final String replacement) {
-        return src.replaceAll(key, replacement);
+        return src.replace(key, replacement);
     }
     
     /**
@@ -234,19 +234,32 @@ public class TemplateElement {
      * @return The String with the  keys replaces by values.
      */
     public String evaluate(final int testedMask, final String src, final String value) {
-        String checkedValue = value;
-        if ("".equals(value) && hasDefaultValue()) {
-            checkedValue = defaultValue;
-        }
-        
         if (hasFlag(testedMask)) {
-            return replace(src, checkedValue);
+            return replace(src, checkValue(value));
         }
         return src;
     }
     
+    /**
+     * Gives the value to use in replacement of the key.
+     * @param value The value to check.
+     * @return The default value if the value is empty and the template element
+     * has a default value, the value otherwise.
+     */
+    String checkValue(final String value) {
+        if (value == null || "".equals(value)) {
+            if (hasDefaultValue()) {
+                return defaultValue;
+            }
+            return "";
+        }
+        return value;
+    }
+    
     /**
      * Evaluates a source string for alla the available Template elements.
+     * The source string is compiled for each call: the strings evaluated several times
+     * should be compiled once with {@link CompiledTemplate#compile(String)}.
      * @param testedMask The mask associated to the source string.
      * @param src The source string.
      * @param values The values used to evaluates the template elements.
@@ -255,11 +268,10 @@ public class TemplateElement {
      */
     public static String evaluate(final int testedMask, final String src,
             final String...values) {
-        String evaluated = src;
-        for (int i = 0; i < Math.min(availableTemplateElements.size(), values.length); i++) {
-            evaluated = availableTemplateElements.get(i).evaluate(testedMask, evaluated, values[i]);
+        if (testedMask == 0) {
+            return src;
         }
-        return evaluated;
+        return CompiledTemplate.compile(src).evaluate(values);
     }
     
     /**
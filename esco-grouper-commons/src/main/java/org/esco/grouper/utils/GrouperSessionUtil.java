@@ -18,9 +18,17 @@
  */
 package org.esco.grouper.utils;
 
+import java.lang.management.ManagementFactory;
 import java.text.DateFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.grouper.MemberFinder;
 import edu.internet2.middleware.grouper.exception.SessionException;
 import edu.internet2.middleware.subject.SubjectNotFoundException;
 import edu.internet2.middleware.subject.SubjectNotUniqueException;
@@ -28,21 +36,68 @@ import org.apache.log4j.Logger;
 import org.esco.grouper.exceptions.EscoGrouperException;
 /**
  * Util class used to handle the grouper sessions.
+ * If the reuse of the sessions is enabled, a session is bound to each thread which allows it
+ * (see {@link #reuseSessionsInCurrentThread()}) and reused by the successive calls of createSession
+ * until it is too old or no more valid. The validity of a reused session is checked against Grouper
+ * at most once per health check period. The other threads use one session by call.
+ * The counters of the sessions are registered as the JMX bean org.esco.grouper:type=GrouperSessionUtil.
  * @author GIP RECIA - A. Deman
  * 28 juil. 08
  *
  */
-public class GrouperSessionUtil{
+public class GrouperSessionUtil implements GrouperSessionUtilMBean {
 
     /** Logger. */
     private static final Logger LOGGER = Logger.getLogger(GrouperSessionUtil.class);
 
+    /** Default max age of a reused session: 10 minutes. */
+    private static final long DEFAULT_SESSION_MAX_AGE = 10 * 60 * 1000;
+
+    /** Default period of the checks of the validity of a reused session: 30 seconds. */
+    private static final long DEFAULT_HEALTH_CHECK_PERIOD = 30;
+
     private static final DateFormat df = DateFormat.getDateTimeInstance(DateFormat.LONG,
                            DateFormat.LONG);
 
     /** Subject id used to open the sessions. */
     private String subjectId;
 
+    /** Flag used to reuse the session bound to the current thread. */
+    private boolean reuseSessions;
+
+    /** Max age of a reused session (in milliseconds). */
+    private long sessionMaxAge = DEFAULT_SESSION_MAX_AGE;
+
+    /** Period of the checks of the validity of a reused session against Grouper (in seconds). */
+    private long healthCheckPeriod = DEFAULT_HEALTH_CHECK_PERIOD;
+
+    /** Name of the JMX bean. */
+    private static final String JMX_NAME = "org.esco.grouper:type=GrouperSessionUtil";
+
+    /** The sessions bound to the threads which allow the reuse of the sessions. */
+    private final ThreadLocal<ThreadSession> threadSessions = new ThreadLocal<ThreadSession>();
+
+    /** Number of sessions started. */
+    private final AtomicLong createdSessionsCount = new AtomicLong();
+
+    /** Number of sessions reused. */
+    private final AtomicLong reusedSessionsCount = new AtomicLong();
+
+    /** Number of reused sessions discarded because they were too old or not valid. */
+    private final AtomicLong discardedSessionsCount = new AtomicLong();
+
+    /**
+     * Holder of the session reused by a thread.
+     */
+    private static final class ThreadSession {
+
+        /** The session, null if no session has been started yet. */
+        private GrouperSession session;
+
+        /** The time of the last check of the validity of the session (in milliseconds). */
+        private long lastCheck;
+    }
+
     /**
      * Builds an instance of GrouperSessionUtil.
      */
@@ -58,14 +113,80 @@ public class GrouperSessionUtil{
         this.subjectId = subjectId;
     }
 
+    /**
+     * Registers the counters of the sessions in JMX.
+     */
+    @PostConstruct
+    public void afterPropertiesSet() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(JMX_NAME);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register the JMX bean " + JMX_NAME + ".", e);
+        }
+    }
+
+    /**
+     * Allows the reuse of the sessions in the current thread, if the reuse of the sessions
+     * is enabled. The thread must call {@link #releaseSession()} before it ends:
+     * this is intended for the threads owned by the application (e.g. the workers of
+     * the synchronizations), not for the threads of the container.
+     */
+    public void reuseSessionsInCurrentThread() {
+        if (reuseSessions && threadSessions.get() == null) {
+            threadSessions.set(new ThreadSession());
+        }
+    }
+
     /**
      * Creates a Grouper session instance.
+     * If the current thread allows the reuse of the sessions, the session bound to this thread
+     * is returned if it is still valid.
      * @return The session object.
      */
     public GrouperSession createSession() {
+        final ThreadSession threadSession = threadSessions.get();
+        if (!reuseSessions || threadSession == null) {
+            return startSession();
+        }
+
+        final GrouperSession current = threadSession.session;
+        if (current != null) {
+            final long now = System.currentTimeMillis();
+            final boolean healthCheck = now - threadSession.lastCheck >= healthCheckPeriod * 1000;
+            if (isReusable(current, healthCheck)) {
+                if (healthCheck) {
+                    threadSession.lastCheck = now;
+                }
+                reusedSessionsCount.incrementAndGet();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Reusing the session: " + current.getSessionId());
+                }
+                return current;
+            }
+            discardedSessionsCount.incrementAndGet();
+            threadSession.session = null;
+            closeSession(current);
+        }
+
+        threadSession.session = startSession();
+        threadSession.lastCheck = System.currentTimeMillis();
+        return threadSession.session;
+    }
+
+    /**
+     * Starts a new Grouper session.
+     * @return The session object.
+     */
+    protected GrouperSession startSession() {
 
         try {
             final GrouperSession session = GrouperSession.startBySubjectIdAndSource(subjectId, null);
+            createdSessionsCount.incrementAndGet();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Starting a new session: " + session.getSessionId());
             }
@@ -83,11 +204,73 @@ public class GrouperSessionUtil{
         }
     }
 
+    /**
+     * Checks that a session bound to the current thread can be reused.
+     * The member of the session is retrieved from Grouper to check that the session is still usable,
+     * unless this health check has already been done during the health check period.
+     * @param session The session to check.
+     * @param healthCheck True if the session has to be checked against Grouper.
+     * @return True if the session is not too old and is still valid.
+     */
+    protected boolean isReusable(final GrouperSession session, final boolean healthCheck) {
+        try {
+            final long age = System.currentTimeMillis() - session.getStartTime().getTime();
+            if (age > sessionMaxAge) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("The session " + session.getSessionId() + " is too old to be reused.");
+                }
+                return false;
+            }
+            if (session.getSessionId() == null || session.getMemberUuid() == null) {
+                return false;
+            }
+            if (!healthCheck) {
+                return true;
+            }
+            return MemberFinder.findByUuid(session, session.getMemberUuid(), false) != null;
+        } catch (RuntimeException e) {
+            LOGGER.warn("The session can't be reused: " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Closes a grouper session.
+     * If the session is the one bound to the current thread, it is kept open
+     * so it can be reused.
      * @param session The session to close.
      */
     public void stopSession(final GrouperSession session) {
+        final ThreadSession threadSession = threadSessions.get();
+        if (threadSession != null && session == threadSession.session) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Keeping the session : " + session.getSessionId() + " for reuse.");
+            }
+            return;
+        }
+        closeSession(session);
+    }
+
+    /**
+     * Closes the session bound to the current thread, if any, and ends the reuse
+     * of the sessions in this thread.
+     * This method must be called before a thread which allows the reuse of the sessions ends.
+     */
+    public void releaseSession() {
+        final ThreadSession threadSession = threadSessions.get();
+        if (threadSession != null) {
+            threadSessions.remove();
+            if (threadSession.session != null) {
+                closeSession(threadSession.session);
+            }
+        }
+    }
+
+    /**
+     * Stops a grouper session.
+     * @param session The session to stop.
+     */
+    private void closeSession(final GrouperSession session) {
         try {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Stopping the session : " + session.getSessionId() + ", that were started at :" + df.format(session.getStartTime()));
@@ -98,6 +281,33 @@ public class GrouperSessionUtil{
         }
     }
 
+    /**
+     * Gives the number of sessions started.
+     * @return The number of sessions started.
+     * @see org.esco.grouper.utils.GrouperSessionUtilMBean#getCreatedSessionsCount()
+     */
+    public long getCreatedSessionsCount() {
+        return createdSessionsCount.get();
+    }
+
+    /**
+     * Gives the number of times a session has been reused.
+     * @return The number of sessions reused.
+     * @see org.esco.grouper.utils.GrouperSessionUtilMBean#getReusedSessionsCount()
+     */
+    public long getReusedSessionsCount() {
+        return reusedSessionsCount.get();
+    }
+
+    /**
+     * Gives the number of reused sessions discarded because they were too old or not valid.
+     * @return The number of sessions discarded.
+     * @see org.esco.grouper.utils.GrouperSessionUtilMBean#getDiscardedSessionsCount()
+     */
+    public long getDiscardedSessionsCount() {
+        return discardedSessionsCount.get();
+    }
+
     /**
      * Getter for subjectId.
      * @return subjectId.
@@ -113,4 +323,53 @@ public class GrouperSessionUtil{
     public void setSubjectId(final String subjectId) {
         this.subjectId = subjectId;
     }
+
+    /**
+     * Getter for reuseSessions.
+     * @return reuseSessions.
+     * @see org.esco.grouper.utils.GrouperSessionUtilMBean#getReuseSessions()
+     */
+    public boolean getReuseSessions() {
+        return reuseSessions;
+    }
+
+    /**
+     * Setter for reuseSessions.
+     * @param reuseSessions the new value for reuseSessions.
+     */
+    public void setReuseSessions(final boolean reuseSessions) {
+        this.reuseSessions = reuseSessions;
+    }
+
+    /**
+     * Getter for sessionMaxAge.
+     * @return sessionMaxAge.
+     */
+    public long getSessionMaxAge() {
+        return sessionMaxAge;
+    }
+
+    /**
+     * Setter for sessionMaxAge.
+     * @param sessionMaxAge the new value for sessionMaxAge (in milliseconds).
+     */
+    public void setSessionMaxAge(final long sessionMaxAge) {
+        this.sessionMaxAge = sessionMaxAge;
+    }
+
+    /**
+     * Getter for healthCheckPeriod.
+     * @return healthCheckPeriod.
+     */
+    public long getHealthCheckPeriod() {
+        return healthCheckPeriod;
+    }
+
+    /**
+     * Setter for healthCheckPeriod.
+     * @param healthCheckPeriod the new value for healthCheckPeriod (in seconds).
+     */
+    public void setHealthCheckPeriod(final long healthCheckPeriod) {
+        this.healthCheckPeriod = healthCheckPeriod;
+    }
 }
@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.utils;
+
+/**
+ * JMX interface for the counters of the Grouper sessions.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public interface GrouperSessionUtilMBean {
+
+    /**
+     * Gives the number of sessions started.
+     * @return The number of sessions started.
+     */
+    long getCreatedSessionsCount();
+
+    /**
+     * Gives the number of times a session has been reused.
+     * @return The number of sessions reused.
+     */
+    long getReusedSessionsCount();
+
+    /**
+     * Gives the number of reused sessions discarded because they were too old or not valid.
+     * @return The number of sessions discarded.
+     */
+    long getDiscardedSessionsCount();
+
+    /**
+     * Tests if the sessions are reused by the threads which allow it.
+     * @return True if the sessions are reused.
+     */
+    boolean getReuseSessions();
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.cache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.esco.grouper.domain.beans.PersonType;
+
+/**
+ * Key of the memberships caches: a type of person and the values of the
+ * template elements for this person.
+ * The hash value is computed once. The keys used to probe the caches are reused
+ * (see {@link #reset(PersonType, String[])}), so a lookup does not build any key.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public final class MembershipsCacheKey implements Serializable {
+
+    /** Serial version UID.*/
+    private static final long serialVersionUID = -6301447592848260172L;
+
+    /** Ordinal of the type of person. */
+    private int typeOrdinal;
+
+    /** The values of the template elements. */
+    private String[] attributes;
+
+    /** The hash value. */
+    private int hash;
+
+    /**
+     * Builds an instance of MembershipsCacheKey.
+     */
+    MembershipsCacheKey() {
+        super();
+    }
+
+    /**
+     * Builds a key which can be stored in a cache: the values are copied.
+     * @param type The type of person.
+     * @param attributes The values of the template elements.
+     * @return The key.
+     */
+    static MembershipsCacheKey of(final PersonType type, final String...attributes) {
+        return new MembershipsCacheKey().reset(type, attributes.clone());
+    }
+
+    /**
+     * Reuses this instance for another type and values.
+     * The values are not copied, so this method must only be used for the keys
+     * used to probe a cache.
+     * @param type The type of person.
+     * @param values The values of the template elements.
+     * @return This instance.
+     */
+    MembershipsCacheKey reset(final PersonType type, final String[] values) {
+        final int mult = 31;
+        this.typeOrdinal = type.ordinal();
+        this.attributes = values;
+        this.hash = mult * typeOrdinal + Arrays.hashCode(values);
+        return this;
+    }
+
+    /**
+     * Gives the type of person.
+     * @return The type of person.
+     */
+    PersonType getType() {
+        return PersonType.values()[typeOrdinal];
+    }
+
+    /**
+     * Gives the values of the template elements.
+     * @return The values (must not be modified).
+     */
+    String[] getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Gives the hash value of this key.
+     * @return The hash value.
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Tests if an object is equal to this key.
+     * @param obj The object to test.
+     * @return True if the object is equal to this key.
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MembershipsCacheKey)) {
+            return false;
+        }
+        final MembershipsCacheKey other = (MembershipsCacheKey) obj;
+        return hash == other.hash
+            && typeOrdinal == other.typeOrdinal
+            && Arrays.equals(attributes, other.attributes);
+    }
+
+    /**
+     * Gives the string representation of this key.
+     * @return The string that represents this key.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return PersonType.values()[typeOrdinal] + Arrays.toString(attributes);
+    }
+}
@@ -17,13 +17,25 @@ package org.esco.grouper.cache;
 
 
 
-import java.util.Arrays;
-import java.util.Set;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import org.apache.log4j.Logger;
 import org.esco.grouper.domain.beans.GroupOrFolderDefinition;
+import org.esco.grouper.domain.beans.GroupOrStem;
 import org.esco.grouper.domain.beans.PersonType;
 
 
@@ -36,6 +48,29 @@ import org.esco.grouper.domain.beans.PersonType;
  */
 public class SGSCache {
 
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(SGSCache.class);
+
+    /** Region of the memberships. */
+    public static final String MEMBERSHIPS_REGION = "memberships";
+
+    /** Region of the memberships for groups defined as template. */
+    public static final String MEMBERSHIPS_FOR_TEMPLATES_REGION = "memberships-for-templates";
+
+    /** Region of the templates which are created even if they are empty. */
+    public static final String EMPTY_TEMPLATES_REGION = "empty-templates";
+
+    /** Region of the flags for the groups memberships. */
+    public static final String GROUPS_MEMBERSHIPS_REGION = "gof-memberships";
+
+    /** Region of the flags for the groups privileges. */
+    public static final String GROUPS_PRIVILEGES_REGION = "gof-privileges";
+
+    /** Region of the uuids of the groups or folders resolved from their paths. */
+    public static final String RESOLUTIONS_REGION = "resolutions";
+
+    /** Domain of the JMX names of the regions. */
+    private static final String JMX_DOMAIN = "org.esco.grouper";
 
 
     /** Cache name for the memberships. */
@@ -53,9 +88,35 @@ public class SGSCache {
     /** Cache name for the groups or folders privileges. */
     private static final String GROUPS_PRIVILEGES_CACHE_NAME =  SGSCache.class + ".gof-privileges";
 
+    /** Cache name for the groups or folders resolved from their paths. */
+    private static final String RESOLUTIONS_CACHE_NAME =  SGSCache.class + ".resolutions";
+
+    /** Max number of groups or folders resolutions kept in cache. */
+    private static final int RESOLUTIONS_MAX_ENTRIES = 10000;
+
+    /** Time to live of a resolved group or folder (in seconds). */
+    private static final long RESOLUTIONS_TTL = 600;
+
+    /** Time to live of a path which can't be resolved (in seconds). */
+    private static final int NOT_FOUND_RESOLUTIONS_TTL = 60;
+
+    /** Prefix of the keys for the folders resolutions. */
+    private static final String FOLDER_RESOLUTION_PREFIX = "folder:";
+
+    /** Prefix of the keys for the groups resolutions. */
+    private static final String GROUP_RESOLUTION_PREFIX = "group:";
+
     /** Singleton. */
     private static final SGSCache INSTANCE = new SGSCache();
 
+    /** The keys used by each thread to probe the memberships caches. */
+    private static final ThreadLocal<MembershipsCacheKey> PROBE_KEYS = new ThreadLocal<MembershipsCacheKey>() {
+        @Override
+        protected MembershipsCacheKey initialValue() {
+            return new MembershipsCacheKey();
+        }
+    };
+
 
     /** Cache for the memberships. */
     private Cache membershipsCache;
@@ -72,6 +133,12 @@ public class SGSCache {
     /** Cache for the groups privileges. */
     private Cache groupsPrivilegesCache;
 
+    /** Cache for the uuids of the groups or folders resolved from their paths. */
+    private Cache resolutionsCache;
+
+    /** The caches by region name. */
+    private Map<String, Cache> regions = new LinkedHashMap<String, Cache>();
+
 
     /**
      * Builds an instance of SGSCache.
@@ -96,12 +163,130 @@ public class SGSCache {
         if (!cacheManager.cacheExists(GROUPS_PRIVILEGES_CACHE_NAME)) {
             cacheManager.addCache(GROUPS_PRIVILEGES_CACHE_NAME);
         }
+        if (!cacheManager.cacheExists(RESOLUTIONS_CACHE_NAME)) {
+            cacheManager.addCache(new Cache(RESOLUTIONS_CACHE_NAME, RESOLUTIONS_MAX_ENTRIES,
+                    false, false, RESOLUTIONS_TTL, 0));
+        }
 
         membershipsCache = cacheManager.getCache(MEMBERSHIPS_CACHE_NAME);
         membershipsTemplatesCache = cacheManager.getCache(MEMBERSHIPS_FOR_TEMPLATES_CACHE_NAME);
         emptyTemplatesCache = cacheManager.getCache(EMPTY_TEMPLATES_CACHE_NAME);
         groupsMembershipsCache = cacheManager.getCache(GROUPS_MEMBERSHIPS_CACHE_NAME);
         groupsPrivilegesCache = cacheManager.getCache(GROUPS_PRIVILEGES_CACHE_NAME);
+        resolutionsCache = cacheManager.getCache(RESOLUTIONS_CACHE_NAME);
+
+        regions.put(MEMBERSHIPS_REGION, membershipsCache);
+        regions.put(MEMBERSHIPS_FOR_TEMPLATES_REGION, membershipsTemplatesCache);
+        regions.put(EMPTY_TEMPLATES_REGION, emptyTemplatesCache);
+        regions.put(GROUPS_MEMBERSHIPS_REGION, groupsMembershipsCache);
+        regions.put(GROUPS_PRIVILEGES_REGION, groupsPrivilegesCache);
+        regions.put(RESOLUTIONS_REGION, resolutionsCache);
+        regions = Collections.unmodifiableMap(regions);
+
+        for (Map.Entry<String, Cache> region : regions.entrySet()) {
+            region.getValue().setStatisticsEnabled(true);
+            registerMBean(region.getKey(), region.getValue());
+        }
+    }
+
+    /**
+     * Registers the JMX bean which exposes the statistics of a region.
+     * A bean already registered with the same name (e.g. after a redeployment) is replaced.
+     * @param region The name of the region.
+     * @param cache The cache of the region.
+     */
+    private void registerMBean(final String region, final Cache cache) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(JMX_DOMAIN + ":type=SGSCache,region=" + region);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new SGSCacheRegionStatistics(region, cache), name);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register the JMX statistics for the cache region " + region + ".", e);
+        }
+    }
+
+    /**
+     * Gives the names of the regions of the cache.
+     * @return The names of the regions.
+     */
+    public Iterable<String> getRegions() {
+        return regions.keySet();
+    }
+
+    /**
+     * Configures a region of the cache.
+     * The parameters which are null are not modified.
+     * @param region The name of the region.
+     * @param maxEntries The maximal number of entries.
+     * @param timeToLive The time to live of the entries, in seconds (0 for no limit).
+     * @param timeToIdle The time to idle of the entries, in seconds (0 for no limit).
+     * @param evictionPolicy The eviction policy (LRU, LFU or FIFO).
+     * @throws IllegalArgumentException If the region or one of the values is not valid.
+     */
+    public void configureRegion(final String region,
+            final Integer maxEntries,
+            final Long timeToLive,
+            final Long timeToIdle,
+            final String evictionPolicy) {
+        final Cache cache = regions.get(region);
+        if (cache == null) {
+            throw new IllegalArgumentException("Unknown cache region: " + region
+                    + " - Legal values are: " + regions.keySet() + ".");
+        }
+        final CacheConfiguration configuration = cache.getCacheConfiguration();
+        if (maxEntries != null) {
+            if (maxEntries < 0) {
+                throw new IllegalArgumentException("Invalid max entries for the cache region "
+                        + region + ": " + maxEntries + ".");
+            }
+            configuration.setMaxElementsInMemory(maxEntries);
+        }
+        if (timeToLive != null) {
+            if (timeToLive < 0) {
+                throw new IllegalArgumentException("Invalid time to live for the cache region "
+                        + region + ": " + timeToLive + ".");
+            }
+            configuration.setEternal(false);
+            configuration.setTimeToLiveSeconds(timeToLive);
+        }
+        if (timeToIdle != null) {
+            if (timeToIdle < 0) {
+                throw new IllegalArgumentException("Invalid time to idle for the cache region "
+                        + region + ": " + timeToIdle + ".");
+            }
+            configuration.setEternal(false);
+            configuration.setTimeToIdleSeconds(timeToIdle);
+        }
+        if (evictionPolicy != null) {
+            final MemoryStoreEvictionPolicy policy = MemoryStoreEvictionPolicy.fromString(evictionPolicy);
+            if (!policy.toString().equalsIgnoreCase(evictionPolicy.trim())) {
+                throw new IllegalArgumentException("Invalid eviction policy for the cache region "
+                        + region + ": " + evictionPolicy + " - Legal values are: LRU, LFU, FIFO.");
+            }
+            cache.setMemoryStoreEvictionPolicy(policy);
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Cache region " + region + " configured: max entries="
+                    + configuration.getMaxElementsInMemory()
+                    + ", time to live=" + configuration.getTimeToLiveSeconds()
+                    + "s, time to idle=" + configuration.getTimeToIdleSeconds()
+                    + "s, eviction policy=" + cache.getMemoryStoreEvictionPolicy() + ".");
+        }
+    }
+
+    /**
+     * Removes the cached informations about a group or folder which has been deleted:
+     * the memberships and privileges flags and the empty template flag.
+     * @param path The path of the deleted group or folder.
+     */
+    public void invalidateGroupOrFolder(final String path) {
+        groupsMembershipsCache.remove(path);
+        groupsPrivilegesCache.remove(path);
+        emptyTemplatesCache.remove(path);
     }
 
     /**
@@ -152,66 +337,71 @@ public class SGSCache {
 
     /**
      * Caches the memberships for a given type of member and a set of attributes.
-     * @param definitions The groups definitions.
+     * @param definitions The groups definitions (the array must not be modified once cached).
      * @param type The type of members.
      * @param attributes The list of attributes.
      */
-    public void cacheMemberships(final Set<GroupOrFolderDefinition> definitions,
+    public void cacheMemberships(final GroupOrFolderDefinition[] definitions,
             final PersonType type,
             final String...attributes) {
-        final String key = type + Arrays.toString(attributes);
-        membershipsCache.put(new Element(key, definitions));
+        membershipsCache.put(new Element(MembershipsCacheKey.of(type, attributes), definitions));
     }
 
-
-
     /**
      * Caches the memberships of template groups for a given type of member and a set of attributes.
-     * @param definitions The groups definitions.
+     * @param definitions The groups definitions (the array must not be modified once cached).
      * @param type The type of members.
      * @param attributes The list of attributes.
      */
-    public void cacheMemebrshipsForTemplates(final Set<GroupOrFolderDefinition> definitions,
+    public void cacheMemebrshipsForTemplates(final GroupOrFolderDefinition[] definitions,
             final PersonType type,
             final String...attributes) {
-        final String key = type + Arrays.toString(attributes);
-        membershipsTemplatesCache.put(new Element(key, definitions));
+        membershipsTemplatesCache.put(new Element(MembershipsCacheKey.of(type, attributes), definitions));
     }
 
     /**
      * Tries to retrieve the memberships from the cache.
      * @param type The type of the member.
      * @param attributes The attributes of the member.
-     * @return The memberships if found, null otherwise
+     * @return The memberships if found (the array must not be modified), null otherwise
      */
-    @SuppressWarnings("unchecked")
-    public Set<GroupOrFolderDefinition> getMemberships(final PersonType type,
+    public GroupOrFolderDefinition[] getMemberships(final PersonType type,
             final String...attributes) {
-        final String key = type + Arrays.toString(attributes);
-        final Element elt = membershipsCache.get(key);
-        if (elt != null) {
-
-            return (Set<GroupOrFolderDefinition>) elt.getObjectValue();
-        }
-        return null;
+        return getDefinitions(membershipsCache, type, attributes);
     }
 
     /**
      * Tries to retrieve the memberships for template groups from the cache.
      * @param type The type of the member.
      * @param attributes The attributes of the member.
-     * @return The memberships if found, null otherwise
+     * @return The memberships if found (the array must not be modified), null otherwise
      */
-    @SuppressWarnings("unchecked")
-    public Set<GroupOrFolderDefinition> getMembershipsForTemplates(final PersonType type,
+    public GroupOrFolderDefinition[] getMembershipsForTemplates(final PersonType type,
             final String...attributes) {
-        final String key = type + Arrays.toString(attributes);
-        final Element elt = membershipsTemplatesCache.get(key);
-        if (elt != null) {
+        return getDefinitions(membershipsTemplatesCache, type, attributes);
+    }
 
-            return (Set<GroupOrFolderDefinition>) elt.getObjectValue();
+    /**
+     * Retrieves definitions from a memberships cache.
+     * @param memberships The memberships cache.
+     * @param type The type of the member.
+     * @param attributes The attributes of the member.
+     * @return The definitions if found, null otherwise
+     */
+    private GroupOrFolderDefinition[] getDefinitions(final Cache memberships,
+            final PersonType type,
+            final String...attributes) {
+        final MembershipsCacheKey key = PROBE_KEYS.get().reset(type, attributes);
+        try {
+            final Element elt = memberships.get(key);
+            if (elt != null) {
+                return (GroupOrFolderDefinition[]) elt.getObjectValue();
+            }
+            return null;
+        } finally {
+            // The values of the caller are not retained by the probe key.
+            key.reset(type, null);
         }
-        return null;
     }
 
     /**
@@ -228,6 +418,147 @@ public class SGSCache {
      * @param definition The definition associated to the template.
      */
     public void cacheEmptyTemplate(final GroupOrFolderDefinition definition) {
-        emptyTemplatesCache.put(new Element(definition.getPath(), true));
+        cacheEmptyTemplate(definition.getPath());
+    }
+
+    /**
+     * Caches the path of an empty template.
+     * @param path The path of the evaluated template.
+     */
+    public void cacheEmptyTemplate(final String path) {
+        emptyTemplatesCache.put(new Element(path, true));
+    }
+
+    /**
+     * Gives the keys of the memberships cache which are not expired.
+     * @return The keys.
+     */
+    List<MembershipsCacheKey> getMembershipsKeys() {
+        return keys(membershipsCache, MembershipsCacheKey.class);
+    }
+
+    /**
+     * Gives the keys of the memberships for templates cache which are not expired.
+     * @return The keys.
+     */
+    List<MembershipsCacheKey> getMembershipsForTemplatesKeys() {
+        return keys(membershipsTemplatesCache, MembershipsCacheKey.class);
+    }
+
+    /**
+     * Gives the paths of the cached empty templates which are not expired.
+     * @return The paths.
+     */
+    List<String> getEmptyTemplatesPaths() {
+        return keys(emptyTemplatesCache, String.class);
+    }
+
+    /**
+     * Gives the names of the groups in the groups memberships cache which are not expired.
+     * @return The names of the groups.
+     */
+    List<String> getGroupsMembershipsNames() {
+        return keys(groupsMembershipsCache, String.class);
+    }
+
+    /**
+     * Gives the names of the groups in the groups privileges cache which are not expired.
+     * @return The names of the groups.
+     */
+    List<String> getGroupsPrivilegesNames() {
+        return keys(groupsPrivilegesCache, String.class);
+    }
+
+    /**
+     * Gives the keys of a cache which are not expired.
+     * @param <K> The type of the keys.
+     * @param cache The cache.
+     * @param keyClass The class of the keys.
+     * @return The keys of the given class.
+     */
+    private static <K> List<K> keys(final Cache cache, final Class<K> keyClass) {
+        final List<?> keys = cache.getKeysWithExpiryCheck();
+        final List<K> result = new ArrayList<K>(keys.size());
+        for (Object key : keys) {
+            if (keyClass.isInstance(key)) {
+                result.add(keyClass.cast(key));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the key used in the resolutions cache.
+     * @param path The path of the group or folder.
+     * @param folder True if the path denotes a folder.
+     * @return The key.
+     */
+    private String resolutionKey(final String path, final boolean folder) {
+        if (folder) {
+            return FOLDER_RESOLUTION_PREFIX + path;
+        }
+        return GROUP_RESOLUTION_PREFIX + path;
+    }
+
+    /**
+     * Gives the uuid of a group or folder resolved from its path.
+     * Only the uuids are cached: the groups and folders are Grouper entities bound to
+     * the session used to load them, so they are loaded again in the session of the caller.
+     * @param path The path of the group or folder.
+     * @param folder True if the path denotes a folder.
+     * @return The uuid of the group or folder, null if it is not in cache or if the path is cached as not found.
+     */
+    public String getFromResolutionsCache(final String path, final boolean folder) {
+        final Element elt = resolutionsCache.get(resolutionKey(path, folder));
+        if (elt == null || !(elt.getObjectValue() instanceof String)) {
+            return null;
+        }
+        return (String) elt.getObjectValue();
+    }
+
+    /**
+     * Tests if the resolution of a path is cached, even as not found.
+     * @param path The path of the group or folder.
+     * @param folder True if the path denotes a folder.
+     * @return True if the path is in the resolutions cache.
+     */
+    public boolean hasInResolutionsCache(final String path, final boolean folder) {
+        return resolutionsCache.get(resolutionKey(path, folder)) != null;
+    }
+
+    /**
+     * Caches the uuid of a group or folder resolved from its path.
+     * @param path The path of the group or folder.
+     * @param groupOrStem The group or folder.
+     */
+    public void cacheResolution(final String path, final GroupOrStem groupOrStem) {
+        final String uuid;
+        if (groupOrStem.isStem()) {
+            uuid = groupOrStem.asStem().getUuid();
+        } else {
+            uuid = groupOrStem.asGroup().getUuid();
+        }
+        resolutionsCache.put(new Element(resolutionKey(path, groupOrStem.isStem()), uuid));
+    }
+
+    /**
+     * Caches a path which can't be resolved.
+     * The not found entries have a shorter time to live than the resolved ones.
+     * @param path The path of the group or folder.
+     * @param folder True if the path denotes a folder.
+     */
+    public void cacheNotFoundResolution(final String path, final boolean folder) {
+        final Element elt = new Element(resolutionKey(path, folder), Boolean.FALSE);
+        elt.setTimeToLive(NOT_FOUND_RESOLUTIONS_TTL);
+        resolutionsCache.put(elt);
+    }
+
+    /**
+     * Removes the resolution of a path from the cache.
+     * @param path The path of the group or folder.
+     * @param folder True if the path denotes a folder.
+     */
+    public void invalidateResolution(final String path, final boolean folder) {
+        resolutionsCache.remove(resolutionKey(path, folder));
     }
 }
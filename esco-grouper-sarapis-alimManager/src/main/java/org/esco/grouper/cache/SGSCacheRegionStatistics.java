@@ -0,0 +1,154 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.cache;
+
+import net.sf.ehcache.Cache;
+
+/**
+ * Statistics of a region of the SGS cache, exposed through JMX.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class SGSCacheRegionStatistics implements SGSCacheRegionStatisticsMBean {
+
+    /** The name of the region. */
+    private final String region;
+
+    /** The underlying cache. */
+    private final Cache cache;
+
+    /**
+     * Builds an instance of SGSCacheRegionStatistics.
+     * @param region The name of the region.
+     * @param cache The underlying cache.
+     */
+    public SGSCacheRegionStatistics(final String region, final Cache cache) {
+        this.region = region;
+        this.cache = cache;
+    }
+
+    /**
+     * Gives the name of the region.
+     * @return The name of the region.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getRegion()
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * Gives the number of entries in the region.
+     * @return The number of entries.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getEntriesCount()
+     */
+    public long getEntriesCount() {
+        return cache.getSize();
+    }
+
+    /**
+     * Gives the number of hits.
+     * @return The number of hits.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getHits()
+     */
+    public long getHits() {
+        return cache.getStatistics().getCacheHits();
+    }
+
+    /**
+     * Gives the number of misses.
+     * @return The number of misses.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getMisses()
+     */
+    public long getMisses() {
+        return cache.getStatistics().getCacheMisses();
+    }
+
+    /**
+     * Gives the ratio of the lookups which are hits.
+     * @return The hit ratio.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getHitRatio()
+     */
+    public double getHitRatio() {
+        final long hits = getHits();
+        final long lookups = hits + getMisses();
+        if (lookups == 0) {
+            return 0;
+        }
+        return (double) hits / lookups;
+    }
+
+    /**
+     * Gives the number of evictions.
+     * @return The number of evictions.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getEvictions()
+     */
+    public long getEvictions() {
+        return cache.getStatistics().getEvictionCount();
+    }
+
+    /**
+     * Gives the maximal number of entries of the region.
+     * @return The maximal number of entries.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getMaxEntries()
+     */
+    public long getMaxEntries() {
+        return cache.getCacheConfiguration().getMaxElementsInMemory();
+    }
+
+    /**
+     * Gives the time to live of the entries of the region.
+     * @return The time to live (in seconds, 0 for no limit).
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getTimeToLive()
+     */
+    public long getTimeToLive() {
+        return cache.getCacheConfiguration().getTimeToLiveSeconds();
+    }
+
+    /**
+     * Gives the time to idle of the entries of the region.
+     * @return The time to idle (in seconds, 0 for no limit).
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getTimeToIdle()
+     */
+    public long getTimeToIdle() {
+        return cache.getCacheConfiguration().getTimeToIdleSeconds();
+    }
+
+    /**
+     * Gives the eviction policy of the region.
+     * @return The eviction policy.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#getEvictionPolicy()
+     */
+    public String getEvictionPolicy() {
+        return String.valueOf(cache.getMemoryStoreEvictionPolicy());
+    }
+
+    /**
+     * Resets the hits, misses and evictions counters.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#clearStatistics()
+     */
+    public void clearStatistics() {
+        cache.clearStatistics();
+    }
+
+    /**
+     * Removes all the entries of the region.
+     * @see org.esco.grouper.cache.SGSCacheRegionStatisticsMBean#removeAll()
+     */
+    public void removeAll() {
+        cache.removeAll();
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.cache;
+
+/**
+ * JMX interface for the statistics of a region of the SGS cache.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public interface SGSCacheRegionStatisticsMBean {
+
+    /**
+     * Gives the name of the region.
+     * @return The name of the region.
+     */
+    String getRegion();
+
+    /**
+     * Gives the number of entries in the region.
+     * @return The number of entries.
+     */
+    long getEntriesCount();
+
+    /**
+     * Gives the number of hits.
+     * @return The number of hits.
+     */
+    long getHits();
+
+    /**
+     * Gives the number of misses.
+     * @return The number of misses.
+     */
+    long getMisses();
+
+    /**
+     * Gives the ratio of the lookups which are hits.
+     * @return The hit ratio (between 0 and 1).
+     */
+    double getHitRatio();
+
+    /**
+     * Gives the number of evictions.
+     * @return The number of evictions.
+     */
+    long getEvictions();
+
+    /**
+     * Gives the maximal number of entries of the region.
+     * @return The maximal number of entries.
+     */
+    long getMaxEntries();
+
+    /**
+     * Gives the time to live of the entries of the region.
+     * @return The time to live (in seconds, 0 for no limit).
+     */
+    long getTimeToLive();
+
+    /**
+     * Gives the time to idle of the entries of the region.
+     * @return The time to idle (in seconds, 0 for no limit).
+     */
+    long getTimeToIdle();
+
+    /**
+     * Gives the eviction policy of the region.
+     * @return The eviction policy.
+     */
+    String getEvictionPolicy();
+
+    /**
+     * Resets the hits, misses and evictions counters.
+     */
+    void clearStatistics();
+
+    /**
+     * Removes all the entries of the region.
+     */
+    void removeAll();
+}
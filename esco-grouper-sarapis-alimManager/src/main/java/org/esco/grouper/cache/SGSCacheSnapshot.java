@@ -0,0 +1,434 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang.Validate;
+import org.apache.log4j.Logger;
+import org.esco.grouper.domain.beans.GroupOrFolderDefinitionsManager;
+import org.esco.grouper.domain.beans.PersonType;
+
+/**
+ * Snapshot of the SGS cache in a local file, used to warm the cache at startup.
+ *
+ * The snapshot contains the keys of the memberships caches (re-evaluated when the snapshot is
+ * loaded), the paths of the empty templates and the groups for which the memberships and the
+ * privileges have been checked. The header of the snapshot contains the hash of the definitions
+ * file: the snapshot is discarded if the definitions have changed.
+ * The snapshot is written when the service is stopped and, optionally, periodically.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class SGSCacheSnapshot {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(SGSCacheSnapshot.class);
+
+    /** First line of the snapshot. */
+    private static final String HEADER = "# sgs cache snapshot - v1";
+
+    /** Prefix of the line which contains the hash of the definitions. */
+    private static final String HASH_PREFIX = "definitions-hash=";
+
+    /** Encoding of the snapshot file. */
+    private static final String ENCODING = "UTF-8";
+
+    /** Separator of the fields. */
+    private static final char SEP = '\t';
+
+    /** Escape character. */
+    private static final char ESCAPE = '\\';
+
+    /** Record of the memberships cache. */
+    private static final String MEMBERSHIPS_RECORD = "M";
+
+    /** Record of the memberships for templates cache. */
+    private static final String MEMBERSHIPS_FOR_TEMPLATES_RECORD = "T";
+
+    /** Record of the empty templates cache. */
+    private static final String EMPTY_TEMPLATE_RECORD = "E";
+
+    /** Record of the groups memberships cache. */
+    private static final String GROUP_MEMBERSHIPS_RECORD = "G";
+
+    /** Record of the groups privileges cache. */
+    private static final String GROUP_PRIVILEGES_RECORD = "P";
+
+    /** Number of milliseconds in one second. */
+    private static final long MILLIS = 1000L;
+
+    /** The path of the snapshot file. */
+    private String snapshotFile;
+
+    /** Period of the snapshots, in seconds (0 to write the snapshot only when the service stops). */
+    private long snapshotPeriod;
+
+    /** The definitions manager, used to evaluate the memberships again. */
+    private GroupOrFolderDefinitionsManager definitionsManager;
+
+    /** The hash of the definitions file of the current run. */
+    private String definitionsHash;
+
+    /** Timer for the periodic snapshots. */
+    private Timer timer;
+
+    /**
+     * Builds an instance of SGSCacheSnapshot.
+     */
+    public SGSCacheSnapshot() {
+        super();
+    }
+
+    /**
+     * Checks the spring injections.
+     * @throws Exception
+     */
+    @PostConstruct
+    public void afterPropertiesSet() throws Exception {
+        Validate.notNull(this.snapshotFile,
+                "property snapshotFile of class " + this.getClass().getName()
+                + " can not be null");
+
+        Validate.notNull(this.definitionsManager,
+                "property definitionsManager of class " + this.getClass().getName()
+                + " can not be null");
+
+        Validate.isTrue(this.snapshotPeriod >= 0,
+                "property snapshotPeriod of class " + this.getClass().getName()
+                + " can not be negative");
+    }
+
+    /**
+     * Loads the snapshot, if it exists and if it has been written for the same definitions,
+     * then starts the periodic snapshots if needed.
+     * This method has to be called once the definitions file is parsed.
+     * @param currentDefinitionsHash The hash of the current definitions file.
+     */
+    public synchronized void start(final String currentDefinitionsHash) {
+        this.definitionsHash = currentDefinitionsHash;
+        load();
+
+        if (snapshotPeriod > 0 && timer == null) {
+            timer = new Timer(getClass().getSimpleName(), true);
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    save();
+                }
+            }, snapshotPeriod * MILLIS, snapshotPeriod * MILLIS);
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots and writes a last snapshot.
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        save();
+    }
+
+    /**
+     * Loads the snapshot in the cache.
+     */
+    protected void load() {
+        final File file = new File(snapshotFile);
+        if (!file.exists()) {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("No cache snapshot to load (" + snapshotFile + ").");
+            }
+            return;
+        }
+
+        final SGSCache cache = SGSCache.instance();
+        int loaded = 0;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+            if (!HEADER.equals(reader.readLine())
+                    || !(HASH_PREFIX + definitionsHash).equals(reader.readLine())) {
+                LOGGER.warn("The cache snapshot " + snapshotFile
+                        + " does not match the current definitions: it is discarded.");
+                return;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = split(line);
+                final String record = fields[0];
+                if (fields.length < 2) {
+                    LOGGER.warn("Invalid line in the cache snapshot: " + line + " - Ignored.");
+                } else if (MEMBERSHIPS_RECORD.equals(record) || MEMBERSHIPS_FOR_TEMPLATES_RECORD.equals(record)) {
+                    final PersonType type = PersonType.valueOf(fields[1]);
+                    final String[] attributes = new String[fields.length - 2];
+                    System.arraycopy(fields, 2, attributes, 0, attributes.length);
+
+                    // The memberships are evaluated again, and cached by the definitions manager.
+                    if (MEMBERSHIPS_RECORD.equals(record)) {
+                        definitionsManager.getMemberships(type, attributes);
+                    } else {
+                        definitionsManager.getMembershipsForTemplates(type, attributes);
+                    }
+                    loaded++;
+                } else if (EMPTY_TEMPLATE_RECORD.equals(record)) {
+                    cache.cacheEmptyTemplate(fields[1]);
+                    loaded++;
+                } else if (GROUP_MEMBERSHIPS_RECORD.equals(record)) {
+                    cache.cacheInGroupsMembershipsCache(fields[1]);
+                    loaded++;
+                } else if (GROUP_PRIVILEGES_RECORD.equals(record)) {
+                    cache.cacheInGroupsPrivilegesCache(fields[1]);
+                    loaded++;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error while loading the cache snapshot " + snapshotFile + ".", e);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid cache snapshot " + snapshotFile + ".", e);
+        } finally {
+            closeQuietly(reader);
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Cache snapshot " + snapshotFile + " loaded: " + loaded + " entrie(s).");
+        }
+    }
+
+    /**
+     * Writes the snapshot of the cache.
+     * The snapshot is written in a temporary file which then replaces the previous snapshot.
+     */
+    public synchronized void save() {
+        if (definitionsHash == null) {
+            LOGGER.warn("The cache snapshot is not written: the definitions have not been parsed.");
+            return;
+        }
+
+        final SGSCache cache = SGSCache.instance();
+        final File file = new File(snapshotFile);
+        final File tmpFile = new File(snapshotFile + ".tmp");
+        int saved = 0;
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), ENCODING));
+            writer.write(HEADER);
+            writer.write('\n');
+            writer.write(HASH_PREFIX + definitionsHash);
+            writer.write('\n');
+
+            for (MembershipsCacheKey key : cache.getMembershipsKeys()) {
+                writeRecord(writer, MEMBERSHIPS_RECORD, key.getType().name(), key.getAttributes());
+                saved++;
+            }
+            for (MembershipsCacheKey key : cache.getMembershipsForTemplatesKeys()) {
+                writeRecord(writer, MEMBERSHIPS_FOR_TEMPLATES_RECORD, key.getType().name(), key.getAttributes());
+                saved++;
+            }
+            for (String path : cache.getEmptyTemplatesPaths()) {
+                writeRecord(writer, EMPTY_TEMPLATE_RECORD, path);
+                saved++;
+            }
+            for (String groupName : cache.getGroupsMembershipsNames()) {
+                writeRecord(writer, GROUP_MEMBERSHIPS_RECORD, groupName);
+                saved++;
+            }
+            for (String groupName : cache.getGroupsPrivilegesNames()) {
+                writeRecord(writer, GROUP_PRIVILEGES_RECORD, groupName);
+                saved++;
+            }
+            writer.close();
+            writer = null;
+
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to delete the file " + snapshotFile);
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Unable to rename the file " + tmpFile + " to " + snapshotFile);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error while writing the cache snapshot " + snapshotFile + ".", e);
+            return;
+        } finally {
+            closeQuietly(writer);
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Cache snapshot " + snapshotFile + " written: " + saved + " entrie(s).");
+        }
+    }
+
+    /**
+     * Writes a record of the snapshot.
+     * @param writer The writer.
+     * @param record The type of record.
+     * @param value The first value of the record.
+     * @param otherValues The other values of the record.
+     * @throws IOException If the record can't be written.
+     */
+    private void writeRecord(final Writer writer,
+            final String record,
+            final String value,
+            final String...otherValues) throws IOException {
+        writer.write(record);
+        writer.write(SEP);
+        writer.write(escape(value));
+        for (String otherValue : otherValues) {
+            writer.write(SEP);
+            writer.write(escape(otherValue));
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Escapes the separators, the line breaks and the escape characters of a value.
+     * @param value The value to escape.
+     * @return The escaped value.
+     */
+    private static String escape(final String value) {
+        if (value == null) {
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == ESCAPE) {
+                sb.append(ESCAPE).append(ESCAPE);
+            } else if (c == SEP) {
+                sb.append(ESCAPE).append('t');
+            } else if (c == '\n') {
+                sb.append(ESCAPE).append('n');
+            } else if (c == '\r') {
+                sb.append(ESCAPE).append('r');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Splits a line of the snapshot in unescaped fields.
+     * @param line The line to split.
+     * @return The fields.
+     */
+    private static String[] split(final String line) {
+        final String[] fields = line.split(String.valueOf(SEP), -1);
+        for (int f = 0; f < fields.length; f++) {
+            final String field = fields[f];
+            if (field.indexOf(ESCAPE) >= 0) {
+                final StringBuilder sb = new StringBuilder(field.length());
+                for (int i = 0; i < field.length(); i++) {
+                    final char c = field.charAt(i);
+                    if (c == ESCAPE && i + 1 < field.length()) {
+                        final char next = field.charAt(++i);
+                        if (next == 't') {
+                            sb.append(SEP);
+                        } else if (next == 'n') {
+                            sb.append('\n');
+                        } else if (next == 'r') {
+                            sb.append('\r');
+                        } else {
+                            sb.append(next);
+                        }
+                    } else {
+                        sb.append(c);
+                    }
+                }
+                fields[f] = sb.toString();
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Closes a reader or a writer, ignoring the errors.
+     * @param closeable The reader or writer to close (may be null).
+     */
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOGGER.warn(e, e);
+            }
+        }
+    }
+
+    /**
+     * Getter for snapshotFile.
+     * @return snapshotFile.
+     */
+    public String getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Setter for snapshotFile.
+     * @param snapshotFile the new value for snapshotFile.
+     */
+    public void setSnapshotFile(final String snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Getter for snapshotPeriod.
+     * @return snapshotPeriod.
+     */
+    public long getSnapshotPeriod() {
+        return snapshotPeriod;
+    }
+
+    /**
+     * Setter for snapshotPeriod.
+     * @param snapshotPeriod the new value for snapshotPeriod.
+     */
+    public void setSnapshotPeriod(final long snapshotPeriod) {
+        this.snapshotPeriod = snapshotPeriod;
+    }
+
+    /**
+     * Getter for definitionsManager.
+     * @return definitionsManager.
+     */
+    public GroupOrFolderDefinitionsManager getDefinitionsManager() {
+        return definitionsManager;
+    }
+
+    /**
+     * Setter for definitionsManager.
+     * @param definitionsManager the new value for definitionsManager.
+     */
+    public void setDefinitionsManager(final GroupOrFolderDefinitionsManager definitionsManager) {
+        this.definitionsManager = definitionsManager;
+    }
+}
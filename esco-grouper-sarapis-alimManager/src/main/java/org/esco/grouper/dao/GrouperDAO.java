@@ -15,7 +15,15 @@
  */
 package org.esco.grouper.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import edu.internet2.middleware.grouper.Group;
 import edu.internet2.middleware.grouper.GroupFinder;
@@ -27,6 +35,13 @@ import edu.internet2.middleware.grouper.Stem;
 import edu.internet2.middleware.grouper.StemFinder;
 import edu.internet2.middleware.grouper.SubjectFinder;
 import edu.internet2.middleware.grouper.exception.*;
+import edu.internet2.middleware.grouper.hibernate.ByHqlStatic;
+import edu.internet2.middleware.grouper.hibernate.GrouperTransaction;
+import edu.internet2.middleware.grouper.hibernate.GrouperTransactionHandler;
+import edu.internet2.middleware.grouper.hibernate.GrouperTransactionType;
+import edu.internet2.middleware.grouper.hibernate.HibUtils;
+import edu.internet2.middleware.grouper.hibernate.HibernateSession;
+import edu.internet2.middleware.grouper.internal.dao.QueryOptions;
 import edu.internet2.middleware.subject.Subject;
 import edu.internet2.middleware.subject.SubjectNotFoundException;
 import edu.internet2.middleware.subject.SubjectNotUniqueException;
@@ -36,10 +51,12 @@ import org.esco.grouper.domain.beans.EvaluableStringCondition;
 import org.esco.grouper.domain.beans.GroupOrFolderDefinition;
 import org.esco.grouper.domain.beans.GroupOrFolderDefinitionsManager;
 import org.esco.grouper.domain.beans.GroupOrStem;
+import org.esco.grouper.domain.beans.GroupReconciliation;
 import org.esco.grouper.domain.beans.GrouperOperationResultDTO;
 import org.esco.grouper.domain.beans.PrivilegeDefinition;
 import org.esco.grouper.domain.beans.PrivilegeDefinition.Right;
 import org.esco.grouper.exceptions.EscoGrouperException;
+import org.esco.grouper.metrics.SGSMetrics;
 import org.esco.grouper.utils.Constants;
 
 /**
@@ -53,6 +70,107 @@ public class GrouperDAO {
     /** Logger. */
     private static final Logger LOGGER = Logger.getLogger(GrouperDAO.class);
 
+    /** Query used to test if a group has at least one immediate member. */
+    private static final String IMMEDIATE_MEMBER_QUERY = "select ms.memberUuid"
+        + " from ImmediateMembershipEntry as ms"
+        + " where ms.ownerGroupId = :groupId"
+        + " and ms.fieldId = :fieldId"
+        + " and ms.enabledDb = 'T'";
+
+    /**
+     * Query used to retrieve, in one round-trip, the name of the groups a subject is an
+     * immediate member of, with the id of the member who created each membership.
+     */
+    private static final String IMMEDIATE_MEMBERSHIPS_CREATORS_QUERY = "select g.nameDb, ms.creatorUuid"
+        + " from ImmediateMembershipEntry as ms, Group as g, Member as m"
+        + " where ms.ownerGroupId = g.uuid"
+        + " and ms.memberUuid = m.uuid"
+        + " and m.subjectIdDb = :subjectId"
+        + " and m.subjectSourceIdDb = :sourceId"
+        + " and ms.fieldId = :fieldId"
+        + " and ms.enabledDb = 'T'";
+
+    /**
+     * Id of the subject source of the groups: the memberships of the groups added as members
+     * of other groups are handled by the definitions, not as memberships of persons.
+     */
+    private static final String GROUP_SOURCE_ID = "g:gsa";
+
+    /**
+     * Query used to retrieve all the immediate memberships of persons created by a member,
+     * with the subject id of the member and the name of the group.
+     */
+    private static final String CREATED_MEMBERSHIPS_QUERY = "select m.subjectIdDb, g.nameDb"
+        + " from ImmediateMembershipEntry as ms, Group as g, Member as m"
+        + " where ms.ownerGroupId = g.uuid"
+        + " and ms.memberUuid = m.uuid"
+        + " and m.subjectSourceIdDb <> :groupSourceId"
+        + " and ms.creatorUuid = :creatorId"
+        + " and ms.fieldId = :fieldId"
+        + " and ms.enabledDb = 'T'"
+        + " order by m.subjectIdDb, g.nameDb";
+
+    /**
+     * Query used to retrieve, in one round-trip, the subject ids of the immediate members
+     * of a group which are not groups, with the id of the member who created each membership.
+     */
+    private static final String GROUP_MEMBERS_CREATORS_QUERY = "select m.subjectIdDb, ms.creatorUuid"
+        + " from ImmediateMembershipEntry as ms, Member as m"
+        + " where ms.memberUuid = m.uuid"
+        + " and m.subjectSourceIdDb <> :groupSourceId"
+        + " and ms.ownerGroupId = :groupId"
+        + " and ms.fieldId = :fieldId"
+        + " and ms.enabledDb = 'T'";
+
+    /** Query used to retrieve the names of all the groups with memberships of persons created by a member. */
+    private static final String MANAGED_GROUPS_QUERY = "select distinct g.nameDb"
+        + " from ImmediateMembershipEntry as ms, Group as g, Member as m"
+        + " where ms.ownerGroupId = g.uuid"
+        + " and ms.memberUuid = m.uuid"
+        + " and m.subjectSourceIdDb <> :groupSourceId"
+        + " and ms.creatorUuid = :creatorId"
+        + " and ms.fieldId = :fieldId"
+        + " and ms.enabledDb = 'T'";
+
+    /** Size of the pages used to retrieve the managed memberships while rebuilding the index. */
+    private static final int REBUILD_PAGE_SIZE = 10000;
+
+    /** Query used to count the immediate members of a group. */
+    private static final String COUNT_IMMEDIATE_MEMBERS_QUERY = "select count(ms.memberUuid)"
+        + " from ImmediateMembershipEntry as ms"
+        + " where ms.ownerGroupId = :groupId"
+        + " and ms.fieldId = :fieldId"
+        + " and ms.enabledDb = 'T'";
+
+    /** Query used to test if a folder has at least one child group. */
+    private static final String CHILD_GROUP_QUERY = "select g.uuid"
+        + " from Group as g where g.parentUuid = :folderId";
+
+    /** Query used to test if a folder has at least one child folder. */
+    private static final String CHILD_FOLDER_QUERY = "select ns.uuid"
+        + " from Stem as ns where ns.parentUuid = :folderId";
+
+    /** Query used to retrieve groups by names (the in clause is appended). */
+    private static final String GROUPS_BY_NAMES_QUERY = "select g from Group as g where g.nameDb in (";
+
+    /** Query used to retrieve folders by names (the in clause is appended). */
+    private static final String FOLDERS_BY_NAMES_QUERY = "select ns from Stem as ns where ns.nameDb in (";
+
+    /** Maximal number of names in the in clause of one query. */
+    private static final int IN_CLAUSE_BATCH_SIZE = 100;
+
+    /** Separator of the path elements. */
+    private static final char PATH_SEP = ':';
+
+    /** Maximal number of groups and folders kept loaded for one Grouper session. */
+    private static final int MAX_SESSION_RESOLUTIONS = 10000;
+
+    /** Prefix of the folders in the groups and folders loaded for a session. */
+    private static final String FOLDER_KEY_PREFIX = "folder:";
+
+    /** Prefix of the groups in the groups and folders loaded for a session. */
+    private static final String GROUP_KEY_PREFIX = "group:";
+
     /** The definition manager. */
     private GroupOrFolderDefinitionsManager definitionsManager;
 
@@ -66,6 +184,16 @@ public class GrouperDAO {
     /** Flag to force the privileges. */
     private boolean forcePrivileges;
 
+    /** The optional local index of the managed memberships. */
+    private ManagedMembershipsIndex managedMembershipsIndex;
+
+    /** The gate used to wait for the startup checks run in background. */
+    private final StartupGate startupGate = new StartupGate();
+
+    /** The groups and folders loaded in each Grouper session, by path. */
+    private final Map<GrouperSession, Map<String, GroupOrStem>> sessionsResolutions =
+        new WeakHashMap<GrouperSession, Map<String, GroupOrStem>>();
+
     /**
      * Builds an instance of GrouperUtil.
      */
@@ -97,11 +225,32 @@ public class GrouperDAO {
             final GroupOrStem groupOrStem,
             final GroupOrFolderDefinition definition,
             final String...values) {
+        final long start = SGSMetrics.instance().start();
+        boolean error = true;
+        try {
+            doHandlePrivilegesForFolder(session, groupOrStem, definition, values);
+            error = false;
+        } finally {
+            SGSMetrics.instance().record("dao.handlePrivilegesForFolder", start, error);
+        }
+    }
+
+    /**
+     * Handles the privileges for a folder, if it is empty and is not a preexisting one.
+     * @param session The grouper session.
+     * @param groupOrStem The folder.
+     * @param definition The folder definition which contains the privileges to add.
+     * @param values The values used to evaluate the template elements.
+     */
+    private void doHandlePrivilegesForFolder(final GrouperSession session,
+            final GroupOrStem groupOrStem,
+            final GroupOrFolderDefinition definition,
+            final String...values) {
 
         if (!definition.isPreexisting()) {
             final Stem folder = groupOrStem.asStem();
 
-            if ((folder.getChildStems().size() == 0 && folder.getChildGroups().size() == 0) || forcePrivileges) {
+            if (!hasChildren(folder) || forcePrivileges) {
                 // The administration privileges are checked for the empty folders.
 
                 if (LOGGER.isDebugEnabled()) {
@@ -177,6 +326,27 @@ public class GrouperDAO {
             final GroupOrStem groupOrStem,
             final GroupOrFolderDefinition definition,
             final String...values) {
+        final long start = SGSMetrics.instance().start();
+        boolean error = true;
+        try {
+            doHandlePrivilegesForGroup(session, groupOrStem, definition, values);
+            error = false;
+        } finally {
+            SGSMetrics.instance().record("dao.handlePrivilegesForGroup", start, error);
+        }
+    }
+
+    /**
+     * Handles the privileges for a group, if it is empty and is not a preexisting one.
+     * @param session The grouper session.
+     * @param groupOrStem The group.
+     * @param definition The group definition which contains the privileges to add.
+     * @param values The values used to evaluate the template elements.
+     */
+    private void doHandlePrivilegesForGroup(final GrouperSession session,
+            final GroupOrStem groupOrStem,
+            final GroupOrFolderDefinition definition,
+            final String...values) {
 
 
         if (!definition.isPreexisting()) {
@@ -185,7 +355,7 @@ public class GrouperDAO {
             final String groupName = group.getName();
 
             if (!SGSCache.instance().hasInGroupsPrivielgesCache(groupName)) {
-                if (group.getImmediateMembers().size() == 0 || forcePrivileges) {
+                if (!hasImmediateMembers(group) || forcePrivileges) {
 
                     // The administration privileges are checked for the empty groups.
                     if (LOGGER.isDebugEnabled()) {
@@ -268,7 +438,7 @@ public class GrouperDAO {
             final String groupName = group.getName();
 
             if (!SGSCache.instance().hasInGroupsMembershipsCache(groupName)) {
-                if (group.getImmediateMembers().size() == 0) {
+                if (!hasImmediateMembers(group)) {
 
                     // The memeberships are checked for the empty groups.
                     if (LOGGER.isDebugEnabled()) {
@@ -287,8 +457,10 @@ public class GrouperDAO {
                         final Group containingGroup =  containingGroupWrapper.asGroup();
                         try {
                             final Subject subj = group.toSubject();
+                            SGSMetrics.instance().grouperCall();
                             if (!containingGroup.hasImmediateMember(subj) && pathCondition.isMatchingCondition(group.getExtension())) {
                                 containingGroup.addMember(subj);
+                                SGSMetrics.instance().memberAdded();
                                 if (LOGGER.isDebugEnabled()) {
                                     LOGGER.debug("Adding the group: " + definition.getPath()
                                             + " as a member of: " + containingGroupDef.getPath());
@@ -356,6 +528,7 @@ public class GrouperDAO {
     throws GrantPrivilegeException, InsufficientPrivilegeException, SchemaException {
         if (!folder.hasCreate(subject)) {
             folder.grantPriv(subject, Constants.CREATE_PRIV);
+            SGSMetrics.instance().privilegeGranted();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Adding create privilege to the group: " + privilegedPath
                         + " on the folder: " + folderPath + ".");
@@ -381,6 +554,7 @@ public class GrouperDAO {
 
         if (!folder.hasStem(subject)) {
             folder.grantPriv(subject, Constants.STEM_PRIV);
+            SGSMetrics.instance().privilegeGranted();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Adding stem privilege to the group: " + privilegedPath
                         + " on the folder: " + folderPath + ".");
@@ -405,6 +579,7 @@ public class GrouperDAO {
             throws GrantPrivilegeException, InsufficientPrivilegeException, SchemaException {
         if (!folder.hasStemAdmin(subject)) {
             folder.grantPriv(subject, Constants.STEM_ADMIN_PRIV);
+            SGSMetrics.instance().privilegeGranted();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Adding Admin Stem privilege to the group: " + privilegedPath
                         + " on the folder: " + folderPath + ".");
@@ -429,6 +604,7 @@ public class GrouperDAO {
             throws GrantPrivilegeException, InsufficientPrivilegeException, SchemaException {
         if (!folder.hasStemAttrUpdate(subject)) {
             folder.grantPriv(subject, Constants.STEM_ATTR_UPDATE_PRIV);
+            SGSMetrics.instance().privilegeGranted();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Adding Attributes Update Stem privilege to the group: " + privilegedPath
                         + " on the folder: " + folderPath + ".");
@@ -453,6 +629,7 @@ public class GrouperDAO {
             throws GrantPrivilegeException, InsufficientPrivilegeException, SchemaException {
         if (!folder.hasStemAttrUpdate(subject)) {
             folder.grantPriv(subject, Constants.STEM_ATTR_READ_PRIV);
+            SGSMetrics.instance().privilegeGranted();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Adding Attributes Read Stem privilege to the group: " + privilegedPath
                         + " on the folder: " + folderPath + ".");
@@ -478,6 +655,7 @@ public class GrouperDAO {
 
         if (!group.hasAdmin(subject)) {
             group.grantPriv(subject, Constants.ADMIN_PRIV);
+            SGSMetrics.instance().privilegeGranted();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Adding administration privilege to the group: "
                         + privilegedPath + " on the group: " + groupPath);
@@ -503,6 +681,7 @@ public class GrouperDAO {
 
         if (!group.hasUpdate(subject)) {
             group.grantPriv(subject, Constants.UPDATE_PRIV);
+            SGSMetrics.instance().privilegeGranted();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Adding update privilege to the group: "
                         + privilegedPath + " on the group: " + groupPath);
@@ -527,6 +706,7 @@ public class GrouperDAO {
 
         if (!group.hasRead(subject)) {
             group.grantPriv(subject, Constants.READ_PRIV);
+            SGSMetrics.instance().privilegeGranted();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Adding read privilege to the group: "
                         + privilegedPath + " on the group: " + groupPath);
@@ -552,6 +732,7 @@ public class GrouperDAO {
 
         if (!group.hasView(subject)) {
             group.grantPriv(subject, Constants.VIEW_PRIV);
+            SGSMetrics.instance().privilegeGranted();
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Adding read privilege to the group: "
                         + privilegedPath + " on the group: " + groupPath);
@@ -568,6 +749,27 @@ public class GrouperDAO {
      */
     protected GroupOrStem create(final GrouperSession session,
             final GroupOrFolderDefinition definition, final String...values) {
+        final long start = SGSMetrics.instance().start();
+        boolean error = true;
+        try {
+            final GroupOrStem gos = doCreate(session, definition, values);
+            error = false;
+            return gos;
+        } finally {
+            SGSMetrics.instance().record(definition.isFolder() ? "dao.createFolder" : "dao.createGroup",
+                    start, error);
+        }
+    }
+
+    /**
+     * Creates a group or a folder.
+     * @param session The Grouper session.
+     * @param definition The definition of the group or folder to create.
+     * @param values The values used  to evaluate templates.
+     * @return The created group or folder.
+     */
+    private GroupOrStem doCreate(final GrouperSession session,
+            final GroupOrFolderDefinition definition, final String...values) {
         try {
 
             final String containingPath = definition.getContainingPathAsTemplate();
@@ -597,12 +799,14 @@ public class GrouperDAO {
 
                 final Stem folder = containingFolder.addChildStem(extension, dispExtension);
                 folder.setDescription(description);
+                SGSMetrics.instance().folderCreated();
 
                 if (LOGGER.isInfoEnabled()) {
                     LOGGER.info(">>> Folder " + definition.getPath() + " created.");
                 }
 
                 final GroupOrStem gos = new GroupOrStem(folder);
+                cacheResolution(session, definition.getPath(), gos);
                 handlePrivilegesForFolder(session, gos, definition, values);
                 return gos;
             }
@@ -610,12 +814,14 @@ public class GrouperDAO {
             // The definition denotes a group to create.
             final Group group = containingFolder.addChildGroup(extension, dispExtension);
             group.setDescription(description);
+            SGSMetrics.instance().groupCreated();
 
             if (LOGGER.isInfoEnabled()) {
                 LOGGER.info(">>> Group " + definition.getPath() + " created.");
             }
 
             final GroupOrStem gos = new GroupOrStem(group);
+            cacheResolution(session, definition.getPath(), gos);
             handlePrivilegesForGroup(session, gos, definition, values);
             handleMembershipsForGroup(session, gos, definition, values);
             return gos;
@@ -642,20 +848,477 @@ public class GrouperDAO {
     }
 
     /**
-     * Gives the id of the owner of a membership.
-     * @param membership The considered membership.
-     * @return The id of the owner of the membership if the owner is found, empty string otherwise.
+     * Tests if a query returns at least one row.
+     * At most one row is fetched, whatever the number of rows matched by the query.
+     * @param query The query to execute.
+     * @return True if the query returns at least one row.
+     */
+    private boolean hasAtLeastOneRow(final ByHqlStatic query) {
+        SGSMetrics.instance().grouperCall();
+        return !query.setCacheable(false)
+            .options(new QueryOptions().paging(1, 1, false))
+            .list(String.class).isEmpty();
+    }
+
+    /**
+     * Tests if a group has at least one immediate member, without loading
+     * the members of the group.
+     * @param group The group to test.
+     * @return True if the group contains at least one immediate member.
+     */
+    protected boolean hasImmediateMembers(final Group group) {
+        return hasAtLeastOneRow(HibernateSession.byHqlStatic()
+                .createQuery(IMMEDIATE_MEMBER_QUERY)
+                .setString("groupId", group.getUuid())
+                .setString("fieldId", Group.getDefaultList().getUuid()));
+    }
+
+    /**
+     * Tests if a folder has at least one child (group or folder), without loading
+     * the children of the folder.
+     * @param folder The folder to test.
+     * @return True if the folder contains at least one group or one folder.
+     */
+    protected boolean hasChildren(final Stem folder) {
+        final String folderId = folder.getUuid();
+        return hasAtLeastOneRow(HibernateSession.byHqlStatic()
+                .createQuery(CHILD_GROUP_QUERY)
+                .setString("folderId", folderId))
+            || hasAtLeastOneRow(HibernateSession.byHqlStatic()
+                .createQuery(CHILD_FOLDER_QUERY)
+                .setString("folderId", folderId));
+    }
+
+    /**
+     * Retrieves the immediate memberships of a subject with, for each membership,
+     * the id of the member who created it.
+     * All the memberships are retrieved with a single query, so neither the memberships
+     * nor their creators are loaded one by one.
+     * @param subject The considered subject.
+     * @return The map of the id of the creator member by group name.
+     */
+    public Map<String, String> retrieveImmediateMembershipsCreators(final Subject subject) {
+        SGSMetrics.instance().grouperCall();
+        final List<Object[]> rows = HibernateSession.byHqlStatic()
+            .createQuery(IMMEDIATE_MEMBERSHIPS_CREATORS_QUERY)
+            .setCacheable(false)
+            .setString("subjectId", subject.getId())
+            .setString("sourceId", subject.getSource().getId())
+            .setString("fieldId", Group.getDefaultList().getUuid())
+            .list(Object[].class);
+
+        final Map<String, String> creators = new HashMap<String, String>(rows.size());
+        for (Object[] row : rows) {
+            creators.put((String) row[0], (String) row[1]);
+        }
+        return creators;
+    }
+
+    /**
+     * Retrieves the names of the groups managed by the module for a subject, i.e. the groups
+     * for which the membership of the subject has been created by the member of the session.
+     * @param session The current grouper session.
+     * @param subject The considered subject.
+     * @return The names of the managed groups.
+     */
+    protected Set<String> retrieveManagedGroupsNames(final GrouperSession session,
+            final Subject subject) {
+        final String managerId = session.getMember().getUuid();
+        final Set<String> managedGroups = new HashSet<String>();
+        for (Map.Entry<String, String> membership : retrieveImmediateMembershipsCreators(subject).entrySet()) {
+            final String groupName = membership.getKey();
+            if (managerId.equals(membership.getValue())) {
+                managedGroups.add(groupName);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Group " + groupName + " is managed by the module for user "
+                            + subject.getId() + ".");
+                }
+            } else {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Group " + groupName + " is not managed by the module for user "
+                            + subject.getId() + ".");
+                }
+            }
+        }
+        return managedGroups;
+    }
+
+    /**
+     * Rebuilds the local index of the managed memberships from the memberships
+     * created in Grouper by the member of the session.
+     * @param session The current grouper session.
+     * @return The result of the grouper operation.
      */
-    private String retrieveMembershipOwnerIdSafe(final Membership membership) {
-        String id = "";
+    public GrouperOperationResultDTO rebuildManagedMembershipsIndex(final GrouperSession session) {
+        if (managedMembershipsIndex == null) {
+            final String msg = "No managed memberships index is configured: nothing to rebuild.";
+            LOGGER.error(msg);
+            return new GrouperOperationResultDTO(new EscoGrouperException(msg));
+        }
         try {
-            id = membership.getCreator().getSubject().getId();
+            final String managerId = session.getMember().getUuid();
+            final String fieldId = Group.getDefaultList().getUuid();
+            final Map<String, Set<String>> memberships = new HashMap<String, Set<String>>();
+            int pageNumber = 1;
+            List<Object[]> rows;
+            do {
+                rows = HibernateSession.byHqlStatic()
+                    .createQuery(CREATED_MEMBERSHIPS_QUERY)
+                    .setCacheable(false)
+                    .setString("groupSourceId", GROUP_SOURCE_ID)
+                    .setString("creatorId", managerId)
+                    .setString("fieldId", fieldId)
+                    .options(new QueryOptions().paging(REBUILD_PAGE_SIZE, pageNumber++, false))
+                    .list(Object[].class);
+                for (Object[] row : rows) {
+                    final String subjectId = (String) row[0];
+                    Set<String> groups = memberships.get(subjectId);
+                    if (groups == null) {
+                        groups = new HashSet<String>();
+                        memberships.put(subjectId, groups);
+                    }
+                    groups.add((String) row[1]);
+                }
+            } while (rows.size() == REBUILD_PAGE_SIZE);
+
+            managedMembershipsIndex.rebuild(memberships);
+            return GrouperOperationResultDTO.RESULT_OK;
+
+        } catch (EscoGrouperException e) {
+            return new GrouperOperationResultDTO(e);
+        } catch (RuntimeException e) {
+            LOGGER.error(e, e);
+            return new GrouperOperationResultDTO(e);
+        }
+    }
+
+    /**
+     * Retrieves the names of all the groups which contain at least one membership
+     * managed by the module.
+     * @param session The current grouper session.
+     * @return The names of the groups.
+     */
+    public Set<String> retrieveAllManagedGroupsNames(final GrouperSession session) {
+        SGSMetrics.instance().grouperCall();
+        final List<String> names = HibernateSession.byHqlStatic()
+            .createQuery(MANAGED_GROUPS_QUERY)
+            .setCacheable(false)
+            .setString("groupSourceId", GROUP_SOURCE_ID)
+            .setString("creatorId", session.getMember().getUuid())
+            .setString("fieldId", Group.getDefaultList().getUuid())
+            .list(String.class);
+        return new HashSet<String>(names);
+    }
+
+    /**
+     * Retrieves, in one round-trip, the immediate members of a group with the id
+     * of the member who created each membership. The groups members of the group
+     * are not retrieved: they are handled by the definitions of the groups.
+     * @param group The group.
+     * @return The id of the creator of the membership, by subject id.
+     */
+    protected Map<String, String> retrieveImmediateMembersCreators(final Group group) {
+        SGSMetrics.instance().grouperCall();
+        final List<Object[]> rows = HibernateSession.byHqlStatic()
+            .createQuery(GROUP_MEMBERS_CREATORS_QUERY)
+            .setCacheable(false)
+            .setString("groupSourceId", GROUP_SOURCE_ID)
+            .setString("groupId", group.getUuid())
+            .setString("fieldId", Group.getDefaultList().getUuid())
+            .list(Object[].class);
+
+        final Map<String, String> creators = new HashMap<String, String>(rows.size());
+        for (Object[] row : rows) {
+            creators.put((String) row[0], (String) row[1]);
+        }
+        return creators;
+    }
+
+    /**
+     * Counts the immediate members of a group.
+     * @param session The current grouper session.
+     * @param groupName The name of the group.
+     * @return The number of immediate members, -1 if the group does not exist.
+     */
+    public long countImmediateMembers(final GrouperSession session, final String groupName) {
+        final GroupOrStem groupWrapper = retrieve(session, groupName, false);
+        if (groupWrapper == null) {
+            return -1;
+        }
+        SGSMetrics.instance().grouperCall();
+        final Long count = HibernateSession.byHqlStatic()
+            .createQuery(COUNT_IMMEDIATE_MEMBERS_QUERY)
+            .setCacheable(false)
+            .setString("groupId", groupWrapper.asGroup().getUuid())
+            .setString("fieldId", Group.getDefaultList().getUuid())
+            .uniqueResult(Long.class);
+        if (count == null) {
+            return 0;
+        }
+        return count;
+    }
+
+    /**
+     * Reconciles the managed members of a group with the members it should have.
+     * The current immediate members are retrieved once; the desired subjects which
+     * are not members are added and the managed members which are not desired are removed.
+     * The members which have not been added by the module are never removed.
+     * @param session The grouper session.
+     * @param definition The definition of the group, null if the group has no desired member.
+     * @param groupName The name of the group.
+     * @param desiredSubjectsIds The ids of the subjects which should be members of the group.
+     * @param values The values used to evaluate templates.
+     * @return The summary of the reconciliation of the group.
+     */
+    public GroupReconciliation reconcileGroup(final GrouperSession session,
+            final GroupOrFolderDefinition definition,
+            final String groupName,
+            final Set<String> desiredSubjectsIds,
+            final String...values) {
+        final long start = SGSMetrics.instance().start();
+        GroupReconciliation summary = null;
+        try {
+            summary = doReconcileGroup(session, definition, groupName, desiredSubjectsIds, values);
+            return summary;
+        } finally {
+            SGSMetrics.instance().record("dao.reconcileGroup", start, summary == null || summary.isError());
+        }
+    }
+
+    /**
+     * Reconciles the managed members of a group with the members it should have.
+     * The memberships to add and to remove are written in a single transaction for the group.
+     * The Grouper API has no bulk membership write: each membership is still written by its own
+     * call, only the commit is shared. If one of the writes fails, the transaction is rolled back
+     * and the memberships are written one by one, so only the failing members are reported.
+     * @param session The grouper session.
+     * @param definition The definition of the group, null if the group has no desired member.
+     * @param groupName The name of the group.
+     * @param desiredSubjectsIds The ids of the subjects which should be members of the group.
+     * @param values The values used to evaluate templates.
+     * @return The summary of the reconciliation of the group.
+     */
+    private GroupReconciliation doReconcileGroup(final GrouperSession session,
+            final GroupOrFolderDefinition definition,
+            final String groupName,
+            final Set<String> desiredSubjectsIds,
+            final String...values) {
+        final GroupReconciliation summary = new GroupReconciliation(groupName);
+        try {
+            final GroupOrStem groupWrapper;
+            if (definition == null) {
+                groupWrapper = retrieve(session, groupName, false);
+                if (groupWrapper == null) {
+                    // The group does not exist anymore: nothing to reconcile.
+                    return summary;
+                }
+            } else {
+                groupWrapper = retrieveOrCreate(session, definition, values);
+                if (groupWrapper == null) {
+                    final String msg = "Error while creating group for the definition: " + definition;
+                    LOGGER.error(msg);
+                    summary.setResult(new GrouperOperationResultDTO(new EscoGrouperException(msg)));
+                    return summary;
+                }
+
+                // Checks the administration privileges and the memberships of the group.
+                handlePrivilegesForGroup(session, groupWrapper, definition, values);
+                handleMembershipsForGroup(session, groupWrapper, definition, values);
+            }
+            final Group group = groupWrapper.asGroup();
+
+            // Computes the differences with the current members.
+            final String managerId = session.getMember().getUuid();
+            final Map<String, String> currentMembers = retrieveImmediateMembersCreators(group);
+            final Set<String> toAdd = new HashSet<String>();
+            for (String subjectId : desiredSubjectsIds) {
+                if (!currentMembers.containsKey(subjectId)) {
+                    toAdd.add(subjectId);
+                }
+            }
+            final Set<String> toRemove = new HashSet<String>();
+            for (Map.Entry<String, String> currentMember : currentMembers.entrySet()) {
+                if (managerId.equals(currentMember.getValue())
+                        && !desiredSubjectsIds.contains(currentMember.getKey())) {
+                    toRemove.add(currentMember.getKey());
+                }
+            }
+            if (toAdd.isEmpty() && toRemove.isEmpty()) {
+                return summary;
+            }
+
+            // The subjects are resolved in one call.
+            final Set<String> subjectsIds = new HashSet<String>(toAdd);
+            subjectsIds.addAll(toRemove);
+            SGSMetrics.instance().grouperCall();
+            final Map<String, Subject> subjects = SubjectFinder.findByIds(subjectsIds);
+
+            if (writeMembershipsInOneTransaction(group, toAdd, toRemove, subjects)) {
+                for (String subjectId : toAdd) {
+                    SGSMetrics.instance().memberAdded();
+                    indexAddedMembership(subjectId, groupName);
+                    summary.memberAdded();
+                }
+                for (String subjectId : toRemove) {
+                    SGSMetrics.instance().memberRemoved();
+                    indexRemovedMembership(subjectId, groupName);
+                    summary.memberRemoved();
+                }
+                toAdd.clear();
+                toRemove.clear();
+            }
+
+            for (String subjectId : toAdd) {
+                final Subject subject = subjects.get(subjectId);
+                try {
+                    if (subject == null) {
+                        throw new EscoGrouperException("Unable to retrieve the subject: " + subjectId);
+                    }
+                    group.addMember(subject);
+                    SGSMetrics.instance().memberAdded();
+                    indexAddedMembership(subjectId, groupName);
+                    summary.memberAdded();
+                } catch (InsufficientPrivilegeException e) {
+                    LOGGER.error(e, e);
+                    summary.memberFailed(new GrouperOperationResultDTO(e));
+                } catch (MemberAddException e) {
+                    LOGGER.error(e, e);
+                    summary.memberFailed(new GrouperOperationResultDTO(e));
+                } catch (EscoGrouperException e) {
+                    LOGGER.error(e.getMessage());
+                    summary.memberFailed(new GrouperOperationResultDTO(e));
+                }
+            }
+
+            for (String subjectId : toRemove) {
+                final Subject subject = subjects.get(subjectId);
+                try {
+                    if (subject == null) {
+                        throw new EscoGrouperException("Unable to retrieve the subject: " + subjectId);
+                    }
+                    group.deleteMember(subject);
+                    SGSMetrics.instance().memberRemoved();
+                    indexRemovedMembership(subjectId, groupName);
+                    summary.memberRemoved();
+                } catch (InsufficientPrivilegeException e) {
+                    LOGGER.error(e, e);
+                    summary.memberFailed(new GrouperOperationResultDTO(e));
+                } catch (MemberDeleteException e) {
+                    LOGGER.error(e, e);
+                    summary.memberFailed(new GrouperOperationResultDTO(e));
+                } catch (EscoGrouperException e) {
+                    LOGGER.error(e.getMessage());
+                    summary.memberFailed(new GrouperOperationResultDTO(e));
+                }
+            }
+
+            if (summary.getRemoved() > 0) {
+                handlesEmptyGroupIfNeeded(session, group);
+            }
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Group reconciled: " + summary + ".");
+            }
+        } catch (EscoGrouperException e) {
+            summary.setResult(new GrouperOperationResultDTO(e));
+        } catch (RuntimeException e) {
+            LOGGER.error(e, e);
+            summary.setResult(new GrouperOperationResultDTO(e));
+        }
+        return summary;
+    }
+
+    /**
+     * Writes the memberships of a group in a single transaction.
+     * @param group The group.
+     * @param toAdd The ids of the subjects to add.
+     * @param toRemove The ids of the subjects to remove.
+     * @param subjects The subjects by id.
+     * @return True if all the memberships have been written, false if nothing has been written.
+     */
+    private boolean writeMembershipsInOneTransaction(final Group group,
+            final Set<String> toAdd,
+            final Set<String> toRemove,
+            final Map<String, Subject> subjects) {
+        if (!subjects.keySet().containsAll(toAdd) || !subjects.keySet().containsAll(toRemove)) {
+            // The missing subjects are reported member by member.
+            return false;
+        }
+        try {
+            GrouperTransaction.callbackGrouperTransaction(GrouperTransactionType.READ_WRITE_NEW,
+                    new GrouperTransactionHandler() {
+                        public Object callback(final GrouperTransaction grouperTransaction) {
+                            try {
+                                for (String subjectId : toAdd) {
+                                    group.addMember(subjects.get(subjectId));
+                                }
+                                for (String subjectId : toRemove) {
+                                    group.deleteMember(subjects.get(subjectId));
+                                }
+                            } catch (InsufficientPrivilegeException e) {
+                                throw new GrouperDAOException(e);
+                            } catch (MemberAddException e) {
+                                throw new GrouperDAOException(e);
+                            } catch (MemberDeleteException e) {
+                                throw new GrouperDAOException(e);
+                            }
+                            return null;
+                        }
+                    });
+            return true;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to write the memberships of the group " + group.getName()
+                    + " in one transaction - They are written one by one.", e);
+            return false;
+        }
+    }
+    /**
+     * Registers a managed membership in the local index, if any.
+     * @param subjectId The id of the subject.
+     * @param groupName The name of the group.
+     */
+    private void indexAddedMembership(final String subjectId, final String groupName) {
+        if (managedMembershipsIndex != null) {
+            managedMembershipsIndex.add(subjectId, groupName);
+        }
+    }
+
+    /**
+     * Unregisters a managed membership from the local index, if any.
+     * @param subjectId The id of the subject.
+     * @param groupName The name of the group.
+     */
+    private void indexRemovedMembership(final String subjectId, final String groupName) {
+        if (managedMembershipsIndex != null) {
+            managedMembershipsIndex.remove(subjectId, groupName);
+        }
+    }
+
+    /**
+     * Retrieves a subject from its id.
+     * The retrieved subject can be given to the methods of this DAO, so the subject
+     * source is requested only once for all the operations on a same user.
+     * @param subjectId The id of the subject.
+     * @return The subject.
+     * @throws EscoGrouperException If the subject can't be retrieved.
+     */
+    public Subject retrieveSubject(final String subjectId) {
+        final long start = SGSMetrics.instance().start();
+        boolean error = true;
+        try {
+            SGSMetrics.instance().grouperCall();
+            final Subject subject = SubjectFinder.findById(subjectId, true);
+            error = false;
+            return subject;
         } catch (SubjectNotFoundException e) {
-            LOGGER.warn(e, e);
-        } catch (MemberNotFoundException e) {
-            LOGGER.warn(e, e);
+            LOGGER.error(e, e);
+            throw new EscoGrouperException(e);
+        } catch (SubjectNotUniqueException e) {
+            LOGGER.error(e, e);
+            throw new EscoGrouperException(e);
+        } finally {
+            SGSMetrics.instance().record("dao.retrieveSubject", start, error);
         }
-        return id;
     }
 
     /**
@@ -668,40 +1331,52 @@ public class GrouperDAO {
     public GrouperOperationResultDTO retrieveManagedGroups(final GrouperSession session,
             final String userId,
             final Set<String> result) {
+        try {
+            return retrieveManagedGroups(session, retrieveSubject(userId), result);
+        } catch (EscoGrouperException e) {
+            return new GrouperOperationResultDTO(e);
+        }
+    }
 
+    /**
+     * Retrieves the groups managed by the module for a given subject.
+     * @param session The current grouper session.
+     * @param subject The considered subject.
+     * @param result The set of the groups managed for the subject.
+     * @return The result of the grouper operation.
+     */
+    public GrouperOperationResultDTO retrieveManagedGroups(final GrouperSession session,
+            final Subject subject,
+            final Set<String> result) {
+        final long start = SGSMetrics.instance().start();
+        GrouperOperationResultDTO operationResult = null;
         try {
-            Subject subject = SubjectFinder.findById(userId, true);
-            final String managerId = session.getSubject().getId();
-            final Member member = MemberFinder.findBySubject(session, subject, true);
-            @SuppressWarnings("rawtypes")
-			final Set memberships = member.getImmediateMemberships();
+            operationResult = doRetrieveManagedGroups(session, subject, result);
+            return operationResult;
+        } finally {
+            SGSMetrics.instance().record("dao.retrieveManagedGroups", start, operationResult);
+        }
+    }
 
-            for (Object o : memberships) {
-                final Membership m = (Membership) o;
-                final Group g = m.getOwnerGroup();
-                final String ownerId = retrieveMembershipOwnerIdSafe(m);
-                if (managerId.equals(ownerId)) {
-                    result.add(g.getName());
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Group " + g.getName() + " is managed by the module for user " + userId + ".");
-                    }
-                } else {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Group " + g.getName() + " is not managed by the module for user " + userId + ".");
-                    }
-                }
+    /**
+     * Retrieves the groups managed by the module for a given subject.
+     * @param session The current grouper session.
+     * @param subject The considered subject.
+     * @param result The set of the groups managed for the subject.
+     * @return The result of the Grouper operation.
+     */
+    private GrouperOperationResultDTO doRetrieveManagedGroups(final GrouperSession session,
+            final Subject subject,
+            final Set<String> result) {
+
+        try {
+            if (managedMembershipsIndex != null && managedMembershipsIndex.isInitialized()) {
+                result.addAll(managedMembershipsIndex.getManagedGroups(subject.getId()));
+            } else {
+                result.addAll(retrieveManagedGroupsNames(session, subject));
             }
             return GrouperOperationResultDTO.RESULT_OK;
 
-        } catch (SubjectNotFoundException e) {
-            LOGGER.error(e, e);
-            return new GrouperOperationResultDTO(e);
-        } catch (GroupNotFoundException e) {
-            LOGGER.error(e, e);
-            return new GrouperOperationResultDTO(e);
-        } catch (SubjectNotUniqueException e) {
-            LOGGER.error(e, e);
-            return new GrouperOperationResultDTO(e);
         } catch (RuntimeException e) {
             LOGGER.error(e, e);
             return new GrouperOperationResultDTO(e);
@@ -717,9 +1392,29 @@ public class GrouperDAO {
      */
     public GrouperOperationResultDTO removeFromAllGroups(final GrouperSession session,
             final String userId) {
+        final long start = SGSMetrics.instance().start();
+        GrouperOperationResultDTO result = null;
         try {
+            result = doRemoveFromAllGroups(session, userId);
+            return result;
+        } finally {
+            SGSMetrics.instance().record("dao.removeFromAllGroups", start, result);
+        }
+    }
 
+    /**
+     * Removes a member from its groups, even if they are not managed by this module.
+     * @param session The grouper session.
+     * @param userId The id of the member.
+     * @return The result of the Grouper operation.
+     */
+    private GrouperOperationResultDTO doRemoveFromAllGroups(final GrouperSession session,
+            final String userId) {
+        try {
+
+            SGSMetrics.instance().grouperCall();
             final Subject subject = SubjectFinder.findById(userId, true);
+            SGSMetrics.instance().grouperCall();
             final Member member = MemberFinder.findBySubject(session, subject, true);
             @SuppressWarnings("rawtypes")
             final Set memberships = member.getImmediateMemberships();
@@ -727,6 +1422,8 @@ public class GrouperDAO {
             for (Object o : memberships) {
                 final Membership m = (Membership) o;
                 m.getOwnerGroup().deleteMember(subject);
+                SGSMetrics.instance().memberRemoved();
+                indexRemovedMembership(userId, m.getOwnerGroup().getName());
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Removes subject: " + userId
                             + " from group: " + m.getOwnerGroup());
@@ -765,33 +1462,45 @@ public class GrouperDAO {
      */
     public GrouperOperationResultDTO removeFromManagedGroups(final GrouperSession session,
             final String userId) {
+        final long start = SGSMetrics.instance().start();
+        GrouperOperationResultDTO result = null;
         try {
-            final String managerId = session.getSubject().getId();
-            final Subject subject = SubjectFinder.findById(userId, true);
-            final Member member = MemberFinder.findBySubject(session, subject, true);
-            @SuppressWarnings("rawtypes")
-            final Set memberships = member.getImmediateMemberships();
-
-            for (Object o : memberships) {
-                final Membership m = (Membership) o;
-                final Group g = m.getOwnerGroup();
+            result = doRemoveFromManagedGroups(session, userId);
+            return result;
+        } finally {
+            SGSMetrics.instance().record("dao.removeFromManagedGroups", start, result);
+        }
+    }
 
-                final String ownerId = retrieveMembershipOwnerIdSafe(m);
-                if (managerId.equals(ownerId)) {
-                    m.getOwnerGroup().deleteMember(subject);
+    /**
+     * Removes a member from its groups which are managed by this module.
+     * @param session The grouper session.
+     * @param userId The id of the member.
+     * @return The result of the Grouper operation.
+     */
+    private GrouperOperationResultDTO doRemoveFromManagedGroups(final GrouperSession session,
+            final String userId) {
+        try {
+            SGSMetrics.instance().grouperCall();
+            final Subject subject = SubjectFinder.findById(userId, true);
+            for (String groupName : retrieveManagedGroupsNames(session, subject)) {
+                final GroupOrStem groupWrapper = retrieve(session, groupName, false);
+                if (groupWrapper == null) {
+                    LOGGER.warn("The group: " + groupName
+                            + " can't be retrieved while removing member: " + userId + ".");
+                    indexRemovedMembership(userId, groupName);
+                } else {
+                    final Group group = groupWrapper.asGroup();
+                    group.deleteMember(subject);
+                    SGSMetrics.instance().memberRemoved();
+                    indexRemovedMembership(userId, groupName);
                     if (LOGGER.isDebugEnabled()) {
                         LOGGER.debug("Removes subject: " + userId
-                                + " from group: " + m.getOwnerGroup());
+                                + " from group: " + groupName);
                     }
 
-                    handlesEmptyGroupIfNeeded(session, m.getOwnerGroup());
-                } else {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("User " + userId + " not removed from "
-                                + g.getName() + ": group not managed by the module.");
-                    }
+                    handlesEmptyGroupIfNeeded(session, group);
                 }
-
             }
             return GrouperOperationResultDTO.RESULT_OK;
 
@@ -831,14 +1540,13 @@ public class GrouperDAO {
                 if (!definitionsManager.isPreexistingDefinition(folderName) && canDelete) {
 
                     // Checks if the folder has to be deleted.
-                    int nbChildren = folder.getChildGroups().size();
-                    if (nbChildren == 0) {
-                        nbChildren = folder.getChildStems().size();
-                    }
-                    if (nbChildren == 0) {
+                    if (!hasChildren(folder)) {
 
                         final Stem containingFolder = folder.getParentStem();
                         folder.delete();
+                        SGSMetrics.instance().folderDeleted();
+                        SGSCache.instance().invalidateResolution(folderName, true);
+                        SGSCache.instance().invalidateGroupOrFolder(folderName);
                         handlesEmptyFolderIfNeeded(session, containingFolder);
 
                         if (LOGGER.isInfoEnabled()) {
@@ -849,8 +1557,7 @@ public class GrouperDAO {
                         // The folder still contains children so it is not deleted.
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug("The folder " + folderName
-                                    + " contains now: "
-                                    + nbChildren + " children - Not deleted.");
+                                    + " still contains children - Not deleted.");
                         }
                     }
                 }
@@ -873,6 +1580,44 @@ public class GrouperDAO {
         }
     }
 
+    /**
+     * Tests if a group is deleted by the module once it is empty, without modifying it:
+     * the deletion of the empty groups is enabled, the group is not a preexisting one and
+     * it has been created by the subject of the session.
+     * @param session The Grouper session.
+     * @param groupName The name of the group.
+     * @return True if the group is deleted once empty, false if it is kept or does not exist.
+     */
+    public boolean canDeleteEmptyGroup(final GrouperSession session, final String groupName) {
+        if (!deleteEmptyGroups) {
+            return false;
+        }
+        final GroupOrStem groupWrapper = retrieve(session, groupName, false);
+        if (groupWrapper == null) {
+            return false;
+        }
+        try {
+            return isDeletableOnceEmpty(session, groupWrapper.asGroup());
+        } catch (SubjectNotFoundException e) {
+            LOGGER.error(e, e);
+            throw new EscoGrouperException(e);
+        }
+    }
+
+    /**
+     * Tests if a group is neither a preexisting one nor created by another subject
+     * than the one of the session.
+     * @param session The Grouper session.
+     * @param group The group.
+     * @return True if the group can be deleted once empty.
+     * @throws SubjectNotFoundException If the creator of the group can't be retrieved.
+     */
+    private boolean isDeletableOnceEmpty(final GrouperSession session, final Group group)
+        throws SubjectNotFoundException {
+        return !definitionsManager.isPreexistingDefinition(group.getName())
+            && group.getCreateSubject().equals(session.getSubject());
+    }
+
     /**
      * Handles a group which may (or not) be empty.
      * Depending on the strategy, the group may be deleted if it is empty.
@@ -884,19 +1629,18 @@ public class GrouperDAO {
         if (deleteEmptyGroups) {
             final String groupName = group.getName();
             try {
-                final boolean canDelete = group.getCreateSubject().equals(session.getSubject());
-
-                if (!definitionsManager.isPreexistingDefinition(groupName) && canDelete) {
+                if (isDeletableOnceEmpty(session, group)) {
 
                     // Checks if the group has to be deleted.
-                    final int nbMembers = group.getImmediateMembers().size();
-
-                    if (nbMembers == 0) {
+                    if (!hasImmediateMembers(group)) {
                         // The group has to be deleted.
                     	@SuppressWarnings("rawtypes")
                         Set containingGroups = group.toMember().getImmediateMemberships();
                         final Stem folder = group.getParentStem();
                         group.delete();
+                        SGSMetrics.instance().groupDeleted();
+                        SGSCache.instance().invalidateResolution(groupName, false);
+                        SGSCache.instance().invalidateGroupOrFolder(groupName);
                         handlesEmptyFolderIfNeeded(session, folder);
                         for (Object containingGroupObj : containingGroups) {
                             final Membership containingGroup = (Membership) containingGroupObj;
@@ -911,8 +1655,7 @@ public class GrouperDAO {
                         // The group stil contains members so it is not deleted.
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug("The group " + groupName
-                                    + " contains now: "
-                                    + nbMembers + " member(s) - Not deleted.");
+                                    + " still contains members - Not deleted.");
                         }
                     }
                 }
@@ -945,18 +1688,62 @@ public class GrouperDAO {
     public GrouperOperationResultDTO removeFromGroups(final GrouperSession session,
             final String userId,
             final Set<String> groupNames) {
+        return removeFromGroups(session, retrieveSubject(userId), groupNames);
+    }
+
+    /**
+     * Removes a subject from a set of groups.
+     * @param session The grouper session.
+     * @param subject The subject to remove.
+     * @param groupNames The name of the group.
+     * @return The result of the grouper operation result.
+     */
+    public GrouperOperationResultDTO removeFromGroups(final GrouperSession session,
+            final Subject subject,
+            final Set<String> groupNames) {
+        final long start = SGSMetrics.instance().start();
+        GrouperOperationResultDTO result = null;
         try {
-            final Subject subject = SubjectFinder.findById(userId, true);
+            result = doRemoveFromGroups(session, subject, groupNames);
+            return result;
+        } finally {
+            SGSMetrics.instance().record("dao.removeFromGroups", start, result);
+        }
+    }
 
+    /**
+     * Removes a subject from a set of groups.
+     * @param session The grouper session.
+     * @param subject The subject to remove.
+     * @param groupNames The name of the group.
+     * @return The result of the Grouper operation.
+     */
+    private GrouperOperationResultDTO doRemoveFromGroups(final GrouperSession session,
+            final Subject subject,
+            final Set<String> groupNames) {
+        final String userId = subject.getId();
+        try {
             for (String groupName : groupNames) {
-                final Group group = GroupFinder.findByName(session, groupName, true);
+                final GroupOrStem groupWrapper = retrieve(session, groupName, false);
+                if (groupWrapper == null) {
+                    final String msg = "The group: " + groupName
+                    + " can't be retrieved while removing member: "
+                    + userId + ".";
+                    LOGGER.error(msg);
+                    throw new EscoGrouperException(msg);
+                }
+                final Group group = groupWrapper.asGroup();
+                SGSMetrics.instance().grouperCall();
                 if (group.hasImmediateMember(subject)) {
                     group.deleteMember(subject);
+                    SGSMetrics.instance().memberRemoved();
+                    indexRemovedMembership(userId, groupName);
                     if (LOGGER.isDebugEnabled()) {
                         LOGGER.debug("User " + userId + " removed from the group " + groupName + ".");
                     }
                 } else {
                     LOGGER.warn("User " + userId + " is not member of the group " + groupName + ".");
+                    indexRemovedMembership(userId, groupName);
                 }
             }
             return GrouperOperationResultDTO.RESULT_OK;
@@ -989,7 +1776,44 @@ public class GrouperDAO {
             final GroupOrFolderDefinition definition,
             final String subjectId) {
         try {
-            final Subject subj = SubjectFinder.findById(subjectId, true);
+            return removeMember(session, definition, retrieveSubject(subjectId));
+        } catch (EscoGrouperException e) {
+            return new GrouperOperationResultDTO(e);
+        }
+    }
+
+    /**
+     * Removes a member of a group.
+     * @param session The grouper session.
+     * @param definition The group definitnion.
+     * @param subj The subject.
+     * @return The result of the Grouper operation.
+     */
+    public GrouperOperationResultDTO removeMember(final GrouperSession session,
+            final GroupOrFolderDefinition definition,
+            final Subject subj) {
+        final long start = SGSMetrics.instance().start();
+        GrouperOperationResultDTO result = null;
+        try {
+            result = doRemoveMember(session, definition, subj);
+            return result;
+        } finally {
+            SGSMetrics.instance().record("dao.removeMember", start, result);
+        }
+    }
+
+    /**
+     * Removes a member of a group.
+     * @param session The grouper session.
+     * @param definition The group definitnion.
+     * @param subj The subject.
+     * @return The result of the Grouper operation.
+     */
+    private GrouperOperationResultDTO doRemoveMember(final GrouperSession session,
+            final GroupOrFolderDefinition definition,
+            final Subject subj) {
+        final String subjectId = subj.getId();
+        try {
             final GroupOrStem groupWrapper = retrieve(session, definition);
             if (groupWrapper == null) {
                 final String msg = "The group: " + definition.getPath()
@@ -999,10 +1823,13 @@ public class GrouperDAO {
                 throw new EscoGrouperException(msg);
             }
             final Group group = groupWrapper.asGroup();
+            SGSMetrics.instance().grouperCall();
             if (group.hasMember(subj)) {
 
                 // The subject is removed from the group.
                 group.deleteMember(subj);
+                SGSMetrics.instance().memberRemoved();
+                indexRemovedMembership(subjectId, group.getName());
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Subject: " + subjectId
                             + " removed from group: "
@@ -1055,7 +1882,48 @@ public class GrouperDAO {
             final String subjectId,
             final String...values) {
         try {
-            final Subject subj = SubjectFinder.findById(subjectId, true);
+            return addMember(session, definition, retrieveSubject(subjectId), values);
+        } catch (EscoGrouperException e) {
+            return new GrouperOperationResultDTO(e);
+        }
+    }
+
+    /**
+     * Adds a subject as a member of a group.
+     * @param session The grouper session.
+     * @param definition The group definitnion.
+     * @param subj The subject.
+     * @param values The values used to evaluate templates.
+     * @return The result of the Grouper operation.
+     */
+    public GrouperOperationResultDTO addMember(final GrouperSession session,
+            final GroupOrFolderDefinition definition,
+            final Subject subj,
+            final String...values) {
+        final long start = SGSMetrics.instance().start();
+        GrouperOperationResultDTO result = null;
+        try {
+            result = doAddMember(session, definition, subj, values);
+            return result;
+        } finally {
+            SGSMetrics.instance().record("dao.addMember", start, result);
+        }
+    }
+
+    /**
+     * Adds a subject as a member of a group.
+     * @param session The grouper session.
+     * @param definition The group definitnion.
+     * @param subj The subject.
+     * @param values The values used to evaluate templates.
+     * @return The result of the Grouper operation.
+     */
+    private GrouperOperationResultDTO doAddMember(final GrouperSession session,
+            final GroupOrFolderDefinition definition,
+            final Subject subj,
+            final String...values) {
+        final String subjectId = subj.getId();
+        try {
             final GroupOrStem groupWrapper = retrieveOrCreate(session, definition, values);
 
             // Checks the administration privileges and the memberships of the group.
@@ -1063,6 +1931,7 @@ public class GrouperDAO {
             handleMembershipsForGroup(session, groupWrapper, definition, values);
 
             final Group group = groupWrapper.asGroup();
+            SGSMetrics.instance().grouperCall();
             if (group.hasMember(subj)) {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Subject " + subjectId
@@ -1071,6 +1940,8 @@ public class GrouperDAO {
                 }
             } else {
                 group.addMember(subj);
+                SGSMetrics.instance().memberAdded();
+                indexAddedMembership(subjectId, group.getName());
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Subject " + subjectId
                             + " added as member of group: "
@@ -1102,20 +1973,66 @@ public class GrouperDAO {
      * @return The Group or the folder.
      */
     protected GroupOrStem retrieve(final GrouperSession session, final GroupOrFolderDefinition definition) {
+        return retrieve(session, definition.getPath(), definition.isFolder());
+    }
+
+    /**
+     * Retrieves a group or a stem from Grouper.
+     * The resolutions (including the paths which can't be found) are cached: a group or folder
+     * already loaded in the given session is given again without any query while its uuid is
+     * in the resolutions cache (the cache is invalidated when the module deletes it), and the
+     * uuid of a cached group or folder is used to load it in the other sessions.
+     * @param session The grouper session.
+     * @param name The path of the group or folder.
+     * @param isFolder True if the path denotes a folder.
+     * @return The Group or the folder.
+     * @throws EscoGrouperException If the startup checks of the subtree have failed.
+     */
+    protected GroupOrStem retrieve(final GrouperSession session, final String name, final boolean isFolder) {
 
-        final String name = definition.getPath();
+        // Waits for the startup checks of the subtree, if they run in background.
+        startupGate.await(name);
+
+        final SGSCache cache = SGSCache.instance();
+        final String cachedUuid = cache.getFromResolutionsCache(name, isFolder);
+        if (cachedUuid != null) {
+            final GroupOrStem loaded = getLoaded(session, name, isFolder);
+            if (loaded != null && cachedUuid.equals(uuidOf(loaded))) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Resolving " + name + " from the groups and folders of the session: Found.");
+                }
+                return loaded;
+            }
+            final GroupOrStem cached = retrieveByUuid(session, cachedUuid, name, isFolder);
+            if (cached != null) {
+                keepLoaded(session, name, cached);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Resolving " + name + " from the cache: Found.");
+                }
+                return cached;
+            }
+            // The group or folder has been deleted or renamed since its resolution.
+            cache.invalidateResolution(name, isFolder);
+        } else if (cache.hasInResolutionsCache(name, isFolder)) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Resolving " + name + " from the cache: Not found.");
+            }
+            return null;
+        }
 
         // The definition denotes a folder to retrieve.
-        if (definition.isFolder()) {
+        if (isFolder) {
 
             // The folder has to be retrieved from Grouper.
             try {
+                SGSMetrics.instance().grouperCall();
                 final Stem folder = StemFinder.findByName(session, name, true);
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Searching for folder " + name + ": Found.");
                 }
 
                 final GroupOrStem gos = new GroupOrStem(folder);
+                cacheResolution(session, name, gos);
                 return gos;
 
 
@@ -1124,7 +2041,7 @@ public class GrouperDAO {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Searching for folder " + name + ": Not found.");
                 }
-
+                cache.cacheNotFoundResolution(name, true);
                 return null;
             }
         }
@@ -1134,23 +2051,234 @@ public class GrouperDAO {
         try {
 
             // The group can't be fetched from Grouper.
+            SGSMetrics.instance().grouperCall();
             final Group group = GroupFinder.findByName(session, name, true);
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Searching for group " + name + ": found.");
             }
 
             final GroupOrStem gos = new GroupOrStem(group);
+            cacheResolution(session, name, gos);
             return gos;
 
         } catch (GroupNotFoundException e) {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Searching for group: " + name + ": not found.");
             }
+            cache.cacheNotFoundResolution(name, false);
             return null;
         }
 
     }
 
+    /**
+     * Loads a group or a folder from its uuid.
+     * @param session The grouper session.
+     * @param uuid The uuid of the group or folder.
+     * @param name The expected path of the group or folder.
+     * @param isFolder True if the uuid denotes a folder.
+     * @return The Group or the folder, null if it does not exist anymore or if its path has changed.
+     */
+    private GroupOrStem retrieveByUuid(final GrouperSession session, final String uuid,
+            final String name, final boolean isFolder) {
+        SGSMetrics.instance().grouperCall();
+        if (isFolder) {
+            final Stem folder = StemFinder.findByUuid(session, uuid, false);
+            if (folder == null || !name.equals(folder.getName())) {
+                return null;
+            }
+            return new GroupOrStem(folder);
+        }
+        final Group group = GroupFinder.findByUuid(session, uuid, false);
+        if (group == null || !name.equals(group.getName())) {
+            return null;
+        }
+        return new GroupOrStem(group);
+    }
+
+
+    /**
+     * Caches the resolution of a group or folder and keeps it loaded for the session.
+     * @param session The grouper session used to load the group or folder.
+     * @param name The path of the group or folder.
+     * @param groupOrStem The group or folder.
+     */
+    private void cacheResolution(final GrouperSession session, final String name,
+            final GroupOrStem groupOrStem) {
+        SGSCache.instance().cacheResolution(name, groupOrStem);
+        keepLoaded(session, name, groupOrStem);
+    }
+
+    /**
+     * Gives the groups and folders loaded in a session.
+     * The oldest ones are discarded when the session has loaded too many groups and folders.
+     * @param session The grouper session.
+     * @return The groups and folders, by path.
+     */
+    private Map<String, GroupOrStem> loadedIn(final GrouperSession session) {
+        synchronized (sessionsResolutions) {
+            Map<String, GroupOrStem> loaded = sessionsResolutions.get(session);
+            if (loaded == null) {
+                loaded = new LinkedHashMap<String, GroupOrStem>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(final Map.Entry<String, GroupOrStem> eldest) {
+                        return size() > MAX_SESSION_RESOLUTIONS;
+                    }
+                };
+                sessionsResolutions.put(session, loaded);
+            }
+            return loaded;
+        }
+    }
+
+    /**
+     * Gives a group or a folder already loaded in a session.
+     * @param session The grouper session.
+     * @param name The path of the group or folder.
+     * @param isFolder True if the path denotes a folder.
+     * @return The group or folder, null if it has not been loaded in the session.
+     */
+    private GroupOrStem getLoaded(final GrouperSession session, final String name, final boolean isFolder) {
+        final Map<String, GroupOrStem> loaded = loadedIn(session);
+        synchronized (loaded) {
+            return loaded.get(loadedKey(name, isFolder));
+        }
+    }
+
+    /**
+     * Keeps a group or a folder loaded in a session.
+     * @param session The grouper session.
+     * @param name The path of the group or folder.
+     * @param groupOrStem The group or folder.
+     */
+    private void keepLoaded(final GrouperSession session, final String name, final GroupOrStem groupOrStem) {
+        final Map<String, GroupOrStem> loaded = loadedIn(session);
+        synchronized (loaded) {
+            loaded.put(loadedKey(name, groupOrStem.isStem()), groupOrStem);
+        }
+    }
+
+    /**
+     * Builds the key of a group or folder loaded in a session.
+     * @param name The path of the group or folder.
+     * @param isFolder True if the path denotes a folder.
+     * @return The key.
+     */
+    private static String loadedKey(final String name, final boolean isFolder) {
+        if (isFolder) {
+            return FOLDER_KEY_PREFIX + name;
+        }
+        return GROUP_KEY_PREFIX + name;
+    }
+
+    /**
+     * Gives the uuid of a group or folder.
+     * @param groupOrStem The group or folder.
+     * @return The uuid.
+     */
+    private static String uuidOf(final GroupOrStem groupOrStem) {
+        if (groupOrStem.isStem()) {
+            return groupOrStem.asStem().getUuid();
+        }
+        return groupOrStem.asGroup().getUuid();
+    }
+
+    /**
+     * Resolves the groups and folders of a set of definitions, and all their containing
+     * folders, with bulk queries: one query per batch of names instead of one lookup per path.
+     * The resolutions, including the paths which can't be found, are cached and the loaded groups
+     * and folders are kept for the session, so the next calls in the same session to
+     * {@link #retrieve(GrouperSession, GroupOrFolderDefinition)} and
+     * {@link #retrieveOrCreate(GrouperSession, GroupOrFolderDefinition, String...)} do not
+     * query Grouper again. The paths already in the cache are not resolved again.
+     * @param session The grouper session.
+     * @param definitions The definitions (not templates) of the groups and folders.
+     */
+    public void prefetchResolutions(final GrouperSession session,
+            final Collection<GroupOrFolderDefinition> definitions) {
+        final SGSCache cache = SGSCache.instance();
+        final Set<String> groupsNames = new HashSet<String>();
+        final Set<String> foldersNames = new HashSet<String>();
+        for (GroupOrFolderDefinition definition : definitions) {
+            final String path = definition.getPath();
+            if (definition.isFolder()) {
+                foldersNames.add(path);
+            } else {
+                groupsNames.add(path);
+            }
+            int sep = path.lastIndexOf(PATH_SEP);
+            while (sep > 0) {
+                foldersNames.add(path.substring(0, sep));
+                sep = path.lastIndexOf(PATH_SEP, sep - 1);
+            }
+        }
+
+        int found = 0;
+        for (Collection<String> chunk : chunks(groupsNames, cache, false)) {
+            final Set<String> notFound = new HashSet<String>(chunk);
+            final ByHqlStatic query = HibernateSession.byHqlStatic();
+            final String inClause = HibUtils.convertToInClause(chunk, query);
+            SGSMetrics.instance().grouperCall();
+            for (Group group : query.createQuery(GROUPS_BY_NAMES_QUERY + inClause + ")")
+                    .setCacheable(false).list(Group.class)) {
+                cacheResolution(session, group.getName(), new GroupOrStem(group));
+                notFound.remove(group.getName());
+                found++;
+            }
+            for (String name : notFound) {
+                cache.cacheNotFoundResolution(name, false);
+            }
+        }
+        for (Collection<String> chunk : chunks(foldersNames, cache, true)) {
+            final Set<String> notFound = new HashSet<String>(chunk);
+            final ByHqlStatic query = HibernateSession.byHqlStatic();
+            final String inClause = HibUtils.convertToInClause(chunk, query);
+            SGSMetrics.instance().grouperCall();
+            for (Stem folder : query.createQuery(FOLDERS_BY_NAMES_QUERY + inClause + ")")
+                    .setCacheable(false).list(Stem.class)) {
+                cacheResolution(session, folder.getName(), new GroupOrStem(folder));
+                notFound.remove(folder.getName());
+                found++;
+            }
+            for (String name : notFound) {
+                cache.cacheNotFoundResolution(name, true);
+            }
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Resolutions prefetched for " + groupsNames.size() + " group(s) and "
+                    + foldersNames.size() + " folder(s): " + found + " found.");
+        }
+    }
+
+    /**
+     * Splits the names which are not in the resolutions cache in batches for the in clauses.
+     * @param names The names.
+     * @param cache The cache.
+     * @param folder True if the names denote folders.
+     * @return The batches of names.
+     */
+    private static List<Collection<String>> chunks(final Set<String> names, final SGSCache cache,
+            final boolean folder) {
+        final List<Collection<String>> chunks = new ArrayList<Collection<String>>();
+        List<String> chunk = new ArrayList<String>(IN_CLAUSE_BATCH_SIZE);
+        for (String name : names) {
+            if (!cache.hasInResolutionsCache(name, folder)) {
+                chunk.add(name);
+                if (chunk.size() == IN_CLAUSE_BATCH_SIZE) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<String>(IN_CLAUSE_BATCH_SIZE);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
     /**
      * Retrieves or creates a group or folder.
      * If the group or folder can t be retrieved, it is created.
@@ -1172,6 +2300,14 @@ public class GrouperDAO {
         return create(session, definition, values);
     }
 
+    /**
+     * Getter for startupGate.
+     * @return startupGate.
+     */
+    public StartupGate getStartupGate() {
+        return startupGate;
+    }
+
     /**
      * Getter for definitionsManager.
      * @return definitionsManager.
@@ -1235,4 +2371,20 @@ public class GrouperDAO {
     public void setForcePrivileges(final boolean forcePrivileges) {
         this.forcePrivileges = forcePrivileges;
     }
+
+    /**
+     * Getter for managedMembershipsIndex.
+     * @return managedMembershipsIndex.
+     */
+    public ManagedMembershipsIndex getManagedMembershipsIndex() {
+        return managedMembershipsIndex;
+    }
+
+    /**
+     * Setter for managedMembershipsIndex.
+     * @param managedMembershipsIndex the new value for managedMembershipsIndex.
+     */
+    public void setManagedMembershipsIndex(final ManagedMembershipsIndex managedMembershipsIndex) {
+        this.managedMembershipsIndex = managedMembershipsIndex;
+    }
 }
@@ -0,0 +1,532 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.dao;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang.Validate;
+import org.apache.log4j.Logger;
+import org.esco.grouper.domain.beans.GroupPathRegistry;
+import org.esco.grouper.exceptions.EscoGrouperException;
+
+/**
+ * Local and persistent index of the memberships managed by the module:
+ * for each subject id, the names of the groups the module has added it to.
+ *
+ * The index is kept in memory and persisted in an append-only journal file:
+ * each update is appended as a line <code>+|-&lt;TAB&gt;subjectId&lt;TAB&gt;groupName</code>
+ * and the journal is replayed at startup. When the journal becomes too large compared
+ * to the number of indexed memberships, it is compacted (rewritten with only the
+ * current memberships).
+ *
+ * In memory, the managed groups of a subject are stored as a sorted array of the ids
+ * given by a {@link GroupPathRegistry} owned by the index: about 4 bytes by membership,
+ * whatever the number of groups. The ids of the groups without any indexed member are recycled.
+ *
+ * The index is only used once it has been initialized, i.e. when the journal file
+ * already exists at startup or after a rebuild from Grouper.
+ * A journal file must not be shared between several running instances of the module.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class ManagedMembershipsIndex {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(ManagedMembershipsIndex.class);
+
+    /** Header of the journal file. */
+    private static final String HEADER = "# sgs managed memberships index - v1";
+
+    /** Encoding of the journal file. */
+    private static final String ENCODING = "UTF-8";
+
+    /** Separator of the fields in the journal. */
+    private static final char SEP = '\t';
+
+    /** Prefix of the added memberships in the journal. */
+    private static final char ADDED = '+';
+
+    /** Prefix of the removed memberships in the journal. */
+    private static final char REMOVED = '-';
+
+    /** Default minimal number of lines before compacting the journal. */
+    private static final int DEFAULT_MIN_COMPACTION_LINES = 10000;
+
+    /** Default ratio between the journal lines and the indexed memberships which triggers a compaction. */
+    private static final int DEFAULT_COMPACTION_RATIO = 3;
+
+    /** The path of the journal file. */
+    private String indexFile;
+
+    /** Minimal number of lines in the journal before compacting it. */
+    private int minCompactionLines = DEFAULT_MIN_COMPACTION_LINES;
+
+    /** Ratio between the journal lines and the indexed memberships which triggers a compaction. */
+    private int compactionRatio = DEFAULT_COMPACTION_RATIO;
+
+    /** The sorted ids of the managed groups by subject id. */
+    private Map<String, int[]> managedGroups = new HashMap<String, int[]>();
+
+    /** The registry of the paths of the indexed groups. */
+    private GroupPathRegistry registry = new GroupPathRegistry();
+
+    /** Number of memberships in the index. */
+    private int membershipsCount;
+
+    /** Number of lines in the journal. */
+    private int journalLines;
+
+    /** Flag for the initialization of the index. */
+    private boolean initialized;
+
+    /** The writer used to append the updates to the journal. */
+    private Writer journal;
+
+    /**
+     * Builds an instance of ManagedMembershipsIndex.
+     */
+    public ManagedMembershipsIndex() {
+        super();
+    }
+
+    /**
+     * Checks the spring injections and loads the journal if it exists.
+     * @throws Exception
+     */
+    @PostConstruct
+    public void afterPropertiesSet() throws Exception {
+        Validate.notNull(this.indexFile,
+                "property indexFile of class " + this.getClass().getName()
+                + " can not be null");
+
+        Validate.isTrue(this.minCompactionLines > 0,
+                "property minCompactionLines of class " + this.getClass().getName()
+                + " must be greater than 0");
+
+        Validate.isTrue(this.compactionRatio > 1,
+                "property compactionRatio of class " + this.getClass().getName()
+                + " must be greater than 1");
+
+        load();
+    }
+
+    /**
+     * Closes the journal.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOGGER.error(e, e);
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Loads the index from the journal file, if it exists.
+     */
+    protected synchronized void load() {
+        final File file = new File(indexFile);
+        if (!file.exists()) {
+            LOGGER.warn("The managed memberships index " + indexFile
+                    + " does not exist: it will be used only after a rebuild from Grouper.");
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                LOGGER.error("Invalid header in the managed memberships index " + indexFile
+                        + ": the index will be used only after a rebuild from Grouper.");
+                return;
+            }
+            while ((line = reader.readLine()) != null) {
+                replay(line);
+            }
+        } catch (IOException e) {
+            LOGGER.error(e, e);
+            clear();
+            return;
+        } finally {
+            closeQuietly(reader);
+        }
+
+        initialized = true;
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Managed memberships index " + indexFile + " loaded: "
+                    + membershipsCount + " membership(s) for " + managedGroups.size()
+                    + " subject(s), " + journalLines + " line(s) in the journal.");
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Replays a line of the journal.
+     * @param line The line to replay.
+     */
+    private void replay(final String line) {
+        final int firstSep = line.indexOf(SEP);
+        final int secondSep = line.indexOf(SEP, firstSep + 1);
+        if (line.length() == 0 || firstSep != 1 || secondSep < 0) {
+            LOGGER.warn("Invalid line in the managed memberships index: " + line + " - Ignored.");
+            return;
+        }
+        final String subjectId = line.substring(firstSep + 1, secondSep);
+        final String groupName = line.substring(secondSep + 1);
+        if (line.charAt(0) == ADDED) {
+            doAdd(subjectId, groupName);
+        } else if (line.charAt(0) == REMOVED) {
+            doRemove(subjectId, groupName);
+        }
+        journalLines++;
+    }
+
+    /**
+     * Tests if the index can be used.
+     * @return True if the index has been loaded or rebuilt.
+     */
+    public synchronized boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Gives the groups managed for a subject.
+     * @param subjectId The id of the subject.
+     * @return The names of the managed groups.
+     */
+    public synchronized Set<String> getManagedGroups(final String subjectId) {
+        final int[] groups = managedGroups.get(subjectId);
+        if (groups == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> result = new HashSet<String>(groups.length * 2);
+        for (int groupId : groups) {
+            result.add(registry.pathOf(groupId));
+        }
+        return result;
+    }
+
+    /**
+     * Gives the number of managed memberships in the index.
+     * @return The number of memberships.
+     */
+    public synchronized int countMemberships() {
+        return membershipsCount;
+    }
+
+    /**
+     * Gives the number of groups which have at least one managed member in the index.
+     * @return The number of groups.
+     */
+    public synchronized int countGroups() {
+        return registry.size();
+    }
+
+    /**
+     * Adds a managed membership.
+     * @param subjectId The id of the subject.
+     * @param groupName The name of the group.
+     */
+    public synchronized void add(final String subjectId, final String groupName) {
+        if (initialized && doAdd(subjectId, groupName)) {
+            append(ADDED, subjectId, groupName);
+        }
+    }
+
+    /**
+     * Removes a managed membership.
+     * @param subjectId The id of the subject.
+     * @param groupName The name of the group.
+     */
+    public synchronized void remove(final String subjectId, final String groupName) {
+        if (initialized && doRemove(subjectId, groupName)) {
+            append(REMOVED, subjectId, groupName);
+        }
+    }
+
+    /**
+     * Removes managed memberships of a subject.
+     * @param subjectId The id of the subject.
+     * @param groupNames The names of the groups.
+     */
+    public synchronized void remove(final String subjectId, final Collection<String> groupNames) {
+        for (String groupName : groupNames) {
+            remove(subjectId, groupName);
+        }
+    }
+
+    /**
+     * Removes all the managed memberships of a subject.
+     * @param subjectId The id of the subject.
+     */
+    public synchronized void removeAll(final String subjectId) {
+        remove(subjectId, getManagedGroups(subjectId));
+    }
+
+    /**
+     * Replaces the content of the index, for instance with the memberships retrieved
+     * from Grouper, and rewrites the journal.
+     * @param memberships The managed groups by subject id.
+     */
+    public synchronized void rebuild(final Map<String, Set<String>> memberships) {
+        clear();
+        for (Map.Entry<String, Set<String>> entry : memberships.entrySet()) {
+            for (String groupName : entry.getValue()) {
+                doAdd(entry.getKey(), groupName);
+            }
+        }
+        compact();
+        initialized = true;
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Managed memberships index " + indexFile + " rebuilt: "
+                    + membershipsCount + " membership(s) for " + managedGroups.size()
+                    + " subject(s).");
+        }
+    }
+
+    /**
+     * Removes all the memberships from memory.
+     */
+    private void clear() {
+        managedGroups.clear();
+        registry = new GroupPathRegistry();
+        membershipsCount = 0;
+    }
+
+    /**
+     * Adds a membership in memory.
+     * @param subjectId The id of the subject.
+     * @param groupName The name of the group.
+     * @return True if the membership was not already in the index.
+     */
+    private boolean doAdd(final String subjectId, final String groupName) {
+        final int[] groups = managedGroups.get(subjectId);
+        final int knownId = registry.find(groupName);
+        if (groups == null) {
+            managedGroups.put(subjectId, new int[] {registry.acquire(groupName)});
+            membershipsCount++;
+            return true;
+        }
+        if (knownId >= 0 && Arrays.binarySearch(groups, knownId) >= 0) {
+            return false;
+        }
+        final int groupId = registry.acquire(groupName);
+        final int insertion = -Arrays.binarySearch(groups, groupId) - 1;
+        final int[] newGroups = new int[groups.length + 1];
+        System.arraycopy(groups, 0, newGroups, 0, insertion);
+        newGroups[insertion] = groupId;
+        System.arraycopy(groups, insertion, newGroups, insertion + 1, groups.length - insertion);
+        managedGroups.put(subjectId, newGroups);
+        membershipsCount++;
+        return true;
+    }
+
+    /**
+     * Removes a membership in memory.
+     * @param subjectId The id of the subject.
+     * @param groupName The name of the group.
+     * @return True if the membership was in the index.
+     */
+    private boolean doRemove(final String subjectId, final String groupName) {
+        final int[] groups = managedGroups.get(subjectId);
+        final int groupId = registry.find(groupName);
+        if (groups == null || groupId < 0) {
+            return false;
+        }
+        final int position = Arrays.binarySearch(groups, groupId);
+        if (position < 0) {
+            return false;
+        }
+        if (groups.length == 1) {
+            managedGroups.remove(subjectId);
+        } else {
+            final int[] newGroups = new int[groups.length - 1];
+            System.arraycopy(groups, 0, newGroups, 0, position);
+            System.arraycopy(groups, position + 1, newGroups, position, newGroups.length - position);
+            managedGroups.put(subjectId, newGroups);
+        }
+        registry.release(groupId);
+        membershipsCount--;
+        return true;
+    }
+
+    /**
+     * Appends an update to the journal.
+     * @param operation The operation (added or removed).
+     * @param subjectId The id of the subject.
+     * @param groupName The name of the group.
+     */
+    private void append(final char operation, final String subjectId, final String groupName) {
+        try {
+            if (journal == null) {
+                journal = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(indexFile, true), ENCODING));
+            }
+            journal.write(operation);
+            journal.write(SEP);
+            journal.write(subjectId);
+            journal.write(SEP);
+            journal.write(groupName);
+            journal.write('\n');
+            journal.flush();
+            journalLines++;
+        } catch (IOException e) {
+            LOGGER.error(e, e);
+            throw new EscoGrouperException(e);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Compacts the journal if it is too large compared to the number of memberships.
+     */
+    private void compactIfNeeded() {
+        if (journalLines >= minCompactionLines
+                && journalLines > (long) compactionRatio * membershipsCount) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the current memberships.
+     */
+    private void compact() {
+        close();
+        final File file = new File(indexFile);
+        final File tmpFile = new File(indexFile + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), ENCODING));
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, int[]> entry : managedGroups.entrySet()) {
+                for (int groupId : entry.getValue()) {
+                    writer.write(ADDED);
+                    writer.write(SEP);
+                    writer.write(entry.getKey());
+                    writer.write(SEP);
+                    writer.write(registry.pathOf(groupId));
+                    writer.write('\n');
+                }
+            }
+            writer.close();
+            writer = null;
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to delete the file " + indexFile);
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Unable to rename the file " + tmpFile + " to " + indexFile);
+            }
+        } catch (IOException e) {
+            LOGGER.error(e, e);
+            throw new EscoGrouperException(e);
+        } finally {
+            closeQuietly(writer);
+        }
+        journalLines = membershipsCount;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Managed memberships index " + indexFile + " compacted: "
+                    + membershipsCount + " membership(s).");
+        }
+    }
+
+    /**
+     * Closes a reader or a writer, ignoring the errors.
+     * @param closeable The reader or writer to close (may be null).
+     */
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOGGER.warn(e, e);
+            }
+        }
+    }
+
+    /**
+     * Getter for indexFile.
+     * @return indexFile.
+     */
+    public String getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Setter for indexFile.
+     * @param indexFile the new value for indexFile.
+     */
+    public void setIndexFile(final String indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Getter for minCompactionLines.
+     * @return minCompactionLines.
+     */
+    public int getMinCompactionLines() {
+        return minCompactionLines;
+    }
+
+    /**
+     * Setter for minCompactionLines.
+     * @param minCompactionLines the new value for minCompactionLines.
+     */
+    public void setMinCompactionLines(final int minCompactionLines) {
+        this.minCompactionLines = minCompactionLines;
+    }
+
+    /**
+     * Getter for compactionRatio.
+     * @return compactionRatio.
+     */
+    public int getCompactionRatio() {
+        return compactionRatio;
+    }
+
+    /**
+     * Setter for compactionRatio.
+     * @param compactionRatio the new value for compactionRatio.
+     */
+    public void setCompactionRatio(final int compactionRatio) {
+        this.compactionRatio = compactionRatio;
+    }
+}
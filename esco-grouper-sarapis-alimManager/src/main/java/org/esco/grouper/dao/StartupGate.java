@@ -0,0 +1,181 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.dao;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.log4j.Logger;
+import org.esco.grouper.exceptions.EscoGrouperException;
+
+/**
+ * Gate used while the startup checks run in background: the resolution of a path waits
+ * until the startup groups and folders of this path and of its containing folders have been
+ * checked or created. The paths of the other subtrees are not blocked.
+ *
+ * The gate is open by default. It is closed with the paths to check, then each path is released
+ * (or failed) by the startup thread, which never waits on the gate itself.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class StartupGate {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(StartupGate.class);
+
+    /** Separator of the path elements. */
+    private static final char PATH_SEP = ':';
+
+    /** The latches of the paths not released yet. */
+    private final ConcurrentMap<String, CountDownLatch> latches =
+        new ConcurrentHashMap<String, CountDownLatch>();
+
+    /** The error messages of the failed paths. */
+    private final ConcurrentMap<String, String> failures = new ConcurrentHashMap<String, String>();
+
+    /** The thread which performs the startup checks. */
+    private volatile Thread owner;
+
+    /** Flag for an open gate: nothing to wait for. */
+    private volatile boolean open = true;
+
+    /**
+     * Builds an instance of StartupGate.
+     */
+    public StartupGate() {
+        super();
+    }
+
+    /**
+     * Closes the gate for a set of paths.
+     * @param paths The paths of the groups and folders checked or created by the startup.
+     * @param startupThread The thread which performs the startup checks.
+     */
+    public void close(final Collection<String> paths, final Thread startupThread) {
+        failures.clear();
+        for (String path : paths) {
+            latches.putIfAbsent(path, new CountDownLatch(1));
+        }
+        owner = startupThread;
+        open = latches.isEmpty();
+    }
+
+    /**
+     * Releases a path which has been checked or created.
+     * @param path The path.
+     */
+    public void release(final String path) {
+        final CountDownLatch latch = latches.remove(path);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Releases a path which can't be checked or created: the callers waiting for it fail.
+     * @param path The path.
+     * @param message The error message.
+     */
+    public void fail(final String path, final String message) {
+        failures.put(path, message);
+        release(path);
+    }
+
+    /**
+     * Fails all the paths which are not released yet.
+     * @param message The error message.
+     */
+    public void failAll(final String message) {
+        for (String path : latches.keySet()) {
+            fail(path, message);
+        }
+    }
+
+    /**
+     * Opens the gate: all the paths not released yet are released.
+     */
+    public void open() {
+        for (String path : latches.keySet()) {
+            release(path);
+        }
+        open = true;
+        owner = null;
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Startup gate open (" + failures.size() + " failed path(s)).");
+        }
+    }
+
+    /**
+     * Tests if the gate is open.
+     * @return True if the startup checks are done.
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Waits until a path and all its containing folders are released.
+     * @param path The path of a group or folder.
+     * @throws EscoGrouperException If the startup checks of the path or of one of its containing
+     * folders have failed, or if the current thread is interrupted.
+     */
+    public void await(final String path) {
+        if (open || Thread.currentThread() == owner) {
+            checkFailure(path);
+            return;
+        }
+        int end = path.length();
+        while (end > 0) {
+            final String subPath = path.substring(0, end);
+            final CountDownLatch latch = latches.get(subPath);
+            if (latch != null) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Waiting for the startup checks of " + subPath + ".");
+                }
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EscoGrouperException(e);
+                }
+            }
+            end = path.lastIndexOf(PATH_SEP, end - 1);
+        }
+        checkFailure(path);
+    }
+
+    /**
+     * Checks that the startup checks of a path and of its containing folders have not failed.
+     * @param path The path.
+     * @throws EscoGrouperException If the checks have failed.
+     */
+    private void checkFailure(final String path) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        int end = path.length();
+        while (end > 0) {
+            final String failure = failures.get(path.substring(0, end));
+            if (failure != null) {
+                throw new EscoGrouperException(failure);
+            }
+            end = path.lastIndexOf(PATH_SEP, end - 1);
+        }
+    }
+}
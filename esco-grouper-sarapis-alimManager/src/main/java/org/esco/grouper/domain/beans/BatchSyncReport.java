@@ -0,0 +1,150 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package org.esco.grouper.domain.beans;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Report of a batch synchronization: the result of the Grouper operations
+ * for each entity of the batch.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class BatchSyncReport implements Serializable {
+
+    /** Serial version UID.*/
+    private static final long serialVersionUID = -2247361808224914067L;
+
+    /** The results by entity id, in the order of the batch. */
+    private Map<String, GrouperOperationResultDTO> results =
+        new LinkedHashMap<String, GrouperOperationResultDTO>();
+
+    /** Number of entities in error. */
+    private int errorsCount;
+
+    /**
+     * Builds an instance of BatchSyncReport.
+     */
+    public BatchSyncReport() {
+        super();
+    }
+
+    /**
+     * Adds the result for an entity. The result of an entity which appears
+     * several times in the batch replaces the previous one.
+     * @param entityId The id of the entity.
+     * @param result The result of the Grouper operations for this entity.
+     */
+    public synchronized void addResult(final String entityId, final GrouperOperationResultDTO result) {
+        final GrouperOperationResultDTO previous = results.put(entityId, result);
+        if (previous != null && previous.isError()) {
+            errorsCount--;
+        }
+        if (result.isError()) {
+            errorsCount++;
+        }
+    }
+
+    /**
+     * Gives the result for an entity.
+     * @param entityId The id of the entity.
+     * @return The result if the entity is part of the batch, null otherwise.
+     */
+    public synchronized GrouperOperationResultDTO getResult(final String entityId) {
+        return results.get(entityId);
+    }
+
+    /**
+     * Gives the results by entity id.
+     * @return The unmodifiable view of the results.
+     */
+    public synchronized Map<String, GrouperOperationResultDTO> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * Gives the ids of the slowest entities among the traced ones.
+     * @param count The maximal number of ids to give.
+     * @return The ids of the entities, from the slowest.
+     * @see GrouperOperationResultDTO#getTrace()
+     */
+    public synchronized List<String> getSlowest(final int count) {
+        final List<Map.Entry<String, GrouperOperationResultDTO>> traced =
+            new ArrayList<Map.Entry<String, GrouperOperationResultDTO>>();
+        for (Map.Entry<String, GrouperOperationResultDTO> result : results.entrySet()) {
+            if (result.getValue().getTrace() != null) {
+                traced.add(result);
+            }
+        }
+        Collections.sort(traced, new Comparator<Map.Entry<String, GrouperOperationResultDTO>>() {
+            public int compare(final Map.Entry<String, GrouperOperationResultDTO> r1,
+                    final Map.Entry<String, GrouperOperationResultDTO> r2) {
+                return Double.compare(r2.getValue().getTrace().getDuration(),
+                        r1.getValue().getTrace().getDuration());
+            }
+        });
+        final List<String> slowest = new ArrayList<String>(Math.min(count, traced.size()));
+        for (int i = 0; i < count && i < traced.size(); i++) {
+            slowest.add(traced.get(i).getKey());
+        }
+        return slowest;
+    }
+
+    /**
+     * Gives the number of entities processed.
+     * @return The number of entities.
+     */
+    public synchronized int countProcessed() {
+        return results.size();
+    }
+
+    /**
+     * Gives the number of entities in error.
+     * @return The number of errors.
+     */
+    public synchronized int countErrors() {
+        return errorsCount;
+    }
+
+    /**
+     * Tests if at least one entity is in error.
+     * @return True if there is an error.
+     */
+    public synchronized boolean hasErrors() {
+        return errorsCount > 0;
+    }
+
+    /**
+     * Gives the string representation of the report.
+     * @return The string representation of the report.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "#{Processed:" + results.size()
+            + ", Errors:" + errorsCount + "}";
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package org.esco.grouper.domain.beans;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.esco.grouper.exceptions.EscoGrouperException;
+
+/**
+ * Plan of the Grouper operations a synchronization would perform, computed without
+ * writing to Grouper.
+ * The operations are counted and, optionally, streamed to a plan file: one line
+ * <code>OPERATION&lt;TAB&gt;target[&lt;TAB&gt;argument]</code> per operation.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class ChangePlan {
+
+    /**
+     * The planned operations, with a rough default cost used to estimate the duration
+     * of the synchronization.
+     */
+    public enum Operation {
+        /** Creation of a folder. */
+        CREATE_FOLDER(50),
+        /** Creation of a group. */
+        CREATE_GROUP(80),
+        /** Privilege granted to a group on a group. */
+        GRANT_PRIVILEGE(20),
+        /** Group added as a member of a containing group. */
+        ADD_GROUP_MEMBER(30),
+        /** Subject added as a member of a group. */
+        ADD_MEMBER(30),
+        /** Subject removed from a group. */
+        REMOVE_MEMBER(30),
+        /** Deletion of a group which becomes empty. */
+        DELETE_GROUP(80);
+
+        /** The default cost of the operation, in milliseconds. */
+        private final long defaultCost;
+
+        /**
+         * Builds an operation.
+         * @param defaultCost The default cost of the operation, in milliseconds.
+         */
+        private Operation(final long defaultCost) {
+            this.defaultCost = defaultCost;
+        }
+
+        /**
+         * Getter for defaultCost.
+         * @return defaultCost.
+         */
+        public long getDefaultCost() {
+            return defaultCost;
+        }
+    }
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(ChangePlan.class);
+
+    /** First line of the plan file. */
+    private static final String HEADER = "# sgs change plan - v1";
+
+    /** Encoding of the plan file. */
+    private static final String ENCODING = "UTF-8";
+
+    /** Separator of the fields. */
+    private static final char SEP = '\t';
+
+    /** The writer of the plan file (null if the operations are only counted). */
+    private Writer writer;
+
+    /** Number of operations by ordinal of operation. */
+    private final long[] counts = new long[Operation.values().length];
+
+    /** The cost of the operations by ordinal of operation, in milliseconds. */
+    private final long[] costs = new long[Operation.values().length];
+
+    /** The paths of the groups and folders planned for creation. */
+    private final Set<String> plannedCreations = new HashSet<String>();
+
+    /** Number of entities which could not be planned. */
+    private int errorsCount;
+
+    /**
+     * Builds a plan which only counts the operations.
+     */
+    public ChangePlan() {
+        for (Operation operation : Operation.values()) {
+            costs[operation.ordinal()] = operation.getDefaultCost();
+        }
+    }
+
+    /**
+     * Builds a plan which streams the operations in a file.
+     * @param planFile The path of the plan file.
+     */
+    public ChangePlan(final String planFile) {
+        this();
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(planFile), ENCODING));
+            writer.write(HEADER);
+            writer.write('\n');
+        } catch (IOException e) {
+            LOGGER.error(e, e);
+            throw new EscoGrouperException(e);
+        }
+    }
+
+    /**
+     * Records an operation.
+     * @param operation The operation.
+     * @param target The path of the group or folder.
+     * @param argument The subject, the member or the privilege (may be null).
+     */
+    public synchronized void record(final Operation operation, final String target, final String argument) {
+        counts[operation.ordinal()]++;
+        if (writer != null) {
+            try {
+                writer.write(operation.name());
+                writer.write(SEP);
+                writer.write(target);
+                if (argument != null) {
+                    writer.write(SEP);
+                    writer.write(argument);
+                }
+                writer.write('\n');
+            } catch (IOException e) {
+                LOGGER.error(e, e);
+                throw new EscoGrouperException(e);
+            }
+        }
+    }
+
+    /**
+     * Records the creation of a group or a folder, once for each path.
+     * @param folder True for a folder.
+     * @param path The path of the group or folder.
+     * @return True if the creation was not already planned.
+     */
+    public synchronized boolean recordCreation(final boolean folder, final String path) {
+        if (!plannedCreations.add(path)) {
+            return false;
+        }
+        if (folder) {
+            record(Operation.CREATE_FOLDER, path, null);
+        } else {
+            record(Operation.CREATE_GROUP, path, null);
+        }
+        return true;
+    }
+
+    /**
+     * Tests if the creation of a group or folder is planned.
+     * @param path The path of the group or folder.
+     * @return True if the creation is planned.
+     */
+    public synchronized boolean isCreationPlanned(final String path) {
+        return plannedCreations.contains(path);
+    }
+
+    /**
+     * Counts an entity which could not be planned.
+     */
+    public synchronized void recordError() {
+        errorsCount++;
+    }
+
+    /**
+     * Closes the plan file, if any.
+     */
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOGGER.error(e, e);
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Gives the number of planned operations of a kind.
+     * @param operation The operation.
+     * @return The number of planned operations.
+     */
+    public synchronized long count(final Operation operation) {
+        return counts[operation.ordinal()];
+    }
+
+    /**
+     * Gives the number of entities which could not be planned.
+     * @return The number of errors.
+     */
+    public synchronized int countErrors() {
+        return errorsCount;
+    }
+
+    /**
+     * Sets the cost of an operation, for instance the average duration measured on
+     * a previous synchronization.
+     * @param operation The operation.
+     * @param cost The cost, in milliseconds.
+     */
+    public synchronized void setCost(final Operation operation, final long cost) {
+        costs[operation.ordinal()] = cost;
+    }
+
+    /**
+     * Estimates the duration of the planned operations.
+     * @return The estimated duration, in milliseconds.
+     */
+    public synchronized long estimateDuration() {
+        long duration = 0;
+        for (int i = 0; i < counts.length; i++) {
+            duration += counts[i] * costs[i];
+        }
+        return duration;
+    }
+
+    /**
+     * Gives the string representation of the plan.
+     * @return The string representation of the plan.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+        sb.append("#{");
+        for (Operation operation : Operation.values()) {
+            sb.append(operation).append(':').append(counts[operation.ordinal()]).append(", ");
+        }
+        sb.append("Errors:").append(errorsCount);
+        sb.append(", Estimated duration (ms):").append(estimateDuration());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -36,6 +36,9 @@ public class EvaluableString implements Serializable {
     /** The template mask. */
     private int templateMask;
 
+    /** The template compiled at construction (null for the evaluated strings). */
+    private CompiledTemplate template;
+
     /**
      * Builds an instance of EvaluableString.
      */
@@ -59,6 +62,9 @@ public class EvaluableString implements Serializable {
         if (!TemplateElement.isValid(string)) {
             throw new UnknownTemplateElementTempateElement(string);
         }
+        if (!isEvaluated()) {
+            this.template = CompiledTemplate.compile(this.string);
+        }
     }
 
     /**
@@ -73,13 +79,23 @@ public class EvaluableString implements Serializable {
             return this;
         }
 
-        final String newString = TemplateElement.evaluate(templateMask,
-                string, values);
         final EvaluableString evaluated = new EvaluableString();
-        evaluated.string = newString;
+        evaluated.string = template.evaluate(values);
         return evaluated;
     }
 
+    /**
+     * Evaluates the string without building a new instance.
+     * @param values The substitution values used to perform the evaluation.
+     * @return The evaluated string.
+     */
+    public String evaluateString(final String...values) {
+        if (isEvaluated()) {
+            return string;
+        }
+        return template.evaluate(values);
+    }
+
     /**
      * Gives the string without checking the evaluation.
      * @return The string.
@@ -156,6 +172,14 @@ public class EvaluableString implements Serializable {
         return templateMask;
     }
 
+    /**
+     * Getter for template.
+     * @return template.
+     */
+    protected CompiledTemplate getTemplate() {
+        return template;
+    }
+
     /**
      * Setter for string.
      * @param string the new value for string.
@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package org.esco.grouper.domain.beans;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded pool of the evaluated definitions, by evaluated path: the evaluations of a template
+ * with the same path share one instance (with its path and hash value computed once).
+ * The least recently used definitions are removed when the pool is full.
+ * The templates whose display extension or description use template elements which are
+ * not in the path are not interned (see {@link GroupOrFolderDefinition#isInternable()}).
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class EvaluatedDefinitionsPool implements Serializable {
+
+    /** Serial version UID.*/
+    private static final long serialVersionUID = -2713566052388716395L;
+
+    /** Load factor of the map. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Initial capacity of the map. */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Maximal number of definitions in the pool. */
+    private final int maxSize;
+
+    /** The interned definitions by path, in access order. */
+    private final Map<String, GroupOrFolderDefinition> definitions;
+
+    /** Number of evaluations found in the pool. */
+    private long hits;
+
+    /** Number of evaluations added to the pool. */
+    private long misses;
+
+    /**
+     * Builds an instance of EvaluatedDefinitionsPool.
+     * @param maxSize The maximal number of definitions in the pool.
+     */
+    public EvaluatedDefinitionsPool(final int maxSize) {
+        this.maxSize = maxSize;
+        this.definitions = new LinkedHashMap<String, GroupOrFolderDefinition>(
+                Math.min(INITIAL_CAPACITY, maxSize + 1), LOAD_FACTOR, true) {
+            private static final long serialVersionUID = 4785113580235460232L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, GroupOrFolderDefinition> eldest) {
+                return size() > EvaluatedDefinitionsPool.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Evaluates a template, or gives the interned evaluation of the template with the same path.
+     * @param template The template to evaluate.
+     * @param values The values used to evaluate the template elements.
+     * @return The evaluated definition.
+     */
+    public GroupOrFolderDefinition evaluate(final GroupOrFolderDefinition template, final String...values) {
+        if (maxSize <= 0 || !template.isInternable()) {
+            return template.evaluateTemplate(values);
+        }
+
+        final String path = template.evaluatePath(values);
+        synchronized (this) {
+            final GroupOrFolderDefinition interned = definitions.get(path);
+            if (interned != null && interned.getTemplateDefinition() == template) {
+                hits++;
+                return interned;
+            }
+        }
+
+        // The evaluation is performed outside of the lock.
+        final GroupOrFolderDefinition evaluated = template.evaluateTemplate(values);
+        evaluated.hashCode();
+        synchronized (this) {
+            final GroupOrFolderDefinition interned = definitions.get(path);
+            if (interned != null && interned.getTemplateDefinition() == template) {
+                hits++;
+                return interned;
+            }
+            misses++;
+            definitions.put(path, evaluated);
+        }
+        return evaluated;
+    }
+
+    /**
+     * Removes all the interned definitions.
+     */
+    public synchronized void clear() {
+        definitions.clear();
+    }
+
+    /**
+     * Gives the number of interned definitions.
+     * @return The number of interned definitions.
+     */
+    public synchronized int size() {
+        return definitions.size();
+    }
+
+    /**
+     * Getter for hits.
+     * @return hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Getter for misses.
+     * @return misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Getter for maxSize.
+     * @return maxSize.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
@@ -75,6 +75,12 @@ public class GroupOrFolderDefinition implements Serializable, Cloneable {
     /** The hash code.*/
     private int hashcode;
 
+    /** The path, computed once. */
+    private transient String path;
+
+    /** The template from which this definition has been evaluated (null for the templates). */
+    private GroupOrFolderDefinition templateDefinition;
+
     /**
      * Builds an empty instance of GroupOrFolderDefinition.
      */
@@ -136,19 +142,57 @@ public class GroupOrFolderDefinition implements Serializable, Cloneable {
         gofd.membersDefinitions = membersDefinitions;
         gofd.containingGroupsPaths = containingGroupsPaths;
         gofd.privileges = privileges;
+        gofd.templateDefinition = this;
         return gofd;
     }
 
+    /**
+     * Evaluates only the path of a template, without building the evaluated definition.
+     * @param values The values to used to perform the evaluation of the template elements.
+     * @return The evaluated path.
+     */
+    public String evaluatePath(final String...values) {
+        final String evaluatedContainingPath = containingPath.evaluateString(values);
+        if ("".equals(evaluatedContainingPath)) {
+            return extension.evaluateString(values);
+        }
+        return evaluatedContainingPath + Stem.DELIM + extension.evaluateString(values);
+    }
+
+    /**
+     * Tests if the evaluations of this template can be shared by path, i.e. if
+     * the display extension and the description do not use template elements
+     * which are not used in the path.
+     * @return True if two evaluations with the same path are equal.
+     */
+    boolean isInternable() {
+        final int pathMask = extension.getTemplateMask() | containingPath.getTemplateMask();
+        final int otherMask = displayExtension.getTemplateMask() | description.getTemplateMask();
+        return (otherMask & ~pathMask) == 0;
+    }
+
+    /**
+     * Getter for templateDefinition.
+     * @return The template from which this definition has been evaluated (null for the templates).
+     */
+    GroupOrFolderDefinition getTemplateDefinition() {
+        return templateDefinition;
+    }
+
     /**
      * Gives the path associated to this definition.
      * If this definition is a template, then the returned path is also a template.
      * @return The path.
      */
     public String getPath() {
-        if (isRoot()) {
-            return extension.getString();
+        if (path == null) {
+            if (isRoot()) {
+                path = extension.getString();
+            } else {
+                path = containingPath + Stem.DELIM + extension;
+            }
         }
-        return containingPath + Stem.DELIM + extension;
+        return path;
     }
 
     /**
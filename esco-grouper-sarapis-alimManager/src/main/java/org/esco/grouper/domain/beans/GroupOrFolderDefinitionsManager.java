@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,6 +48,9 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
     /** Logger. */
     private static final Logger LOGGER = Logger.getLogger(GroupOrFolderDefinition.class);
 
+    /** Default maximal number of evaluated definitions shared by path. */
+    private static final int DEFAULT_MAX_EVALUATED_DEFINITIONS = 10000;
+
     /** Preexisting definitions. */
     private Map<String, GroupOrFolderDefinition> preexistingDefinitnonsByPath =
         new HashMap<String, GroupOrFolderDefinition>();
@@ -61,12 +65,16 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
     private Map<String, GroupOrFolderDefinition> definitionsByPath =
         new HashMap<String, GroupOrFolderDefinition>();
 
-    /** Stores the group or folder definition by members definition.*/
-    private Map<MembersDefinition, List<GroupOrFolderDefinition>> definitionsByMembersDefinitions;
+    /** The index of the membership rules, compiled once the definitions are registered. */
+    private transient volatile MembershipRulesIndex membershipRulesIndex;
 
     /** The Cache for the Group Service. */
     private SGSCache cache = SGSCache.instance();
 
+    /** The pool of the evaluated definitions, shared by path. */
+    private EvaluatedDefinitionsPool evaluatedDefinitions =
+        new EvaluatedDefinitionsPool(DEFAULT_MAX_EVALUATED_DEFINITIONS);
+
     /**
      * Builds an instance of GroupOrFolderDefinitionsManager.
      */
@@ -81,6 +89,8 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
     public void registerDefinition(final GroupOrFolderDefinition definition) {
         final String path = definition.getPath();
         definitionsByPath.put(path, definition);
+        membershipRulesIndex = null;
+        evaluatedDefinitions.clear();
         if (definition.isPreexisting())  {
             preexistingDefinitnonsByPath.put(definition.getPath(), definition);
         } else if (definition.isCreate()) {
@@ -108,7 +118,7 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
     public Iterator<GroupOrFolderDefinition> getGroupsOrFoldersTemplatesToCreate(final String...values) {
         Set<GroupOrFolderDefinition> definitions = new HashSet<GroupOrFolderDefinition>(gofTemplateToCreate.size());
         for (GroupOrFolderDefinition definition : gofTemplateToCreate) {
-            definitions.add(definition.evaluateTemplate(values));
+            definitions.add(evaluatedDefinitions.evaluate(definition, values));
         }
         return definitions.iterator();
     }
@@ -142,24 +152,20 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
     public Iterator<GroupOrFolderDefinition> getMembershipsForTemplates(final PersonType type,
             final String...attributes) {
 
-        if (definitionsByMembersDefinitions == null) {
-            initilizeDefinitionsByTypeOfMembers();
-        }
-
         // Tries to retrieves the memebrships from the cache.
-        Set<GroupOrFolderDefinition> memberships = cache.getMembershipsForTemplates(type, attributes);
-        if (memberships != null) {
+        final GroupOrFolderDefinition[] cached = cache.getMembershipsForTemplates(type, attributes);
+        if (cached != null) {
 
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Memberships for templates retrieved from cache for type " + type
                         + ": " + Arrays.toString(attributes) + ": "
-                        + memberships);
+                        + Arrays.toString(cached));
             }
-            return memberships.iterator();
+            return Arrays.asList(cached).iterator();
         }
 
         // The memberships has to be evaluated.
-        memberships = new HashSet<GroupOrFolderDefinition>();
+        final Set<GroupOrFolderDefinition> memberships = new LinkedHashSet<GroupOrFolderDefinition>();
         final Iterator<GroupOrFolderDefinition> defsIt = getMemberships(type, attributes);
 
 
@@ -169,7 +175,7 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
 
             // Only template definitions are handled.
             if (def.isTemplate()) {
-                memberships.add(def.evaluateTemplate(attributes));
+                memberships.add(evaluatedDefinitions.evaluate(def, attributes));
             }
         }
 
@@ -179,9 +185,19 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
                     + memberships);
         }
 
-        cache.cacheMemberships(memberships, type, attributes);
+        final GroupOrFolderDefinition[] evaluated = toArray(memberships);
+        cache.cacheMemebrshipsForTemplates(evaluated, type, attributes);
+
+        return Arrays.asList(evaluated).iterator();
+    }
 
-        return memberships.iterator();
+    /**
+     * Converts a set of definitions to an array.
+     * @param definitions The definitions.
+     * @return The array.
+     */
+    private static GroupOrFolderDefinition[] toArray(final Set<GroupOrFolderDefinition> definitions) {
+        return definitions.toArray(new GroupOrFolderDefinition[definitions.size()]);
     }
 
     /**
@@ -194,68 +210,41 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
     public Iterator<GroupOrFolderDefinition> getMemberships(final PersonType type,
             final String...attributes) {
 
-        if (definitionsByMembersDefinitions == null) {
-            initilizeDefinitionsByTypeOfMembers();
-        }
-
-
-
         // Tries to retrieves the memebrships from the cache.
-        Set<GroupOrFolderDefinition> memberships = cache.getMemberships(type, attributes);
-        if (memberships != null) {
+        final GroupOrFolderDefinition[] cached = cache.getMemberships(type, attributes);
+        if (cached != null) {
 
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Memberships retrieved from cache for type " + type
                         + ": " + Arrays.toString(attributes) + ": "
-                        + memberships);
+                        + Arrays.toString(cached));
             }
-            return memberships.iterator();
+            return Arrays.asList(cached).iterator();
         }
 
         // The memberships has to be evaluated.
-        memberships = new HashSet<GroupOrFolderDefinition>();
-
-        // Builds the possible members definitions to use as key for retrieving
-        // the effectively defined ones.
-        final List<MembersDefinition> mbDefs = new ArrayList<MembersDefinition>();
-        mbDefs.add(new MembersDefinition(type));
-        final int nbElts = Math.min(attributes.length, TemplateElement.countAvailableTemplateElements());
-        for (int i = 0; i < nbElts; i++) {
-            // The corresponding attribute to a template element is not null or there is
-            // a default value.
-            if (!"".equals(attributes[i]) || TemplateElement.getAvailableTemplateElement(i).hasDefaultValue()) {
-                mbDefs.add(new MembersDefinition(type, TemplateElement.getAvailableTemplateElement(i)));
+        final Set<GroupOrFolderDefinition> memberships = new LinkedHashSet<GroupOrFolderDefinition>();
+
+        // The candidate definitions are retrieved from the rules index.
+        final GroupOrFolderDefinition[] candidates =
+            getMembershipRulesIndex().getCandidates(type, attributes);
+        for (GroupOrFolderDefinition globalDef : candidates) {
+            if (!globalDef.isTemplate()) {
+                memberships.add(globalDef);
+            } else {
+                memberships.add(evaluatedDefinitions.evaluate(globalDef, attributes));
             }
         }
 
-
-        for (MembersDefinition mbDef : mbDefs) {
-            final List<GroupOrFolderDefinition> gofDefs = definitionsByMembersDefinitions.get(mbDef);
-
-            if (gofDefs == null) {
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("No memberships for members of type " + mbDef + ".");
-                }
-            } else {
-                for (GroupOrFolderDefinition globalDef : gofDefs) {
-
-                    if (!globalDef.isTemplate()) {
-                        memberships.add(globalDef);
-                    } else {
-                        memberships.add(globalDef.evaluateTemplate(attributes));
-                    }
-                }
-
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Memberships evaluated for " + mbDef
-                            + " " + Arrays.toString(attributes) + ": "
-                            + memberships);
-                }
-            }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Memberships evaluated for " + type
+                    + " " + Arrays.toString(attributes) + ": "
+                    + memberships);
         }
-        cache.cacheMemberships(memberships, type, attributes);
+        final GroupOrFolderDefinition[] evaluated = toArray(memberships);
+        cache.cacheMemberships(evaluated, type, attributes);
 
-        return memberships.iterator();
+        return Arrays.asList(evaluated).iterator();
     }
 
     /**
@@ -267,33 +256,38 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
     public GroupOrFolderDefinition getDefinition(final String path, final String...values) {
         final GroupOrFolderDefinition def = definitionsByPath.get(path);
         if (def.isTemplate()) {
-            return def.evaluateTemplate(values);
+            return evaluatedDefinitions.evaluate(def, values);
         }
         return def;
     }
 
     /**
-     * Initializes the map of the groups definition by type of members.
+     * Compiles the index of the membership rules.
+     * This method is called once all the definitions are registered; the index is
+     * compiled again if a definition is registered later.
      */
-    protected void initilizeDefinitionsByTypeOfMembers() {
-
-        definitionsByMembersDefinitions = new HashMap<MembersDefinition, List<GroupOrFolderDefinition>>();
-
-        for (GroupOrFolderDefinition gofd : definitionsByPath.values()) {
-
-            // Stores the definition by type of subject for their members
-            // definition.
-            for (int i = 0; i < gofd.countMembersDefinitions(); i++) {
-
-                List<GroupOrFolderDefinition> defs = definitionsByMembersDefinitions.get(gofd.getMembersDefiniton(i));
+    public synchronized void compileMembershipRules() {
+        membershipRulesIndex = MembershipRulesIndex.compile(definitionsByPath.values());
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Membership rules compiled for " + definitionsByPath.size() + " definition(s).");
+        }
+    }
 
-                if (defs == null) {
-                    defs = new ArrayList<GroupOrFolderDefinition>();
-                    definitionsByMembersDefinitions.put(gofd.getMembersDefiniton(i), defs);
+    /**
+     * Gives the index of the membership rules, compiles it if needed.
+     * @return The index.
+     */
+    protected MembershipRulesIndex getMembershipRulesIndex() {
+        MembershipRulesIndex index = membershipRulesIndex;
+        if (index == null) {
+            synchronized (this) {
+                if (membershipRulesIndex == null) {
+                    compileMembershipRules();
                 }
-                defs.add(gofd);
+                index = membershipRulesIndex;
             }
         }
+        return index;
     }
 
     /**
@@ -378,5 +372,20 @@ public class GroupOrFolderDefinitionsManager implements Serializable {
         }
         return errorsMsg;
     }
-}
 
+    /**
+     * Gives the pool of the evaluated definitions.
+     * @return The pool of the evaluated definitions.
+     */
+    public EvaluatedDefinitionsPool getEvaluatedDefinitions() {
+        return evaluatedDefinitions;
+    }
+
+    /**
+     * Sets the maximal number of evaluated definitions shared by path (0 to disable the sharing).
+     * @param maxEvaluatedDefinitions The maximal number of evaluated definitions.
+     */
+    public void setMaxEvaluatedDefinitions(final int maxEvaluatedDefinitions) {
+        evaluatedDefinitions = new EvaluatedDefinitionsPool(maxEvaluatedDefinitions);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package org.esco.grouper.domain.beans;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of group paths: each path is associated to a small integer id, so the sets
+ * of groups can be stored as sorted arrays of ids.
+ *
+ * A registry is local to its user (e.g. the managed memberships index) and is not thread-safe. The ids acquired with {@link #acquire(String)} are counted
+ * and recycled once all their uses have been released, so a long-lived registry only holds
+ * the paths still in use; the ids given by {@link #idOf(String)} are never recycled.
+ * The ids must not be persisted.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class GroupPathRegistry {
+
+    /** The ids by path. */
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    /** The paths by id (null for a recycled id). */
+    private final List<String> paths = new ArrayList<String>();
+
+    /** The number of uses of each id. */
+    private final List<Integer> uses = new ArrayList<Integer>();
+
+    /** The recycled ids. */
+    private final List<Integer> freeIds = new ArrayList<Integer>();
+
+    /**
+     * Builds an instance of GroupPathRegistry.
+     */
+    public GroupPathRegistry() {
+        super();
+    }
+
+    /**
+     * Gives the id of a path, assigns a new id if the path is not yet registered.
+     * @param path The path of the group.
+     * @return The id of the path.
+     */
+    public int idOf(final String path) {
+        final Integer id = ids.get(path);
+        if (id != null) {
+            return id;
+        }
+        final int newId;
+        if (freeIds.isEmpty()) {
+            newId = paths.size();
+            paths.add(path);
+            uses.add(0);
+        } else {
+            newId = freeIds.remove(freeIds.size() - 1);
+            paths.set(newId, path);
+        }
+        ids.put(path, newId);
+        return newId;
+    }
+
+    /**
+     * Gives the id of a path, without registering it.
+     * @param path The path of the group.
+     * @return The id of the path, -1 if the path is not registered.
+     */
+    public int find(final String path) {
+        final Integer id = ids.get(path);
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * Gives the id of a path and counts one more use of this id.
+     * @param path The path of the group.
+     * @return The id of the path.
+     * @see #release(int)
+     */
+    public int acquire(final String path) {
+        final int id = idOf(path);
+        uses.set(id, uses.get(id) + 1);
+        return id;
+    }
+
+    /**
+     * Releases one use of an id acquired with {@link #acquire(String)}.
+     * The id is recycled when all its uses are released.
+     * @param id The id.
+     */
+    public void release(final int id) {
+        final int remaining = uses.get(id) - 1;
+        uses.set(id, remaining);
+        if (remaining == 0) {
+            ids.remove(paths.get(id));
+            paths.set(id, null);
+            freeIds.add(id);
+        }
+    }
+
+    /**
+     * Gives the path associated to an id.
+     * @param id The id.
+     * @return The path.
+     */
+    public String pathOf(final int id) {
+        return paths.get(id);
+    }
+
+    /**
+     * Gives the number of registered paths.
+     * @return The number of registered paths.
+     */
+    public int size() {
+        return ids.size();
+    }
+}
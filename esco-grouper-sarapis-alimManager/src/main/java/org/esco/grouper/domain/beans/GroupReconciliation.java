@@ -0,0 +1,147 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package org.esco.grouper.domain.beans;
+
+import java.io.Serializable;
+
+/**
+ * Summary of the reconciliation of the managed members of one group:
+ * the number of members added and removed, and the result of the Grouper operations.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class GroupReconciliation implements Serializable {
+
+    /** Serial version UID.*/
+    private static final long serialVersionUID = 8517021937460187372L;
+
+    /** The name of the group. */
+    private String groupName;
+
+    /** Number of members added to the group. */
+    private int added;
+
+    /** Number of members removed from the group. */
+    private int removed;
+
+    /** Number of members which could not be added or removed. */
+    private int failed;
+
+    /** The result of the Grouper operations (the last error, if any). */
+    private GrouperOperationResultDTO result = GrouperOperationResultDTO.RESULT_OK;
+
+    /**
+     * Builds an instance of GroupReconciliation.
+     * @param groupName The name of the group.
+     */
+    public GroupReconciliation(final String groupName) {
+        this.groupName = groupName;
+    }
+
+    /**
+     * Counts a member added to the group.
+     */
+    public void memberAdded() {
+        added++;
+    }
+
+    /**
+     * Counts a member removed from the group.
+     */
+    public void memberRemoved() {
+        removed++;
+    }
+
+    /**
+     * Counts a member which could not be added or removed.
+     * @param error The result of the failed operation.
+     */
+    public void memberFailed(final GrouperOperationResultDTO error) {
+        failed++;
+        this.result = error;
+    }
+
+    /**
+     * Tests if the reconciliation of the group is in error.
+     * @return True if at least one operation has failed.
+     */
+    public boolean isError() {
+        return result.isError();
+    }
+
+    /**
+     * Getter for groupName.
+     * @return groupName.
+     */
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * Getter for added.
+     * @return added.
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    /**
+     * Getter for removed.
+     * @return removed.
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Getter for failed.
+     * @return failed.
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Getter for result.
+     * @return result.
+     */
+    public GrouperOperationResultDTO getResult() {
+        return result;
+    }
+
+    /**
+     * Setter for result.
+     * @param result the new value for result.
+     */
+    public void setResult(final GrouperOperationResultDTO result) {
+        this.result = result;
+    }
+
+    /**
+     * Gives the string representation of the summary.
+     * @return The string representation of the summary.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return groupName + "#{Added:" + added + ", Removed:" + removed
+            + ", Failed:" + failed + "}";
+    }
+}
@@ -41,6 +41,9 @@ public class GrouperOperationResultDTO implements Serializable {
     /** Exception if there is an error. */
     private Exception exception;
 
+    /** Optional timing breakdown of the operation. */
+    private OperationTrace trace;
+
     /**
      * Constructor for GrouperOperationResultDTO.
      */
@@ -57,6 +60,20 @@ public class GrouperOperationResultDTO implements Serializable {
         this.exception = exception;
     }
 
+    /**
+     * Gives a copy of this result which carries a timing breakdown.
+     * The shared instance {@link #RESULT_OK} is never modified.
+     * @param operationTrace The timing breakdown of the operation.
+     * @return The traced result.
+     */
+    public GrouperOperationResultDTO withTrace(final OperationTrace operationTrace) {
+        final GrouperOperationResultDTO traced = new GrouperOperationResultDTO();
+        traced.error = error;
+        traced.exception = exception;
+        traced.trace = operationTrace;
+        return traced;
+    }
+
     /**
      * Getter for error.
      * @return the error
@@ -89,6 +106,14 @@ public class GrouperOperationResultDTO implements Serializable {
         this.exception = exception;
     }
 
+    /**
+     * Getter for trace.
+     * @return the trace, null if the operation has not been traced.
+     */
+    public OperationTrace getTrace() {
+        return trace;
+    }
+
     /**
      * Gives the string representation of the grouper result.
      * @return The string representation of the grouper operation.
@@ -96,9 +121,15 @@ public class GrouperOperationResultDTO implements Serializable {
      */
     @Override
     public String toString() {
+        final String traceString;
+        if (trace == null) {
+            traceString = "";
+        } else {
+            traceString = ", " + trace;
+        }
         if (!isError()) {
-            return getClass().getSimpleName() + "#{No Error}";
+            return getClass().getSimpleName() + "#{No Error" + traceString + "}";
         }
-        return getClass().getSimpleName() + "#{Error:" + exception.getMessage() +  "}";
+        return getClass().getSimpleName() + "#{Error:" + exception.getMessage() + traceString + "}";
     }
 }
@@ -0,0 +1,210 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package org.esco.grouper.domain.beans;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable index of the membership rules (the members definitions of the groups),
+ * compiled once the definitions are parsed.
+ * The candidate definitions for a person are indexed by the type of the person and
+ * by the mask of the template elements which can be used for the person (i.e. the elements
+ * with a non empty value or with a default value): bit <i>i</i> of the mask denotes the
+ * template element registered at the position <i>i</i>.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public final class MembershipRulesIndex {
+
+    /**
+     * Maximal number of template elements for which all the masks are precomputed.
+     * Above this number, the candidates are merged for each call.
+     */
+    private static final int MAX_PRECOMPUTED_ELEMENTS = 12;
+
+    /** Empty array of definitions. */
+    private static final GroupOrFolderDefinition[] NO_DEFINITION = new GroupOrFolderDefinition[0];
+
+    /** Number of template elements considered by the index. */
+    private final int nbElements;
+
+    /** Mask of the template elements which have a default value. */
+    private final int defaultValuesMask;
+
+    /**
+     * The definitions by type ordinal and by rule: index 0 for the rules on the type only,
+     * index i + 1 for the rules on the type and the template element i.
+     */
+    private final GroupOrFolderDefinition[][][] rules;
+
+    /** The candidate definitions by type ordinal and by mask (null if not precomputed). */
+    private final GroupOrFolderDefinition[][][] candidates;
+
+    /**
+     * Builds an instance of MembershipRulesIndex.
+     * @param definitions The groups or folders definitions.
+     */
+    private MembershipRulesIndex(final Collection<GroupOrFolderDefinition> definitions) {
+        nbElements = TemplateElement.countAvailableTemplateElements();
+        final PersonType[] types = PersonType.values();
+
+        int defaults = 0;
+        for (int i = 0; i < nbElements; i++) {
+            if (TemplateElement.getAvailableTemplateElement(i).hasDefaultValue()) {
+                defaults |= 1 << i;
+            }
+        }
+        defaultValuesMask = defaults;
+
+        // Groups the definitions by rule.
+        final List<List<Set<GroupOrFolderDefinition>>> rulesSets =
+            new ArrayList<List<Set<GroupOrFolderDefinition>>>(types.length);
+        for (int t = 0; t < types.length; t++) {
+            final List<Set<GroupOrFolderDefinition>> typeRules =
+                new ArrayList<Set<GroupOrFolderDefinition>>(nbElements + 1);
+            for (int r = 0; r <= nbElements; r++) {
+                typeRules.add(new LinkedHashSet<GroupOrFolderDefinition>());
+            }
+            rulesSets.add(typeRules);
+        }
+        for (GroupOrFolderDefinition gofd : definitions) {
+            for (int i = 0; i < gofd.countMembersDefinitions(); i++) {
+                final MembersDefinition mbDef = gofd.getMembersDefiniton(i);
+                if (mbDef.getMembersType() != null) {
+                    int rule = 0;
+                    if (mbDef.hasDistributionElement()) {
+                        // The rules on an unregistered template element can't match (rule -1).
+                        rule = TemplateElement.getAvailableTemplateElements()
+                            .indexOf(mbDef.getMatchingElement());
+                        if (rule >= 0) {
+                            rule++;
+                        }
+                    }
+                    if (rule >= 0) {
+                        rulesSets.get(mbDef.getMembersType().ordinal()).get(rule).add(gofd);
+                    }
+                }
+            }
+        }
+
+        rules = new GroupOrFolderDefinition[types.length][][];
+        for (int t = 0; t < types.length; t++) {
+            rules[t] = new GroupOrFolderDefinition[nbElements + 1][];
+            for (int r = 0; r <= nbElements; r++) {
+                rules[t][r] = toArray(rulesSets.get(t).get(r));
+            }
+        }
+
+        // Precomputes the candidates for all the masks.
+        if (nbElements <= MAX_PRECOMPUTED_ELEMENTS) {
+            final int nbMasks = 1 << nbElements;
+            candidates = new GroupOrFolderDefinition[types.length][nbMasks][];
+            for (int t = 0; t < types.length; t++) {
+                for (int mask = 0; mask < nbMasks; mask++) {
+                    candidates[t][mask] = merge(t, mask);
+                }
+            }
+        } else {
+            candidates = null;
+        }
+    }
+
+    /**
+     * Compiles the index for a set of definitions, against the registered template elements.
+     * @param definitions The groups or folders definitions.
+     * @return The index.
+     */
+    public static MembershipRulesIndex compile(final Collection<GroupOrFolderDefinition> definitions) {
+        return new MembershipRulesIndex(definitions);
+    }
+
+    /**
+     * Converts a set of definitions to an array.
+     * @param definitions The definitions.
+     * @return The array.
+     */
+    private static GroupOrFolderDefinition[] toArray(final Set<GroupOrFolderDefinition> definitions) {
+        if (definitions.isEmpty()) {
+            return NO_DEFINITION;
+        }
+        return definitions.toArray(new GroupOrFolderDefinition[definitions.size()]);
+    }
+
+    /**
+     * Merges the definitions of the rules for a type and a mask.
+     * @param typeOrdinal The ordinal of the type.
+     * @param mask The mask of the usable template elements.
+     * @return The definitions.
+     */
+    private GroupOrFolderDefinition[] merge(final int typeOrdinal, final int mask) {
+        final GroupOrFolderDefinition[][] typeRules = rules[typeOrdinal];
+        if (mask == 0) {
+            return typeRules[0];
+        }
+        final Set<GroupOrFolderDefinition> merged = new LinkedHashSet<GroupOrFolderDefinition>();
+        for (GroupOrFolderDefinition gofd : typeRules[0]) {
+            merged.add(gofd);
+        }
+        for (int i = 0; i < nbElements; i++) {
+            if ((mask & (1 << i)) != 0) {
+                for (GroupOrFolderDefinition gofd : typeRules[i + 1]) {
+                    merged.add(gofd);
+                }
+            }
+        }
+        return toArray(merged);
+    }
+
+    /**
+     * Computes the mask of the template elements which can be used for a person:
+     * the elements with a non empty value or with a default value.
+     * @param attributes The values of the template elements for the person.
+     * @return The mask.
+     */
+    public int computeMask(final String...attributes) {
+        final int nbElts = Math.min(attributes.length, nbElements);
+        int mask = 0;
+        for (int i = 0; i < nbElts; i++) {
+            if (!"".equals(attributes[i])) {
+                mask |= 1 << i;
+            }
+        }
+        return mask | (defaultValuesMask & ((1 << nbElts) - 1));
+    }
+
+    /**
+     * Gives the candidate definitions for a type of person and the values of the template elements.
+     * The returned array must not be modified.
+     * @param type The type of the person.
+     * @param attributes The values of the template elements for the person.
+     * @return The candidate definitions (the templates are not evaluated).
+     */
+    public GroupOrFolderDefinition[] getCandidates(final PersonType type, final String...attributes) {
+        final int mask = computeMask(attributes);
+        if (candidates != null) {
+            return candidates[type.ordinal()][mask];
+        }
+        return merge(type.ordinal(), mask);
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.domain.beans;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timing breakdown of a call to the group service: the time spent in each step
+ * (subject lookup, managed groups retrieval, memberships resolution, creations, additions,
+ * removals...) and the number of Grouper calls (lookups, queries and modifications).
+ *
+ * The trace of the current call is bound to the current thread between {@link #begin()} and
+ * {@link #end()}; the durations of the nested steps are included in the duration of their
+ * enclosing step (e.g. the creation of a group in the addition of a member).
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class OperationTrace implements Serializable {
+
+    /** Serial version UID.*/
+    private static final long serialVersionUID = -3126473581306642911L;
+
+    /** Number of nanoseconds in one millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    /** The trace of the current thread. */
+    private static final ThreadLocal<OperationTrace> CURRENT = new ThreadLocal<OperationTrace>();
+
+    /** The number of calls and the duration of each step, by step name. */
+    private final Map<String, long[]> steps = new LinkedHashMap<String, long[]>();
+
+    /** Number of Grouper calls. */
+    private int grouperCalls;
+
+    /** Start time, in nanoseconds. */
+    private final transient long start;
+
+    /** Total duration, in nanoseconds. */
+    private long duration;
+
+    /**
+     * Builds an instance of OperationTrace.
+     */
+    protected OperationTrace() {
+        start = System.nanoTime();
+    }
+
+    /**
+     * Starts a trace bound to the current thread.
+     * @return The new trace.
+     */
+    public static OperationTrace begin() {
+        final OperationTrace trace = new OperationTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Gives the trace of the current thread.
+     * @return The current trace, null if no trace is started.
+     */
+    public static OperationTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Ends the trace: the total duration is computed and the trace is
+     * unbound from the current thread.
+     */
+    public void end() {
+        duration = System.nanoTime() - start;
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Adds the duration of a step.
+     * @param step The name of the step.
+     * @param nanos The duration, in nanoseconds.
+     */
+    public void addStep(final String step, final long nanos) {
+        long[] stats = steps.get(step);
+        if (stats == null) {
+            stats = new long[2];
+            steps.put(step, stats);
+        }
+        stats[0]++;
+        stats[1] += nanos;
+    }
+
+    /**
+     * Counts a Grouper call.
+     */
+    public void grouperCall() {
+        grouperCalls++;
+    }
+
+    /**
+     * Getter for grouperCalls.
+     * @return grouperCalls.
+     */
+    public int getGrouperCalls() {
+        return grouperCalls;
+    }
+
+    /**
+     * Gives the total duration of the traced call.
+     * @return The duration in milliseconds.
+     */
+    public double getDuration() {
+        return duration / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gives the names of the traced steps.
+     * @return The names of the steps, in the order of their first call.
+     */
+    public Iterable<String> getSteps() {
+        return Collections.unmodifiableSet(steps.keySet());
+    }
+
+    /**
+     * Gives the number of calls of a step.
+     * @param step The name of the step.
+     * @return The number of calls.
+     */
+    public long getStepCalls(final String step) {
+        final long[] stats = steps.get(step);
+        if (stats == null) {
+            return 0;
+        }
+        return stats[0];
+    }
+
+    /**
+     * Gives the total duration of a step.
+     * @param step The name of the step.
+     * @return The duration in milliseconds.
+     */
+    public double getStepDuration(final String step) {
+        final long[] stats = steps.get(step);
+        if (stats == null) {
+            return 0;
+        }
+        return stats[1] / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gives the string representation of the trace.
+     * @return The total duration, the number of Grouper calls and the breakdown by step.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+        sb.append("#{");
+        sb.append(String.format("%.1fms", getDuration()));
+        sb.append(", grouper calls: ");
+        sb.append(grouperCalls);
+        for (Map.Entry<String, long[]> step : steps.entrySet()) {
+            sb.append(", ");
+            sb.append(step.getKey());
+            sb.append(": ");
+            sb.append(step.getValue()[0]);
+            sb.append("x/");
+            sb.append(String.format("%.1fms", step.getValue()[1] / NANOS_PER_MILLI));
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package org.esco.grouper.domain.beans;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Report of a group-centric reconciliation: the members added and removed for each group.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class ReconciliationReport implements Serializable {
+
+    /** Serial version UID.*/
+    private static final long serialVersionUID = -4377305853563226474L;
+
+    /** The summaries by group name, in the order of the reconciliation. */
+    private Map<String, GroupReconciliation> groups = new LinkedHashMap<String, GroupReconciliation>();
+
+    /** Total number of members added. */
+    private int addedCount;
+
+    /** Total number of members removed. */
+    private int removedCount;
+
+    /** Number of groups in error. */
+    private int errorsCount;
+
+    /** The result of the whole reconciliation (error if it has been interrupted). */
+    private GrouperOperationResultDTO result = GrouperOperationResultDTO.RESULT_OK;
+
+    /**
+     * Builds an instance of ReconciliationReport.
+     */
+    public ReconciliationReport() {
+        super();
+    }
+
+    /**
+     * Adds the summary of a group.
+     * @param summary The summary of the reconciliation of the group.
+     */
+    public synchronized void addGroup(final GroupReconciliation summary) {
+        groups.put(summary.getGroupName(), summary);
+        addedCount += summary.getAdded();
+        removedCount += summary.getRemoved();
+        if (summary.isError()) {
+            errorsCount++;
+        }
+    }
+
+    /**
+     * Gives the summary of a group.
+     * @param groupName The name of the group.
+     * @return The summary if the group has been reconciled, null otherwise.
+     */
+    public synchronized GroupReconciliation getGroup(final String groupName) {
+        return groups.get(groupName);
+    }
+
+    /**
+     * Gives the summaries by group name.
+     * @return The unmodifiable view of the summaries.
+     */
+    public synchronized Map<String, GroupReconciliation> getGroups() {
+        return Collections.unmodifiableMap(groups);
+    }
+
+    /**
+     * Gives the total number of members added.
+     * @return The number of members added.
+     */
+    public synchronized int countAdded() {
+        return addedCount;
+    }
+
+    /**
+     * Gives the total number of members removed.
+     * @return The number of members removed.
+     */
+    public synchronized int countRemoved() {
+        return removedCount;
+    }
+
+    /**
+     * Gives the number of groups in error.
+     * @return The number of groups in error.
+     */
+    public synchronized int countErrors() {
+        return errorsCount;
+    }
+
+    /**
+     * Tests if at least one group is in error.
+     * @return True if there is an error.
+     */
+    public synchronized boolean hasErrors() {
+        return errorsCount > 0 || result.isError();
+    }
+
+    /**
+     * Getter for result.
+     * @return result.
+     */
+    public synchronized GrouperOperationResultDTO getResult() {
+        return result;
+    }
+
+    /**
+     * Setter for result.
+     * @param result the new value for result.
+     */
+    public synchronized void setResult(final GrouperOperationResultDTO result) {
+        this.result = result;
+    }
+
+    /**
+     * Gives the string representation of the report.
+     * @return The string representation of the report.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "#{Groups:" + groups.size()
+            + ", Added:" + addedCount + ", Removed:" + removedCount
+            + ", Errors:" + errorsCount + "}";
+    }
+}
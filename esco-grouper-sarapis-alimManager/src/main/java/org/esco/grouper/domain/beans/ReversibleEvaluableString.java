@@ -62,10 +62,8 @@ public class ReversibleEvaluableString extends EvaluableString {
         if (isEvaluated()) {
             return this;
         }
-        final String newString = TemplateElement.evaluate(getTemplateMask(),
-                getString(), values);
         final ReversibleEvaluableString evaluated = new ReversibleEvaluableString();
-        evaluated.setString(newString);
+        evaluated.setString(getTemplate().evaluate(values));
         evaluated.setTemplateString(getTemplateString());
         return evaluated;
     }
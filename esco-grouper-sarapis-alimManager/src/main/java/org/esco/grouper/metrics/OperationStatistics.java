@@ -0,0 +1,226 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Statistics of an operation: number of calls and errors, and a histogram of the durations.
+ * The histogram uses buckets with power of two bounds, in microseconds, so the percentiles
+ * are approximated by the upper bound of their bucket.
+ * The statistics are updated without lock.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class OperationStatistics implements OperationStatisticsMBean {
+
+    /** Number of buckets: the last one contains the durations above 2^30 microseconds. */
+    private static final int BUCKETS = 32;
+
+    /** Number of nanoseconds in one microsecond. */
+    private static final long NANOS_PER_MICRO = 1000L;
+
+    /** Number of microseconds in one millisecond. */
+    private static final double MICROS_PER_MILLI = 1000d;
+
+    /** Percentiles. */
+    private static final double P50 = 0.5d;
+
+    /** Percentiles. */
+    private static final double P95 = 0.95d;
+
+    /** Percentiles. */
+    private static final double P99 = 0.99d;
+
+    /** The name of the operation. */
+    private final String operation;
+
+    /** Number of calls. */
+    private final AtomicLong count = new AtomicLong();
+
+    /** Number of errors. */
+    private final AtomicLong errors = new AtomicLong();
+
+    /** Total duration, in microseconds. */
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    /** Maximal duration, in microseconds. */
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /** Number of calls by bucket. */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Builds an instance of OperationStatistics.
+     * @param operation The name of the operation.
+     */
+    public OperationStatistics(final String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Records a call.
+     * @param durationNanos The duration of the call, in nanoseconds.
+     * @param error True if the call is in error.
+     */
+    public void record(final long durationNanos, final boolean error) {
+        final long micros = Math.max(0, durationNanos / NANOS_PER_MICRO);
+        count.incrementAndGet();
+        if (error) {
+            errors.incrementAndGet();
+        }
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+        buckets.incrementAndGet(bucket(micros));
+    }
+
+    /**
+     * Gives the bucket of a duration: bucket i contains the durations up to 2^i microseconds.
+     * @param micros The duration, in microseconds.
+     * @return The index of the bucket.
+     */
+    private static int bucket(final long micros) {
+        if (micros <= 1) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros - 1));
+    }
+
+    /**
+     * Gives a percentile of the durations.
+     * @param percentile The percentile (between 0 and 1).
+     * @return The upper bound of the bucket of the percentile, in milliseconds.
+     */
+    private double percentile(final double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return (1L << i) / MICROS_PER_MILLI;
+            }
+        }
+        return getMaxTime();
+    }
+
+    /**
+     * Gives the name of the operation.
+     * @return The name of the operation.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#getOperation()
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Gives the number of calls.
+     * @return The number of calls.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#getCount()
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gives the number of calls in error.
+     * @return The number of errors.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#getErrors()
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Gives the total duration of the calls.
+     * @return The total duration.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#getTotalTime()
+     */
+    public double getTotalTime() {
+        return totalMicros.get() / MICROS_PER_MILLI;
+    }
+
+    /**
+     * Gives the mean duration of the calls.
+     * @return The mean duration.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#getMeanTime()
+     */
+    public double getMeanTime() {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        return getTotalTime() / total;
+    }
+
+    /**
+     * Gives the maximal duration of the calls.
+     * @return The maximal duration.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#getMaxTime()
+     */
+    public double getMaxTime() {
+        return maxMicros.get() / MICROS_PER_MILLI;
+    }
+
+    /**
+     * Gives the median of the durations.
+     * @return The median.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#get50thPercentile()
+     */
+    public double get50thPercentile() {
+        return percentile(P50);
+    }
+
+    /**
+     * Gives the 95th percentile of the durations.
+     * @return The 95th percentile.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#get95thPercentile()
+     */
+    public double get95thPercentile() {
+        return percentile(P95);
+    }
+
+    /**
+     * Gives the 99th percentile of the durations.
+     * @return The 99th percentile.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#get99thPercentile()
+     */
+    public double get99thPercentile() {
+        return percentile(P99);
+    }
+
+    /**
+     * Resets the statistics.
+     * @see org.esco.grouper.metrics.OperationStatisticsMBean#reset()
+     */
+    public void reset() {
+        count.set(0);
+        errors.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+    }
+}
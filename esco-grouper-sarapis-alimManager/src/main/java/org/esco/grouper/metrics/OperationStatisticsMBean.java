@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.metrics;
+
+/**
+ * JMX interface for the statistics of an operation.
+ * The durations are given in milliseconds.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public interface OperationStatisticsMBean {
+
+    /**
+     * Gives the name of the operation.
+     * @return The name of the operation.
+     */
+    String getOperation();
+
+    /**
+     * Gives the number of calls.
+     * @return The number of calls.
+     */
+    long getCount();
+
+    /**
+     * Gives the number of calls in error.
+     * @return The number of errors.
+     */
+    long getErrors();
+
+    /**
+     * Gives the total duration of the calls.
+     * @return The total duration.
+     */
+    double getTotalTime();
+
+    /**
+     * Gives the mean duration of the calls.
+     * @return The mean duration.
+     */
+    double getMeanTime();
+
+    /**
+     * Gives the maximal duration of the calls.
+     * @return The maximal duration.
+     */
+    double getMaxTime();
+
+    /**
+     * Gives the median of the durations (upper bound of the bucket).
+     * @return The median.
+     */
+    double get50thPercentile();
+
+    /**
+     * Gives the 95th percentile of the durations (upper bound of the bucket).
+     * @return The 95th percentile.
+     */
+    double get95thPercentile();
+
+    /**
+     * Gives the 99th percentile of the durations (upper bound of the bucket).
+     * @return The 99th percentile.
+     */
+    double get99thPercentile();
+
+    /**
+     * Resets the statistics.
+     */
+    void reset();
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+import org.esco.grouper.domain.beans.GrouperOperationResultDTO;
+import org.esco.grouper.domain.beans.OperationTrace;
+
+/**
+ * Metrics of the SGS: the statistics of the durations of the service methods and of the
+ * DAO operations, and the counters of the Grouper modifications.
+ *
+ * The statistics of each operation are registered as a JMX bean
+ * (org.esco.grouper:type=SGSMetrics,operation=...) when the operation is recorded
+ * for the first time; the counters are registered as org.esco.grouper:type=SGSMetrics,name=counters.
+ * The calls and the Grouper calls are also added to the {@link OperationTrace} of the
+ * current thread, if any.
+ * Usage:
+ * <pre>
+ * final long start = SGSMetrics.instance().start();
+ * boolean error = true;
+ * try {
+ *     ...
+ *     error = false;
+ * } finally {
+ *     SGSMetrics.instance().record("operation", start, error);
+ * }
+ * </pre>
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public final class SGSMetrics implements SGSMetricsMBean {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(SGSMetrics.class);
+
+    /** Domain and type of the JMX beans. */
+    private static final String JMX_PREFIX = "org.esco.grouper:type=SGSMetrics,";
+
+    /** The instance. */
+    private static final SGSMetrics INSTANCE = new SGSMetrics();
+
+    /** The statistics by operation. */
+    private final ConcurrentMap<String, OperationStatistics> statistics =
+        new ConcurrentHashMap<String, OperationStatistics>();
+
+    /** Number of created groups. */
+    private final AtomicLong groupsCreated = new AtomicLong();
+
+    /** Number of deleted groups. */
+    private final AtomicLong groupsDeleted = new AtomicLong();
+
+    /** Number of created folders. */
+    private final AtomicLong foldersCreated = new AtomicLong();
+
+    /** Number of deleted folders. */
+    private final AtomicLong foldersDeleted = new AtomicLong();
+
+    /** Number of added memberships. */
+    private final AtomicLong membersAdded = new AtomicLong();
+
+    /** Number of removed memberships. */
+    private final AtomicLong membersRemoved = new AtomicLong();
+
+    /** Number of granted privileges. */
+    private final AtomicLong privilegesGranted = new AtomicLong();
+
+    /**
+     * Builds an instance of SGSMetrics.
+     */
+    private SGSMetrics() {
+        register(this, JMX_PREFIX + "name=counters");
+    }
+
+    /**
+     * Gives the instance.
+     * @return The instance.
+     */
+    public static SGSMetrics instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers a JMX bean, replacing the previous one with the same name.
+     * @param bean The bean.
+     * @param name The name of the bean.
+     */
+    private static void register(final Object bean, final String name) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(bean, objectName);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register the JMX metrics " + name + ".", e);
+        }
+    }
+
+    /**
+     * Gives the start time of an operation.
+     * @return The start time, in nanoseconds.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a call of an operation.
+     * @param operation The name of the operation.
+     * @param start The start time of the call, given by {@link #start()}.
+     * @param error True if the call is in error.
+     */
+    public void record(final String operation, final long start, final boolean error) {
+        final long duration = System.nanoTime() - start;
+        getStatistics(operation).record(duration, error);
+        final OperationTrace trace = OperationTrace.current();
+        if (trace != null) {
+            trace.addStep(operation, duration);
+        }
+    }
+
+    /**
+     * Records a call of an operation which gives the result of a Grouper operation.
+     * @param operation The name of the operation.
+     * @param start The start time of the call, given by {@link #start()}.
+     * @param result The result of the call, null if the call has thrown an exception.
+     */
+    public void record(final String operation, final long start, final GrouperOperationResultDTO result) {
+        record(operation, start, result == null || result.isError());
+    }
+
+    /**
+     * Gives the statistics of an operation, registering them if needed.
+     * @param operation The name of the operation.
+     * @return The statistics.
+     */
+    public OperationStatistics getStatistics(final String operation) {
+        OperationStatistics stats = statistics.get(operation);
+        if (stats == null) {
+            final OperationStatistics newStats = new OperationStatistics(operation);
+            stats = statistics.putIfAbsent(operation, newStats);
+            if (stats == null) {
+                stats = newStats;
+                register(stats, JMX_PREFIX + "operation=" + ObjectName.quote(operation));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Counts a Grouper call (lookup, query or modification) in the trace of the current thread.
+     */
+    public void grouperCall() {
+        final OperationTrace trace = OperationTrace.current();
+        if (trace != null) {
+            trace.grouperCall();
+        }
+    }
+
+    /**
+     * Counts a created group.
+     */
+    public void groupCreated() {
+        groupsCreated.incrementAndGet();
+        grouperCall();
+    }
+
+    /**
+     * Counts a deleted group.
+     */
+    public void groupDeleted() {
+        groupsDeleted.incrementAndGet();
+        grouperCall();
+    }
+
+    /**
+     * Counts a created folder.
+     */
+    public void folderCreated() {
+        foldersCreated.incrementAndGet();
+        grouperCall();
+    }
+
+    /**
+     * Counts a deleted folder.
+     */
+    public void folderDeleted() {
+        foldersDeleted.incrementAndGet();
+        grouperCall();
+    }
+
+    /**
+     * Counts an added membership.
+     */
+    public void memberAdded() {
+        membersAdded.incrementAndGet();
+        grouperCall();
+    }
+
+    /**
+     * Counts a removed membership.
+     */
+    public void memberRemoved() {
+        membersRemoved.incrementAndGet();
+        grouperCall();
+    }
+
+    /**
+     * Counts a granted privilege.
+     */
+    public void privilegeGranted() {
+        privilegesGranted.incrementAndGet();
+        grouperCall();
+    }
+
+    /**
+     * Getter for groupsCreated.
+     * @return groupsCreated.
+     * @see org.esco.grouper.metrics.SGSMetricsMBean#getGroupsCreated()
+     */
+    public long getGroupsCreated() {
+        return groupsCreated.get();
+    }
+
+    /**
+     * Getter for groupsDeleted.
+     * @return groupsDeleted.
+     * @see org.esco.grouper.metrics.SGSMetricsMBean#getGroupsDeleted()
+     */
+    public long getGroupsDeleted() {
+        return groupsDeleted.get();
+    }
+
+    /**
+     * Getter for foldersCreated.
+     * @return foldersCreated.
+     * @see org.esco.grouper.metrics.SGSMetricsMBean#getFoldersCreated()
+     */
+    public long getFoldersCreated() {
+        return foldersCreated.get();
+    }
+
+    /**
+     * Getter for foldersDeleted.
+     * @return foldersDeleted.
+     * @see org.esco.grouper.metrics.SGSMetricsMBean#getFoldersDeleted()
+     */
+    public long getFoldersDeleted() {
+        return foldersDeleted.get();
+    }
+
+    /**
+     * Getter for membersAdded.
+     * @return membersAdded.
+     * @see org.esco.grouper.metrics.SGSMetricsMBean#getMembersAdded()
+     */
+    public long getMembersAdded() {
+        return membersAdded.get();
+    }
+
+    /**
+     * Getter for membersRemoved.
+     * @return membersRemoved.
+     * @see org.esco.grouper.metrics.SGSMetricsMBean#getMembersRemoved()
+     */
+    public long getMembersRemoved() {
+        return membersRemoved.get();
+    }
+
+    /**
+     * Getter for privilegesGranted.
+     * @return privilegesGranted.
+     * @see org.esco.grouper.metrics.SGSMetricsMBean#getPrivilegesGranted()
+     */
+    public long getPrivilegesGranted() {
+        return privilegesGranted.get();
+    }
+
+    /**
+     * Resets the counters and the statistics of all the operations.
+     * @see org.esco.grouper.metrics.SGSMetricsMBean#reset()
+     */
+    public void reset() {
+        groupsCreated.set(0);
+        groupsDeleted.set(0);
+        foldersCreated.set(0);
+        foldersDeleted.set(0);
+        membersAdded.set(0);
+        membersRemoved.set(0);
+        privilegesGranted.set(0);
+        for (OperationStatistics stats : statistics.values()) {
+            stats.reset();
+        }
+    }
+}
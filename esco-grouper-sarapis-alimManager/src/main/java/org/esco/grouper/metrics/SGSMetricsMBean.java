@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.metrics;
+
+/**
+ * JMX interface for the counters of the Grouper modifications.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public interface SGSMetricsMBean {
+
+    /**
+     * Gives the number of created groups.
+     * @return The number of created groups.
+     */
+    long getGroupsCreated();
+
+    /**
+     * Gives the number of deleted groups.
+     * @return The number of deleted groups.
+     */
+    long getGroupsDeleted();
+
+    /**
+     * Gives the number of created folders.
+     * @return The number of created folders.
+     */
+    long getFoldersCreated();
+
+    /**
+     * Gives the number of deleted folders.
+     * @return The number of deleted folders.
+     */
+    long getFoldersDeleted();
+
+    /**
+     * Gives the number of added memberships.
+     * @return The number of added memberships.
+     */
+    long getMembersAdded();
+
+    /**
+     * Gives the number of removed memberships.
+     * @return The number of removed memberships.
+     */
+    long getMembersRemoved();
+
+    /**
+     * Gives the number of granted privileges.
+     * @return The number of granted privileges.
+     */
+    long getPrivilegesGranted();
+
+    /**
+     * Resets the counters.
+     */
+    void reset();
+}
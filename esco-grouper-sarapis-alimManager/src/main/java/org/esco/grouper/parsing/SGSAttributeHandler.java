@@ -82,6 +82,21 @@ public class SGSAttributeHandler implements Serializable {
     /** Condition Attribute. */
     public static final String CONDITION_GROUP_EXT_ATTR = "condition-group-ext";
 
+    /** Cache region attribute. */
+    public static final String REGION_ATTR = "region";
+
+    /** Max entries attribute. */
+    public static final String MAX_ENTRIES_ATTR = "max-entries";
+
+    /** Time to live attribute. */
+    public static final String TTL_ATTR = "time-to-live";
+
+    /** Time to idle attribute. */
+    public static final String TTI_ATTR = "time-to-idle";
+
+    /** Eviction policy attribute. */
+    public static final String EVICTION_POLICY_ATTR = "eviction-policy";
+
     /** Serial version UID.*/
     private static final long serialVersionUID = 8391732649319550004L;
 
@@ -133,6 +148,21 @@ public class SGSAttributeHandler implements Serializable {
     /** Condition value on group extension. */
     private Pattern conditionGroupExt;
 
+    /** Cache region value. */
+    private String region;
+
+    /** Max entries value. */
+    private Integer maxEntries;
+
+    /** Time to live value. */
+    private Long timeToLive;
+
+    /** Time to idle value. */
+    private Long timeToIdle;
+
+    /** Eviction policy value. */
+    private String evictionPolicy;
+
     /**
      * Builds an instance of SGSAttributeHandler.
      */
@@ -221,6 +251,16 @@ public class SGSAttributeHandler implements Serializable {
         		throw new SAXParseException("The attribute " + CONDITION_GROUP_EXT_ATTR + " is facultative but can't be empty.", locator);
         	}
             conditionGroupExt = Pattern.compile(attributeValue.trim());
+        } else if (REGION_ATTR.equals(trimedAttrName)) {
+            region = attributeValue.trim();
+        } else if (MAX_ENTRIES_ATTR.equals(trimedAttrName)) {
+            maxEntries = (int) parseLong(locator, trimedAttrName, attributeValue);
+        } else if (TTL_ATTR.equals(trimedAttrName)) {
+            timeToLive = parseLong(locator, trimedAttrName, attributeValue);
+        } else if (TTI_ATTR.equals(trimedAttrName)) {
+            timeToIdle = parseLong(locator, trimedAttrName, attributeValue);
+        } else if (EVICTION_POLICY_ATTR.equals(trimedAttrName)) {
+            evictionPolicy = attributeValue.trim();
         }
     }
 
@@ -239,6 +279,11 @@ public class SGSAttributeHandler implements Serializable {
         right = null;
         distributionBy = null;
         conditionGroupExt = null;
+        region = null;
+        maxEntries = null;
+        timeToLive = null;
+        timeToIdle = null;
+        evictionPolicy = null;
     }
 
     /**
@@ -262,6 +307,30 @@ public class SGSAttributeHandler implements Serializable {
                 + attribute + " (should be true or false): " + valueStr + ".", locator);
 
     }
+
+    /**
+     * Parse a positive integer attribute.
+     * @param locator The locator for the parsed file..
+     * @param attribute The attribute to parse.
+     * @param valueStr The value to parse.
+     * @return The parsed value.
+     * @throws SAXParseException If the value is not a positive integer.
+     */
+    protected long parseLong(final Locator locator,
+            final String attribute,
+            final String valueStr) throws SAXParseException {
+        try {
+            final long parsed = Long.parseLong(valueStr.trim());
+            if (parsed >= 0 && parsed <= Integer.MAX_VALUE) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.debug(e, e);
+        }
+        throw new SAXParseException("Illegal value for numeric atribute "
+                + attribute + " (should be a positive integer): " + valueStr + ".", locator);
+    }
+
     /**
      * Getter for extension.
      * @return extension.
@@ -381,4 +450,44 @@ public class SGSAttributeHandler implements Serializable {
 	public Pattern getConditionGroupExt() {
 		return conditionGroupExt;
 	}
+
+	/**
+	 * Getter for region.
+	 * @return region.
+	 */
+	public String getRegion() {
+		return region;
+	}
+
+	/**
+	 * Getter for maxEntries.
+	 * @return maxEntries.
+	 */
+	public Integer getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Getter for timeToLive.
+	 * @return timeToLive.
+	 */
+	public Long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * Getter for timeToIdle.
+	 * @return timeToIdle.
+	 */
+	public Long getTimeToIdle() {
+		return timeToIdle;
+	}
+
+	/**
+	 * Getter for evictionPolicy.
+	 * @return evictionPolicy.
+	 */
+	public String getEvictionPolicy() {
+		return evictionPolicy;
+	}
 }
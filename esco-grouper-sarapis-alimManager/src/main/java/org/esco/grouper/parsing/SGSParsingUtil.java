@@ -20,6 +20,10 @@ package org.esco.grouper.parsing;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -34,6 +38,7 @@ import javax.annotation.PostConstruct;
 import edu.internet2.middleware.grouper.Stem;
 import org.apache.commons.lang.Validate;
 import org.apache.log4j.Logger;
+import org.esco.grouper.cache.SGSCache;
 import org.esco.grouper.dao.GrouperDAO;
 import org.esco.grouper.domain.beans.EvaluableString;
 import org.esco.grouper.domain.beans.GroupOrFolderDefinition;
@@ -108,9 +113,21 @@ public class SGSParsingUtil extends org.xml.sax.helpers.DefaultHandler implement
     /** Delete empty groups tag. */
     private static final String FORCE_PRIV_TAG = "force-privileges";
 
+    /** Cache region tag. */
+    private static final String CACHE_TAG = "cache";
+
     /** Logger. */
     private static final Logger LOGGER = Logger.getLogger(SGSParsingUtil.class);
 
+    /** Algorithm used to hash the definitions file. */
+    private static final String DEFINITIONS_HASH_ALGORITHM = "SHA-1";
+
+    /** Radix of the hash of the definitions file. */
+    private static final int HEX_RADIX = 16;
+
+    /** Size of the buffer used to read the end of the definitions file. */
+    private static final int BUFFER_SIZE = 4096;
+
     /** Locator. */
     private Locator locator;
 
@@ -137,6 +154,9 @@ public class SGSParsingUtil extends org.xml.sax.helpers.DefaultHandler implement
      * privileges and memberships. */
     private String definitionsFileURI;
 
+    /** The hash of the content of the definitions file, computed while parsing it. */
+    private String definitionsHash;
+
     /** The grouper session util to parameter. */
     private GrouperSessionUtil grouperSessionUtil;
 
@@ -211,6 +231,7 @@ public class SGSParsingUtil extends org.xml.sax.helpers.DefaultHandler implement
                     + " error(s) detected). See the log file for more details.",
                     locator);
         }
+        definitionsManager.compileMembershipRules();
 
     }
 
@@ -333,6 +354,25 @@ public class SGSParsingUtil extends org.xml.sax.helpers.DefaultHandler implement
         LOGGER.debug("Starting the parsing.");
     }
 
+    /**
+     * Configures a region of the cache.
+     * @throws SAXParseException If the region or one of its parameters is not valid.
+     */
+    protected void handleCacheRegion() throws SAXParseException {
+        try {
+            SGSCache.instance().configureRegion(attributeHandler.getRegion(),
+                    attributeHandler.getMaxEntries(),
+                    attributeHandler.getTimeToLive(),
+                    attributeHandler.getTimeToIdle(),
+                    attributeHandler.getEvictionPolicy());
+        } catch (IllegalArgumentException e) {
+            final String msg = "Tag: " + CACHE_TAG + " - " + e.getMessage()
+            + " (line " + locator.getLineNumber() + ").";
+            LOGGER.fatal(msg);
+            throw new SAXParseException(msg, locator);
+        }
+    }
+
     /**
      * Registers a template element.
      */
@@ -597,6 +637,11 @@ public class SGSParsingUtil extends org.xml.sax.helpers.DefaultHandler implement
                 LOGGER.debug("Setting force privileges to: " + attributeHandler.getValue());
                 grouperDAO.setForcePrivileges(attributeHandler.getValue());
 
+            } else if (CACHE_TAG.equals(localName)) {
+
+                // Configuration of a cache region.
+                handleCacheRegion();
+
             } else if (TEMPLATE_ELT_TAG.equals(localName)) {
 
                 // Definition of a template element.
@@ -742,9 +787,25 @@ public class SGSParsingUtil extends org.xml.sax.helpers.DefaultHandler implement
             LOGGER.fatal("Unable to load (from classpath) file: " + definitionsFileURI + ".");
         }
 
+        // The content of the file is hashed while it is parsed.
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DEFINITIONS_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+        final DigestInputStream digestStream = new DigestInputStream(iStream, digest);
 
         //final InputSource is =
-        saxReader.parse(new InputSource(iStream));
+        saxReader.parse(new InputSource(digestStream));
+
+        // Consumes the end of the file which may not have been read by the parser.
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        while (digestStream.read(buffer) >= 0) {
+            continue;
+        }
+        digestStream.close();
+        definitionsHash = new BigInteger(1, digest.digest()).toString(HEX_RADIX);
 
         if (LOGGER.isInfoEnabled()) {
             LOGGER.info("---------------------------------");
@@ -753,6 +814,14 @@ public class SGSParsingUtil extends org.xml.sax.helpers.DefaultHandler implement
         }
     }
 
+    /**
+     * Getter for definitionsHash.
+     * @return The hash of the definitions file, null if it has not been parsed.
+     */
+    public String getDefinitionsHash() {
+        return definitionsHash;
+    }
+
     /**
      * Getter for definitionsManager.
      * @return definitionsManager.
@@ -0,0 +1,569 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang.Validate;
+import org.apache.log4j.Logger;
+import org.esco.grouper.domain.beans.GrouperOperationResultDTO;
+import org.esco.grouper.domain.beans.TemplateElement;
+import org.esco.grouper.exceptions.EscoGrouperException;
+import org.esco.grouper.utils.GrouperSessionUtil;
+
+/**
+ * Asynchronous front-end of the group service for the updates of persons.
+ *
+ * The requests are queued and applied by a pool of workers. A request for a user which
+ * already has a pending request replaces it (only the latest state is applied) and the
+ * futures of both requests give the result of the applied one.
+ *
+ * With several workers, the requests are routed by the value of the sharding template
+ * element (e.g. %UAI_ETAB%), so two workers never update the groups and folders of the
+ * same shard concurrently. The requests which may update the groups of several shards
+ * (the removals, the persons of several shards, or the persons routed to the worker
+ * of another shard to keep the requests of a user in order) are applied while the other
+ * workers are paused.
+ * The queues are bounded: the callers are blocked while the queue of the worker is full.
+ * If the session util is set, each worker reuses its Grouper session until it is stopped.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class AsyncSarapisGroupService {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(AsyncSarapisGroupService.class);
+
+    /** Default capacity of the queue of each worker. */
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    /** Request used to stop a worker. */
+    private static final PendingRequest STOP = new PendingRequest(null, -1);
+
+    /** The group service used to apply the requests. */
+    private ISarapisGroupService groupService;
+
+    /** The session util, optional, used to bind a reused session to each worker. */
+    private GrouperSessionUtil grouperSessionUtil;
+
+    /** Number of workers. */
+    private int workers = 1;
+
+    /** Capacity of the queue of each worker. */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /** Key of the template element used to route the requests between the workers
+     * (e.g. %UAI_ETAB%), mandatory with several workers. */
+    private String shardingTemplateElement;
+
+    /** The sharding used to route the requests. */
+    private EntitySharding sharding;
+
+    /** The queues of the workers. */
+    private List<BlockingQueue<PendingRequest>> queues;
+
+    /** The threads of the workers. */
+    private List<Thread> threads;
+
+    /** The pending requests, by user id. Guards all the state of the requests. */
+    private final Map<String, PendingRequest> pendingRequests = new HashMap<String, PendingRequest>();
+
+    /** The affinities of the users with requests not applied yet, by user id. */
+    private final Map<String, Affinity> affinities = new HashMap<String, Affinity>();
+
+    /** Number of requests being put in the queues. */
+    private int enqueuing;
+
+    /** Flag used to refuse the requests once the service is stopped. */
+    private boolean accepting;
+
+    /** Lock shared by the requests of a single shard, exclusive for the other requests. */
+    private final ReadWriteLock shardsLock = new ReentrantReadWriteLock(true);
+
+    /**
+     * The worker of a user and the number of its requests not applied yet:
+     * all the requests of a user are routed to the same worker while one of them
+     * is not applied, so they are applied in order.
+     */
+    private static final class Affinity {
+
+        /** The index of the worker. */
+        private final int worker;
+
+        /** The number of requests not applied yet. */
+        private int outstanding;
+
+        /**
+         * Builds an affinity.
+         * @param worker The index of the worker.
+         */
+        private Affinity(final int worker) {
+            this.worker = worker;
+        }
+    }
+
+    /**
+     * A pending request: the latest operation requested for a user.
+     */
+    private static final class PendingRequest implements Callable<GrouperOperationResultDTO> {
+
+        /** The id of the user. */
+        private final String userId;
+
+        /** The index of the worker of the request. */
+        private final int worker;
+
+        /** The description of the person to update, null to remove the person from the managed groups. */
+        private IEntityDescription description;
+
+        /** The service used to apply the request. */
+        private ISarapisGroupService service;
+
+        /** The future of the request. */
+        private final FutureTask<GrouperOperationResultDTO> future;
+
+        /**
+         * Builds a pending request.
+         * @param userId The id of the user.
+         * @param worker The index of the worker of the request.
+         */
+        private PendingRequest(final String userId, final int worker) {
+            this.userId = userId;
+            this.worker = worker;
+            this.future = new FutureTask<GrouperOperationResultDTO>(this);
+        }
+
+        /**
+         * Applies the request.
+         * @return The result of the Grouper operation.
+         * @see java.util.concurrent.Callable#call()
+         */
+        public GrouperOperationResultDTO call() {
+            final IEntityDescription latest;
+            synchronized (this) {
+                latest = description;
+            }
+            try {
+                if (latest == null) {
+                    return service.removeFromManagedGroups(userId);
+                }
+                return service.updateMemberships(latest);
+            } catch (RuntimeException e) {
+                LOGGER.error(e, e);
+                return new GrouperOperationResultDTO(e);
+            }
+        }
+    }
+
+    /**
+     * Builds an instance of AsyncSarapisGroupService.
+     */
+    public AsyncSarapisGroupService() {
+        super();
+    }
+
+    /**
+     * Checks the spring injections and starts the workers.
+     * @throws Exception
+     */
+    @PostConstruct
+    public void afterPropertiesSet() throws Exception {
+        Validate.notNull(this.groupService,
+                "property groupService of class " + this.getClass().getName()
+                + " can not be null");
+
+        Validate.isTrue(this.workers > 0,
+                "property workers of class " + this.getClass().getName()
+                + " must be greater than 0");
+
+        Validate.isTrue(this.queueCapacity > 0,
+                "property queueCapacity of class " + this.getClass().getName()
+                + " must be greater than 0");
+
+        Validate.isTrue(this.workers == 1 || this.shardingTemplateElement != null,
+                "property shardingTemplateElement of class " + this.getClass().getName()
+                + " can not be null with several workers");
+
+        if (shardingTemplateElement != null
+                && !TemplateElement.isTemplateElement(shardingTemplateElement)) {
+            final String msg = "Invalid sharding template element: " + shardingTemplateElement
+            + " - Legal values are: " + TemplateElement.getAvailableTemplateElements() + ".";
+            LOGGER.fatal(msg);
+            throw new EscoGrouperException(msg);
+        }
+
+        if (shardingTemplateElement != null) {
+            sharding = new EntitySharding(shardingTemplateElement);
+        }
+        queues = new ArrayList<BlockingQueue<PendingRequest>>(workers);
+        threads = new ArrayList<Thread>(workers);
+        for (int i = 0; i < workers; i++) {
+            final BlockingQueue<PendingRequest> queue = new ArrayBlockingQueue<PendingRequest>(queueCapacity);
+            queues.add(queue);
+            final int worker = i;
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    drain(worker, queue);
+                }
+            }, getClass().getSimpleName() + "-" + i);
+            threads.add(thread);
+        }
+        synchronized (pendingRequests) {
+            accepting = true;
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Asynchronous group service started with " + workers + " worker(s).");
+        }
+    }
+
+    /**
+     * Stops the service: the pending requests are applied, then the workers are stopped.
+     * The requests which could not be applied are cancelled.
+     */
+    @PreDestroy
+    public void stop() {
+        try {
+            synchronized (pendingRequests) {
+                accepting = false;
+                // The requests already accepted are queued before the workers are stopped.
+                while (enqueuing > 0) {
+                    pendingRequests.wait();
+                }
+            }
+            for (BlockingQueue<PendingRequest> queue : queues) {
+                queue.put(STOP);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error(e, e);
+        }
+
+        int cancelled = 0;
+        for (BlockingQueue<PendingRequest> queue : queues) {
+            final List<PendingRequest> leftovers = new ArrayList<PendingRequest>();
+            queue.drainTo(leftovers);
+            for (PendingRequest request : leftovers) {
+                if (request != STOP && request.future.cancel(false)) {
+                    cancelled++;
+                }
+            }
+        }
+        synchronized (pendingRequests) {
+            for (PendingRequest request : pendingRequests.values()) {
+                if (request.future.cancel(false)) {
+                    cancelled++;
+                }
+            }
+            pendingRequests.clear();
+            affinities.clear();
+        }
+        if (cancelled > 0) {
+            LOGGER.error(cancelled + " request(s) cancelled while stopping the asynchronous group service.");
+        }
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Asynchronous group service stopped.");
+        }
+    }
+
+    /**
+     * Applies the requests of a worker until it is stopped.
+     * @param worker The index of the worker.
+     * @param queue The queue of the worker.
+     */
+    private void drain(final int worker, final BlockingQueue<PendingRequest> queue) {
+        if (grouperSessionUtil != null) {
+            grouperSessionUtil.reuseSessionsInCurrentThread();
+        }
+        try {
+            PendingRequest request = queue.take();
+            while (request != STOP) {
+                // Once removed from the pending requests, the request can't be replaced anymore.
+                synchronized (pendingRequests) {
+                    if (pendingRequests.get(request.userId) == request) {
+                        pendingRequests.remove(request.userId);
+                    }
+                }
+                final Lock lock;
+                if (isInShard(worker, request)) {
+                    lock = shardsLock.readLock();
+                } else {
+                    lock = shardsLock.writeLock();
+                }
+                lock.lock();
+                try {
+                    request.future.run();
+                } finally {
+                    lock.unlock();
+                    applied(request);
+                }
+                request = queue.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error(e, e);
+        } finally {
+            if (grouperSessionUtil != null) {
+                grouperSessionUtil.releaseSession();
+            }
+        }
+    }
+
+    /**
+     * Tests if a request only updates the groups of the shards routed to a worker.
+     * @param worker The index of the worker.
+     * @param request The request, which can't be replaced anymore.
+     * @return True if the request can be applied concurrently with the requests of the other workers.
+     */
+    private boolean isInShard(final int worker, final PendingRequest request) {
+        if (workers == 1) {
+            return true;
+        }
+        final IEntityDescription description;
+        synchronized (request) {
+            description = request.description;
+        }
+        if (description == null) {
+            // The managed groups of the user may belong to any shard.
+            return false;
+        }
+        final String shard = sharding.shardOf(description);
+        return shard != null && workerOf(shard) == worker;
+    }
+
+    /**
+     * Gives the worker of a shard.
+     * @param shard The shard.
+     * @return The index of the worker.
+     */
+    private int workerOf(final String shard) {
+        return (shard.hashCode() & Integer.MAX_VALUE) % workers;
+    }
+
+    /**
+     * Releases the affinity of a request once applied or cancelled.
+     * @param request The request.
+     */
+    private void applied(final PendingRequest request) {
+        synchronized (pendingRequests) {
+            final Affinity affinity = affinities.get(request.userId);
+            if (affinity != null && --affinity.outstanding == 0) {
+                affinities.remove(request.userId);
+            }
+        }
+    }
+
+    /**
+     * Enqueues the update of the memberships of a person.
+     * @param personDescription The description of the person.
+     * @return The future result of the update (or of the request which replaces it).
+     */
+    public Future<GrouperOperationResultDTO> updateMemberships(final IEntityDescription personDescription) {
+        return enqueue(personDescription.getId(), personDescription);
+    }
+
+    /**
+     * Enqueues the removal of a person from the managed groups.
+     * @param userId The id of the person.
+     * @return The future result of the removal (or of the request which replaces it).
+     */
+    public Future<GrouperOperationResultDTO> removeFromManagedGroups(final String userId) {
+        return enqueue(userId, null);
+    }
+
+    /**
+     * Enqueues a request, or replaces the pending request of the same user.
+     * @param userId The id of the user.
+     * @param description The description of the person, null for a removal.
+     * @return The future result of the request.
+     */
+    private Future<GrouperOperationResultDTO> enqueue(final String userId, final IEntityDescription description) {
+        final PendingRequest request;
+        synchronized (pendingRequests) {
+            if (!accepting) {
+                throw new EscoGrouperException("The asynchronous group service is stopped.");
+            }
+            final PendingRequest previous = pendingRequests.get(userId);
+            if (previous != null) {
+                synchronized (previous) {
+                    previous.description = description;
+                }
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Pending request for the user " + userId + " replaced.");
+                }
+                return previous.future;
+            }
+            Affinity affinity = affinities.get(userId);
+            if (affinity == null) {
+                affinity = new Affinity(route(description));
+                affinities.put(userId, affinity);
+            }
+            affinity.outstanding++;
+            request = new PendingRequest(userId, affinity.worker);
+            request.description = description;
+            request.service = groupService;
+            pendingRequests.put(userId, request);
+            enqueuing++;
+        }
+
+        // Blocks while the queue is full.
+        try {
+            queues.get(request.worker).put(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (pendingRequests) {
+                if (pendingRequests.get(userId) == request) {
+                    pendingRequests.remove(userId);
+                }
+            }
+            request.future.cancel(false);
+            applied(request);
+            throw new EscoGrouperException(e);
+        } finally {
+            synchronized (pendingRequests) {
+                enqueuing--;
+                pendingRequests.notifyAll();
+            }
+        }
+        return request.future;
+    }
+
+    /**
+     * Gives the worker of a new request.
+     * @param description The description of the person, null for a removal.
+     * @return The index of the worker.
+     */
+    private int route(final IEntityDescription description) {
+        if (workers == 1 || description == null) {
+            return 0;
+        }
+        final String shard = sharding.shardOf(description);
+        if (shard == null) {
+            return 0;
+        }
+        return workerOf(shard);
+    }
+
+    /**
+     * Gives the number of requests waiting to be applied.
+     * @return The number of pending requests.
+     */
+    public int countPending() {
+        synchronized (pendingRequests) {
+            return pendingRequests.size();
+        }
+    }
+
+    /**
+     * Getter for groupService.
+     * @return groupService.
+     */
+    public ISarapisGroupService getGroupService() {
+        return groupService;
+    }
+
+    /**
+     * Setter for groupService.
+     * @param groupService the new value for groupService.
+     */
+    public void setGroupService(final ISarapisGroupService groupService) {
+        this.groupService = groupService;
+    }
+
+    /**
+     * Getter for grouperSessionUtil.
+     * @return grouperSessionUtil.
+     */
+    public GrouperSessionUtil getGrouperSessionUtil() {
+        return grouperSessionUtil;
+    }
+
+    /**
+     * Setter for grouperSessionUtil.
+     * @param grouperSessionUtil the new value for grouperSessionUtil.
+     */
+    public void setGrouperSessionUtil(final GrouperSessionUtil grouperSessionUtil) {
+        this.grouperSessionUtil = grouperSessionUtil;
+    }
+
+    /**
+     * Getter for workers.
+     * @return workers.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Setter for workers.
+     * @param workers the new value for workers.
+     */
+    public void setWorkers(final int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Getter for queueCapacity.
+     * @return queueCapacity.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Setter for queueCapacity.
+     * @param queueCapacity the new value for queueCapacity.
+     */
+    public void setQueueCapacity(final int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Getter for shardingTemplateElement.
+     * @return shardingTemplateElement.
+     */
+    public String getShardingTemplateElement() {
+        return shardingTemplateElement;
+    }
+
+    /**
+     * Setter for shardingTemplateElement.
+     * @param shardingTemplateElement the new value for shardingTemplateElement.
+     */
+    public void setShardingTemplateElement(final String shardingTemplateElement) {
+        this.shardingTemplateElement = shardingTemplateElement;
+    }
+}
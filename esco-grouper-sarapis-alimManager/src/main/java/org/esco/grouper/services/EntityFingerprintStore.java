@@ -0,0 +1,390 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.services;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.Validate;
+import org.apache.log4j.Logger;
+
+/**
+ * Local store of the fingerprints of the entities synchronized successfully:
+ * a hash of the type and of all the values arrays of each entity, by entity id.
+ * The entities whose fingerprint is unchanged since their last successful synchronization
+ * can be skipped.
+ *
+ * The store is persisted in a local file, written after each batch and when the service stops.
+ * The header of the file contains the hash of the definitions file: the fingerprints are
+ * discarded if the definitions have changed. The statistics are exposed through JMX.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class EntityFingerprintStore implements EntityFingerprintStoreMBean {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(EntityFingerprintStore.class);
+
+    /** First line of the store file. */
+    private static final String HEADER = "# sgs entity fingerprints - v1";
+
+    /** Prefix of the line which contains the hash of the definitions. */
+    private static final String HASH_PREFIX = "definitions-hash=";
+
+    /** Encoding of the store file. */
+    private static final String ENCODING = "UTF-8";
+
+    /** Separator of the fields. */
+    private static final char SEP = '\t';
+
+    /** Radix used to write the fingerprints. */
+    private static final int HEX_RADIX = 16;
+
+    /** Offset basis of the FNV-1a hash. */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /** Prime of the FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Marker hashed between two values. */
+    private static final char VALUE_MARKER = '\u001f';
+
+    /** Marker hashed between two values arrays. */
+    private static final char ARRAY_MARKER = '\u001e';
+
+    /** Name of the JMX bean. */
+    private static final String JMX_NAME = "org.esco.grouper:type=EntityFingerprintStore";
+
+    /** The path of the store file. */
+    private String storeFile;
+
+    /** The fingerprints by entity id. */
+    private final Map<String, Long> fingerprints = new HashMap<String, Long>();
+
+    /** The hash of the definitions file of the current run. */
+    private String definitionsHash;
+
+    /** Flag for the modifications which are not written. */
+    private boolean dirty;
+
+    /** Number of checked entities. */
+    private long checked;
+
+    /** Number of skipped entities. */
+    private long skipped;
+
+    /**
+     * Builds an instance of EntityFingerprintStore.
+     */
+    public EntityFingerprintStore() {
+        super();
+    }
+
+    /**
+     * Checks the spring injections and registers the JMX bean.
+     * @throws Exception
+     */
+    @PostConstruct
+    public void afterPropertiesSet() throws Exception {
+        Validate.notNull(this.storeFile,
+                "property storeFile of class " + this.getClass().getName()
+                + " can not be null");
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(JMX_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register the JMX statistics of the entities fingerprints.", e);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of an entity: a 64 bits FNV-1a hash of its type
+     * and of all its values arrays.
+     * @param entity The description of the entity.
+     * @return The fingerprint.
+     */
+    public static long fingerprint(final IEntityDescription entity) {
+        long hash = FNV_OFFSET_BASIS;
+        if (entity.getType() != null) {
+            hash = hash(hash, entity.getType().name());
+        }
+        for (String[] values : entity.getValuesArrays()) {
+            hash = hash(hash, ARRAY_MARKER);
+            for (String value : values) {
+                hash = hash(hash, VALUE_MARKER);
+                if (value != null) {
+                    hash = hash(hash, value);
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Adds the characters of a string to a hash.
+     * @param hash The current hash.
+     * @param value The string.
+     * @return The new hash.
+     */
+    private static long hash(final long hash, final String value) {
+        long result = hash;
+        for (int i = 0; i < value.length(); i++) {
+            result = hash(result, value.charAt(i));
+        }
+        return result;
+    }
+
+    /**
+     * Adds a character to a hash.
+     * @param hash The current hash.
+     * @param c The character.
+     * @return The new hash.
+     */
+    private static long hash(final long hash, final char c) {
+        return (hash ^ c) * FNV_PRIME;
+    }
+
+    /**
+     * Tests if an entity is unchanged since its last successful synchronization.
+     * @param entity The description of the entity.
+     * @return True if the entity can be skipped.
+     */
+    public synchronized boolean isUnchanged(final IEntityDescription entity) {
+        checked++;
+        final Long fingerprint = fingerprints.get(entity.getId());
+        if (fingerprint != null && fingerprint.longValue() == fingerprint(entity)) {
+            skipped++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stores the fingerprint of an entity synchronized successfully.
+     * @param entity The description of the entity.
+     */
+    public synchronized void update(final IEntityDescription entity) {
+        final long fingerprint = fingerprint(entity);
+        final Long previous = fingerprints.put(entity.getId(), fingerprint);
+        if (previous == null || previous.longValue() != fingerprint) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Removes the fingerprint of an entity, which will be synchronized again.
+     * @param entityId The id of the entity.
+     */
+    public synchronized void remove(final String entityId) {
+        if (fingerprints.remove(entityId) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Removes all the fingerprints.
+     * @see org.esco.grouper.services.EntityFingerprintStoreMBean#clear()
+     */
+    public synchronized void clear() {
+        if (!fingerprints.isEmpty()) {
+            fingerprints.clear();
+            dirty = true;
+        }
+    }
+
+    /**
+     * Loads the fingerprints, if they have been written for the same definitions.
+     * @param currentDefinitionsHash The hash of the current definitions file.
+     */
+    public synchronized void load(final String currentDefinitionsHash) {
+        this.definitionsHash = currentDefinitionsHash;
+        fingerprints.clear();
+
+        final File file = new File(storeFile);
+        if (!file.exists()) {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("No entities fingerprints to load (" + storeFile + ").");
+            }
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+            if (!HEADER.equals(reader.readLine())
+                    || !(HASH_PREFIX + definitionsHash).equals(reader.readLine())) {
+                LOGGER.warn("The entities fingerprints " + storeFile
+                        + " do not match the current definitions: they are discarded.");
+                dirty = true;
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int sep = line.lastIndexOf(SEP);
+                if (sep <= 0) {
+                    LOGGER.warn("Invalid line in the entities fingerprints: " + line + " - Ignored.");
+                } else {
+                    fingerprints.put(line.substring(0, sep),
+                            Long.parseLong(line.substring(sep + 1), HEX_RADIX));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error while loading the entities fingerprints " + storeFile + ".", e);
+            fingerprints.clear();
+        } catch (NumberFormatException e) {
+            LOGGER.error("Invalid entities fingerprints " + storeFile + ".", e);
+            fingerprints.clear();
+        } finally {
+            closeQuietly(reader);
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Entities fingerprints " + storeFile + " loaded: "
+                    + fingerprints.size() + " fingerprint(s).");
+        }
+    }
+
+    /**
+     * Writes the fingerprints, if they have been modified.
+     * The fingerprints are written in a temporary file which then replaces the previous one.
+     */
+    public synchronized void save() {
+        if (!dirty || definitionsHash == null) {
+            return;
+        }
+
+        final File file = new File(storeFile);
+        final File tmpFile = new File(storeFile + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), ENCODING));
+            writer.write(HEADER);
+            writer.write('\n');
+            writer.write(HASH_PREFIX + definitionsHash);
+            writer.write('\n');
+            for (Map.Entry<String, Long> fingerprint : fingerprints.entrySet()) {
+                writer.write(fingerprint.getKey());
+                writer.write(SEP);
+                writer.write(Long.toString(fingerprint.getValue(), HEX_RADIX));
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to delete the file " + storeFile);
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Unable to rename the file " + tmpFile + " to " + storeFile);
+            }
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.error("Error while writing the entities fingerprints " + storeFile + ".", e);
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Closes a reader or a writer, ignoring the errors.
+     * @param closeable The reader or writer to close (may be null).
+     */
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOGGER.warn(e, e);
+            }
+        }
+    }
+
+    /**
+     * Gives the number of fingerprints in the store.
+     * @return The number of fingerprints.
+     * @see org.esco.grouper.services.EntityFingerprintStoreMBean#getFingerprintsCount()
+     */
+    public synchronized int getFingerprintsCount() {
+        return fingerprints.size();
+    }
+
+    /**
+     * Getter for checked.
+     * @return checked.
+     * @see org.esco.grouper.services.EntityFingerprintStoreMBean#getChecked()
+     */
+    public synchronized long getChecked() {
+        return checked;
+    }
+
+    /**
+     * Getter for skipped.
+     * @return skipped.
+     * @see org.esco.grouper.services.EntityFingerprintStoreMBean#getSkipped()
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Gives the ratio of the checked entities which have been skipped.
+     * @return The skip ratio.
+     * @see org.esco.grouper.services.EntityFingerprintStoreMBean#getSkipRatio()
+     */
+    public synchronized double getSkipRatio() {
+        if (checked == 0) {
+            return 0;
+        }
+        return (double) skipped / checked;
+    }
+
+    /**
+     * Getter for storeFile.
+     * @return storeFile.
+     */
+    public String getStoreFile() {
+        return storeFile;
+    }
+
+    /**
+     * Setter for storeFile.
+     * @param storeFile the new value for storeFile.
+     */
+    public void setStoreFile(final String storeFile) {
+        this.storeFile = storeFile;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.services;
+
+/**
+ * JMX interface for the statistics of the store of the entities fingerprints.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public interface EntityFingerprintStoreMBean {
+
+    /**
+     * Gives the number of fingerprints in the store.
+     * @return The number of fingerprints.
+     */
+    int getFingerprintsCount();
+
+    /**
+     * Gives the number of entities checked against the store.
+     * @return The number of checked entities.
+     */
+    long getChecked();
+
+    /**
+     * Gives the number of entities skipped as unchanged.
+     * @return The number of skipped entities.
+     */
+    long getSkipped();
+
+    /**
+     * Gives the ratio of the checked entities which have been skipped.
+     * @return The skip ratio (between 0 and 1).
+     */
+    double getSkipRatio();
+
+    /**
+     * Removes all the fingerprints: all the entities will be synchronized again.
+     */
+    void clear();
+}
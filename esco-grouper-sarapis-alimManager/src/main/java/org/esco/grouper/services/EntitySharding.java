@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.services;
+
+import org.esco.grouper.domain.beans.TemplateElement;
+
+/**
+ * Sharding of the entities by the value of a template element (e.g. %UAI_ETAB%):
+ * two entities of different shards never use the same groups and folders
+ * of the shards, so they can be processed concurrently.
+ *
+ * An entity whose values arrays give different values of the template element
+ * (e.g. a teacher in several schools) belongs to several shards.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class EntitySharding {
+
+    /** The shard of the entities without any value for the template element. */
+    public static final String NO_VALUE_SHARD = "";
+
+    /** The key of the template element used to shard the entities. */
+    private final String templateElement;
+
+    /**
+     * Builds an instance of EntitySharding.
+     * @param templateElement The key of the template element used to shard the entities.
+     */
+    public EntitySharding(final String templateElement) {
+        this.templateElement = templateElement;
+    }
+
+    /**
+     * Gives the shard of an entity.
+     * @param description The description of the entity.
+     * @return The value of the template element in all the values arrays of the entity,
+     * {@link #NO_VALUE_SHARD} if the entity has no value, null if the entity belongs to several shards.
+     */
+    public String shardOf(final IEntityDescription description) {
+        final int position = TemplateElement.getAvailableTemplateElements().indexOf(
+                TemplateElement.getAvailableTemplateelementByKey(templateElement));
+        String shard = null;
+        for (String[] values : description.getValuesArrays()) {
+            String value = NO_VALUE_SHARD;
+            if (position >= 0 && position < values.length && values[position] != null) {
+                value = values[position];
+            }
+            if (shard == null) {
+                shard = value;
+            } else if (!shard.equals(value)) {
+                return null;
+            }
+        }
+        if (shard == null) {
+            return NO_VALUE_SHARD;
+        }
+        return shard;
+    }
+
+    /**
+     * Getter for templateElement.
+     * @return templateElement.
+     */
+    public String getTemplateElement() {
+        return templateElement;
+    }
+}
@@ -16,7 +16,10 @@
 package org.esco.grouper.services;
 
 
+import org.esco.grouper.domain.beans.BatchSyncReport;
+import org.esco.grouper.domain.beans.ChangePlan;
 import org.esco.grouper.domain.beans.GrouperOperationResultDTO;
+import org.esco.grouper.domain.beans.ReconciliationReport;
 
 /**
  * Interface for the use of groups in an establishment.
@@ -45,6 +48,35 @@ public interface ISarapisGroupService {
      */
     GrouperOperationResultDTO updateMemberships(final IEntityDescription personDescription);
 
+    /**
+     * Updates the memberships of a batch of persons.
+     * The Grouper session and the evaluated definitions are shared by the whole batch.
+     * An error for one person does not stop the processing of the others.
+     * @param personsDescriptions The descriptions of the persons.
+     * @return The report which contains the result of the operation for each person.
+     */
+    BatchSyncReport syncMemberships(final Iterable<IEntityDescription> personsDescriptions);
+
+    /**
+     * Reconciles the managed groups with a full population, group by group: the members
+     * each group should have are computed for the whole population, then the current members
+     * of each group are retrieved once and only the differences are applied.
+     * The managed members which are not part of the population are removed from their groups.
+     * @param population The descriptions of all the persons.
+     * @return The report which contains the members added and removed for each group.
+     */
+    ReconciliationReport reconcileMemberships(final Iterable<IEntityDescription> population);
+
+    /**
+     * Plans the synchronization of a batch of persons without writing to Grouper:
+     * the groups and folders to create, the privileges to grant, the memberships to add
+     * and to remove and the groups to delete are counted and, optionally, written in a plan file.
+     * @param personsDescriptions The descriptions of the persons.
+     * @param planFile The path of the plan file (null to only count the operations).
+     * @return The plan.
+     */
+    ChangePlan planMemberships(final Iterable<IEntityDescription> personsDescriptions, final String planFile);
+
     /**
      * Removes a person from all the groups, including the groups which are not managed by this service.
      * @param userId The id of the person to remove from the groups.
@@ -59,4 +91,11 @@ public interface ISarapisGroupService {
      */
     GrouperOperationResultDTO removeFromManagedGroups(final String userId);
 
+    /**
+     * Rebuilds the local index of the memberships managed by this service from
+     * the memberships stored in Grouper.
+     * @return The result of the Grouper operation (in error if no index is configured).
+     */
+    GrouperOperationResultDTO rebuildManagedMembershipsIndex();
+
 }
@@ -19,23 +19,46 @@
 package org.esco.grouper.services;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import edu.internet2.middleware.grouper.GrouperSession;
+import edu.internet2.middleware.subject.Subject;
 import org.apache.commons.lang.Validate;
 import org.apache.log4j.Logger;
 import org.esco.grouper.cache.SGSCache;
+import org.esco.grouper.cache.SGSCacheSnapshot;
 import org.esco.grouper.dao.GrouperDAO;
+import org.esco.grouper.dao.StartupGate;
+import org.esco.grouper.domain.beans.BatchSyncReport;
+import org.esco.grouper.domain.beans.ChangePlan;
+import org.esco.grouper.domain.beans.EvaluableStringCondition;
 import org.esco.grouper.domain.beans.GroupOrFolderDefinition;
 import org.esco.grouper.domain.beans.GroupOrFolderDefinitionsManager;
 import org.esco.grouper.domain.beans.GroupOrStem;
 import org.esco.grouper.domain.beans.GrouperOperationResultDTO;
+import org.esco.grouper.domain.beans.OperationTrace;
 import org.esco.grouper.domain.beans.PersonType;
+import org.esco.grouper.domain.beans.PrivilegeDefinition;
+import org.esco.grouper.domain.beans.ReconciliationReport;
+import org.esco.grouper.domain.beans.TemplateElement;
 import org.esco.grouper.exceptions.EscoGrouperException;
+import org.esco.grouper.metrics.SGSMetrics;
 import org.esco.grouper.parsing.SGSParsingUtil;
 import org.esco.grouper.utils.GrouperSessionUtil;
 
@@ -56,6 +79,9 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 	/** Separator. */
 	private static final String SEP = "---------------------------------";
 
+	/** Default number of slowest traced entities logged after a batch. */
+	private static final int DEFAULT_SLOWEST_TRACES_LOGGED = 10;
+
 	/** The definition manager. */
 	private GroupOrFolderDefinitionsManager definitionsManager;
 
@@ -68,6 +94,28 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 	/** Parsing Util. */
 	private SGSParsingUtil parsingUtil;
 
+	/** Number of workers used to synchronize a batch (1 means serial processing). */
+	private int syncWorkers = 1;
+
+	/** Key of the template element used to shard the batches between the workers
+	 * (e.g. %UAI_ETAB%). */
+	private String shardingTemplateElement;
+
+	/** Optional snapshot of the cache, used to warm the cache at startup. */
+	private SGSCacheSnapshot cacheSnapshot;
+
+	/** Optional store of the fingerprints of the entities, used to skip the unchanged entities. */
+	private EntityFingerprintStore fingerprintStore;
+
+	/** Flag used to attach a timing breakdown to the result of the updates of the entities. */
+	private boolean traceOperations;
+
+	/** Number of slowest traced entities logged after a batch. */
+	private int slowestTracesLogged = DEFAULT_SLOWEST_TRACES_LOGGED;
+
+	/** Flag used to run the startup checks of the definitions in background. */
+	private boolean backgroundStartup;
+
 	/**
 	 * Builds an instance of SarapisGroupsServiceImpl.
 	 */
@@ -98,73 +146,193 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 				"property parsingUtil of class " + this.getClass().getName()
 				+ " can not be null");
 
+		Validate.isTrue(this.syncWorkers > 0,
+				"property syncWorkers of class " + this.getClass().getName()
+				+ " must be greater than 0");
+
 		// Parses the configuration file to read the group and folders definitions.
 		parsingUtil.parse();
 
-		// Checks that the preexisting definitions. can be retrieved from Grouper.
-		final Iterator<GroupOrFolderDefinition> preexitingIt = definitionsManager.preexistingDefinitions();
-		final GrouperSession session = grouperSessionUtil.createSession();
+		// Warms the cache from the previous snapshot, if it matches the parsed definitions.
+		if (cacheSnapshot != null) {
+			cacheSnapshot.start(parsingUtil.getDefinitionsHash());
+		}
 
-		if (LOGGER.isInfoEnabled()) {
-			LOGGER.info(SEP);
-			LOGGER.info("Checking the preexisting groups");
-			LOGGER.info("and folders.");
-			LOGGER.info(SEP);
+		// The fingerprints are discarded if the definitions have changed.
+		if (fingerprintStore != null) {
+			fingerprintStore.load(parsingUtil.getDefinitionsHash());
+		}
+
+		if (shardingTemplateElement != null
+				&& !TemplateElement.isTemplateElement(shardingTemplateElement)) {
+			final String msg = "Invalid sharding template element: " + shardingTemplateElement
+			+ " - Legal values are: " + TemplateElement.getAvailableTemplateElements() + ".";
+			LOGGER.fatal(msg);
+			throw new EscoGrouperException(msg);
 		}
 
+		// Collects the definitions checked or created at startup.
+		final List<GroupOrFolderDefinition> preexistingDefinitions = new ArrayList<GroupOrFolderDefinition>();
+		final Iterator<GroupOrFolderDefinition> preexitingIt = definitionsManager.preexistingDefinitions();
 		while (preexitingIt.hasNext()) {
-			final GroupOrFolderDefinition definition = preexitingIt.next();
-			if (grouperDAO.exists(session, definition)) {
-				if (LOGGER.isDebugEnabled()) {
-					LOGGER.debug("Preexisting definition " + definition.getPath() + " checked.");
-				}
-			} else {
-				// Error: one of the preexisting group or folder can't be retrieved from Grouper.
-				String msg = "Unable to retrieve ";
-				if (definition.isGroup()) {
-					msg += "group";
-				} else {
-					msg += "folder";
+			preexistingDefinitions.add(preexitingIt.next());
+		}
+		final List<GroupOrFolderDefinition> definitionsToCreate = new ArrayList<GroupOrFolderDefinition>();
+		final Iterator<GroupOrFolderDefinition> createIt = definitionsManager.getGroupsOrFoldersToCreate();
+		while (createIt.hasNext()) {
+			definitionsToCreate.add(createIt.next());
+		}
+
+		if (backgroundStartup) {
+			checkDefinitionsInBackground(preexistingDefinitions, definitionsToCreate);
+		} else {
+			checkDefinitions(preexistingDefinitions, definitionsToCreate);
+		}
+	}
+
+	/**
+	 * Starts the startup checks in a background thread: the service is available
+	 * immediately and the resolution of the groups and folders waits only for
+	 * the checks of their subtree.
+	 * @param preexistingDefinitions The preexisting definitions.
+	 * @param definitionsToCreate The definitions of the groups and folders to create.
+	 */
+	private void checkDefinitionsInBackground(final List<GroupOrFolderDefinition> preexistingDefinitions,
+			final List<GroupOrFolderDefinition> definitionsToCreate) {
+		final StartupGate gate = grouperDAO.getStartupGate();
+		final Thread startupThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					checkDefinitions(preexistingDefinitions, definitionsToCreate);
+				} catch (RuntimeException e) {
+					LOGGER.fatal("Error during the background startup checks.", e);
+					gate.failAll(e.getMessage());
+				} finally {
+					gate.open();
+					grouperSessionUtil.releaseSession();
 				}
-				msg += " for the preexisting definition: " + definition;
-				LOGGER.fatal(msg);
-				grouperSessionUtil.stopSession(session);
-				throw new EscoGrouperException(msg);
 			}
+		}, "SGS-startup");
+
+		final Set<String> paths = new HashSet<String>();
+		for (GroupOrFolderDefinition definition : preexistingDefinitions) {
+			paths.add(definition.getPath());
 		}
-		if (LOGGER.isInfoEnabled()) {
-			LOGGER.info(SEP);
-			LOGGER.info("Preexisting definitions checked.");
-			LOGGER.info(SEP);
+		for (GroupOrFolderDefinition definition : definitionsToCreate) {
+			paths.add(definition.getPath());
 		}
+		gate.close(paths, startupThread);
+		startupThread.setDaemon(true);
+		startupThread.start();
 
-		// Creates the group or folders that have to be created even if they have no mebers.
 		if (LOGGER.isInfoEnabled()) {
-			LOGGER.info(SEP);
-			LOGGER.info("Creating Empty groups groups or folders (if needed).");
-			LOGGER.info(SEP);
+			LOGGER.info("The checks of " + paths.size() + " groups and folders run in background.");
 		}
-		final Iterator<GroupOrFolderDefinition> createIt = definitionsManager.getGroupsOrFoldersToCreate();
-		while (createIt.hasNext()) {
-			final GroupOrFolderDefinition def = createIt.next();
-			final GroupOrStem result = grouperDAO.retrieveOrCreate(session, def);
+	}
 
-			if (result == null) {
-				// Error : One group or folder definition can't be retrieved or created.
-				String msg = "Error while creating group or folder for the definition: " + def;
-				LOGGER.fatal(msg);
-				grouperSessionUtil.stopSession(session);
-				throw new EscoGrouperException(msg);
+	/**
+	 * Checks that the preexisting groups and folders can be retrieved from Grouper
+	 * and creates the groups and folders to create even if they have no member.
+	 * The errors are reported together.
+	 * @param preexistingDefinitions The preexisting definitions.
+	 * @param definitionsToCreate The definitions of the groups and folders to create.
+	 */
+	protected void checkDefinitions(final List<GroupOrFolderDefinition> preexistingDefinitions,
+			final List<GroupOrFolderDefinition> definitionsToCreate) {
+		final StartupGate gate = grouperDAO.getStartupGate();
+		final GrouperSession session = grouperSessionUtil.createSession();
+		try {
+
+			// All the groups and folders are resolved with bulk queries.
+			final List<GroupOrFolderDefinition> startupDefinitions =
+				new ArrayList<GroupOrFolderDefinition>(preexistingDefinitions);
+			startupDefinitions.addAll(definitionsToCreate);
+			grouperDAO.prefetchResolutions(session, startupDefinitions);
+
+			if (LOGGER.isInfoEnabled()) {
+				LOGGER.info(SEP);
+				LOGGER.info("Checking the preexisting groups");
+				LOGGER.info("and folders.");
+				LOGGER.info(SEP);
 			}
-		}
 
-		if (LOGGER.isInfoEnabled()) {
-			LOGGER.info(SEP);
-			LOGGER.info("Groups and folders created.");
-			LOGGER.info(SEP);
+			final List<String> errors = new ArrayList<String>();
+			for (GroupOrFolderDefinition definition : preexistingDefinitions) {
+				if (grouperDAO.exists(session, definition)) {
+					gate.release(definition.getPath());
+					if (LOGGER.isDebugEnabled()) {
+						LOGGER.debug("Preexisting definition " + definition.getPath() + " checked.");
+					}
+				} else {
+					// Error: one of the preexisting group or folder can't be retrieved from Grouper.
+					String msg = "Unable to retrieve ";
+					if (definition.isGroup()) {
+						msg += "group";
+					} else {
+						msg += "folder";
+					}
+					msg += " for the preexisting definition: " + definition;
+					LOGGER.fatal(msg);
+					gate.fail(definition.getPath(), msg);
+					errors.add(msg);
+				}
+			}
+			// The groups and folders are not created under missing preexisting folders.
+			throwIfErrors(errors);
+
+			if (LOGGER.isInfoEnabled()) {
+				LOGGER.info(SEP);
+				LOGGER.info("Preexisting definitions checked.");
+				LOGGER.info(SEP);
+			}
+
+			// Creates the group or folders that have to be created even if they have no mebers.
+			if (LOGGER.isInfoEnabled()) {
+				LOGGER.info(SEP);
+				LOGGER.info("Creating Empty groups groups or folders (if needed).");
+				LOGGER.info(SEP);
+			}
+			for (GroupOrFolderDefinition def : definitionsToCreate) {
+				try {
+					if (grouperDAO.retrieveOrCreate(session, def) == null) {
+						throw new EscoGrouperException("Error while creating group or folder for the definition: "
+								+ def);
+					}
+					gate.release(def.getPath());
+				} catch (EscoGrouperException e) {
+					// Error : One group or folder definition can't be retrieved or created.
+					LOGGER.fatal(e.getMessage());
+					gate.fail(def.getPath(), e.getMessage());
+					errors.add(e.getMessage());
+				}
+			}
+			throwIfErrors(errors);
+
+			if (LOGGER.isInfoEnabled()) {
+				LOGGER.info(SEP);
+				LOGGER.info("Groups and folders created.");
+				LOGGER.info(SEP);
+			}
+		} finally {
+			grouperSessionUtil.stopSession(session);
 		}
+	}
 
-		grouperSessionUtil.stopSession(session);
+	/**
+	 * Throws an exception which reports all the errors of a step of the startup, if any.
+	 * @param errors The messages of the errors.
+	 */
+	private static void throwIfErrors(final List<String> errors) {
+		if (!errors.isEmpty()) {
+			final StringBuilder msg = new StringBuilder();
+			msg.append(errors.size());
+			msg.append(" error(s) while checking the definitions:");
+			for (String error : errors) {
+				msg.append("\n - ");
+				msg.append(error);
+			}
+			throw new EscoGrouperException(msg.toString());
+		}
 	}
 
 
@@ -225,81 +393,19 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 
 
 	/**
-	 * Updates the memberships for a given user and a set of attributes.
+	 * Handles the memberships for a given subject.
 	 * @param type The type of user (student, teacher, etc.)
-	 * @param userId The id of the user.
-	 * @param attributes The user attributes.
-	 * @return The grouper operation result.
-	 */
-	protected GrouperOperationResultDTO updateGroups(final PersonType type,
-			final String userId,
-			final String...attributes) {
-
-		if (LOGGER.isDebugEnabled()) {
-			LOGGER.debug(SEP);
-			LOGGER.debug("Starting to update groups ");
-			LOGGER.debug("for the user: " + userId);
-			LOGGER.debug("Type: " + type + ".");
-			LOGGER.debug(SEP);
-		}
-		final GrouperSession session = grouperSessionUtil.createSession();
-		final Set<String> previousManagedGroups =  new HashSet<String>();
-		GrouperOperationResultDTO result =
-			grouperDAO.retrieveManagedGroups(session, userId, previousManagedGroups);
-
-		if (result.isError()) {
-			LOGGER.error("Error while retrieving the previous managed groups for user: " + userId);
-			LOGGER.error(result.getException(), result.getException());
-		} else {
-			if (LOGGER.isDebugEnabled()) {
-				LOGGER.debug("Previous managed groups " + previousManagedGroups);
-			}
-
-			result = updateGroups(type, userId, session, previousManagedGroups, attributes);
-		}
-		grouperSessionUtil.stopSession(session);
-
-		if (LOGGER.isDebugEnabled()) {
-			LOGGER.debug(SEP);
-			LOGGER.debug("End of updating groups.");
-			LOGGER.debug(SEP);
-		}
-
-		return result;
-	}
-
-	/**
-	 * Handles the memberships for a given user.
-	 * @param type The type of user (student, teacher, etc.)
-	 * @param userId The id of the user.
-	 * @param attributes The user attributes.
-	 * @return The grouper operation result.
-	 */
-	protected GrouperOperationResultDTO addToGroups(final PersonType type,
-			final String userId,
-			final String...attributes) {
-		final GrouperSession session = grouperSessionUtil.createSession();
-		GrouperOperationResultDTO result = handlesEmptyGroupsOrFoldersDefinitionTemplates(session, attributes);
-		if (!result.isError()) {
-			result = addToGroups(type, userId, session, attributes);
-		}
-		grouperSessionUtil.stopSession(session);
-		return result;
-	}
-
-	/**
-	 * Handles the memberships for a given user.
-	 * @param type The type of user (student, teacher, etc.)
-	 * @param userId The id of the user.
+	 * @param subject The subject of the user.
 	 * @param session The Grouper session.
 	 * @param attributes The user attributes.
 	 * @return The grouper operation result.
 	 */
 	protected GrouperOperationResultDTO addToGroups(final PersonType type,
-			final String userId,
+			final Subject subject,
 			final GrouperSession session,
 			final String...attributes) {
 
+		final String userId = subject.getId();
 		if (LOGGER.isDebugEnabled()) {
 			LOGGER.debug(SEP);
 			LOGGER.debug("Starting to add to groups");
@@ -314,7 +420,7 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 
 		while (specificMemberships.hasNext()) {
 			final GrouperOperationResultDTO result = grouperDAO.addMember(session,
-					specificMemberships.next(), userId, attributes);
+					specificMemberships.next(), subject, attributes);
 			if (result.isError()) {
 				return result;
 			}
@@ -326,7 +432,7 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 
 		while (allMemberships.hasNext()) {
 			final GrouperOperationResultDTO result = grouperDAO.addMember(session,
-					allMemberships.next(), userId, attributes);
+					allMemberships.next(), subject, attributes);
 			if (result.isError()) {
 				return result;
 			}
@@ -342,54 +448,65 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 	}
 
 	/**
-	 * Handles the memberships for a given user.
+	 * Computes the groups a user should be a member of, as the union of the memberships
+	 * evaluated for each array of attributes values.
 	 * @param type The type of user (student, teacher, etc.)
-	 * @param userId The id of the user.
-	 * @param session The Grouper session.
-	 * @param previousManagedGroups The previous managed groups of the user.
-	 * @param attributes The user attributes.
-	 * @return The grouper operation result.
+	 * @param valuesArrays The arrays of attributes values of the user.
+	 * @return The definitions of the groups, associated to the values used to evaluate them.
 	 */
-	protected GrouperOperationResultDTO updateGroups(final PersonType type,
-			final String userId,
-			final GrouperSession session,
-			final Set<String> previousManagedGroups,
-			final String...attributes) {
-
-
-		// Handles specific memberships.
-		final Iterator<GroupOrFolderDefinition> specificMemberships =
-			definitionsManager.getMemberships(type, attributes);
-
-		while (specificMemberships.hasNext()) {
-			final GroupOrFolderDefinition groupDefinition = specificMemberships.next();
-
-			if (previousManagedGroups.contains(groupDefinition.getPath())) {
-				if (LOGGER.isDebugEnabled()) {
-					LOGGER.debug("User " + userId + " is already a member of the group "
-							+ groupDefinition.getPath());
+	protected Map<GroupOrFolderDefinition, String[]> computeDesiredMemberships(final PersonType type,
+			final String[][] valuesArrays) {
+		final long start = SGSMetrics.instance().start();
+		final Map<GroupOrFolderDefinition, String[]> desiredMemberships =
+			new LinkedHashMap<GroupOrFolderDefinition, String[]>();
+
+		for (String[] attributes : valuesArrays) {
+
+			// Handles specific memberships.
+			final Iterator<GroupOrFolderDefinition> specificMemberships =
+				definitionsManager.getMemberships(type, attributes);
+			while (specificMemberships.hasNext()) {
+				final GroupOrFolderDefinition groupDefinition = specificMemberships.next();
+				if (!desiredMemberships.containsKey(groupDefinition)) {
+					desiredMemberships.put(groupDefinition, attributes);
 				}
-			} else {
-				final GrouperOperationResultDTO result = grouperDAO.addMember(session,
-						groupDefinition, userId, attributes);
+			}
 
-				if (result.isError()) {
-					return result;
-				}
-				if (LOGGER.isDebugEnabled()) {
-					LOGGER.debug("User " + userId + " is added to the group "
-							+ groupDefinition.getPath());
+			// Handles memberships for all type of persons.
+			final Iterator<GroupOrFolderDefinition> allMemberships =
+				definitionsManager.getMemberships(PersonType.ALL, attributes);
+			while (allMemberships.hasNext()) {
+				final GroupOrFolderDefinition groupDefinition = allMemberships.next();
+				if (!desiredMemberships.containsKey(groupDefinition)) {
+					desiredMemberships.put(groupDefinition, attributes);
 				}
 			}
-			previousManagedGroups.remove(groupDefinition.getPath());
 		}
+		SGSMetrics.instance().record("service.computeDesiredMemberships", start, false);
+		return desiredMemberships;
+	}
 
-		// Handles memberships for all type of persons.
-		final Iterator<GroupOrFolderDefinition> allMemberships =
-			definitionsManager.getMemberships(PersonType.ALL, attributes);
+	/**
+	 * Applies the difference between the previous managed groups of a user and
+	 * the groups he should be a member of.
+	 * @param subject The subject of the user.
+	 * @param session The Grouper session.
+	 * @param previousManagedGroups The names of the previous managed groups of the user.
+	 * @param desiredMemberships The definitions of the groups the user should be a member of,
+	 * associated to the values used to evaluate them.
+	 * @return The grouper operation result.
+	 */
+	protected GrouperOperationResultDTO updateGroups(final Subject subject,
+			final GrouperSession session,
+			final Set<String> previousManagedGroups,
+			final Map<GroupOrFolderDefinition, String[]> desiredMemberships) {
 
-		while (allMemberships.hasNext()) {
-			final GroupOrFolderDefinition groupDefinition = allMemberships.next();
+		final String userId = subject.getId();
+		final Set<String> oldGroups = new HashSet<String>(previousManagedGroups);
+
+		for (Map.Entry<GroupOrFolderDefinition, String[]> desiredMembership : desiredMemberships.entrySet()) {
+			final GroupOrFolderDefinition groupDefinition = desiredMembership.getKey();
+			oldGroups.remove(groupDefinition.getPath());
 
 			if (previousManagedGroups.contains(groupDefinition.getPath())) {
 				if (LOGGER.isDebugEnabled()) {
@@ -398,7 +515,8 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 				}
 			} else {
 				final GrouperOperationResultDTO result = grouperDAO.addMember(session,
-						groupDefinition, userId, attributes);
+						groupDefinition, subject, desiredMembership.getValue());
+
 				if (result.isError()) {
 					return result;
 				}
@@ -407,14 +525,15 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 							+ groupDefinition.getPath());
 				}
 			}
-			previousManagedGroups.remove(groupDefinition.getPath());
 		}
 
 		// Removes the user from its old managed groups.
-		final GrouperOperationResultDTO result =
-			grouperDAO.removeFromGroups(session, userId, previousManagedGroups);
-		if (result.isError()) {
-			return result;
+		if (!oldGroups.isEmpty()) {
+			final GrouperOperationResultDTO result =
+				grouperDAO.removeFromGroups(session, subject, oldGroups);
+			if (result.isError()) {
+				return result;
+			}
 		}
 
 		return GrouperOperationResultDTO.RESULT_OK;
@@ -485,6 +604,178 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 	}
 
 
+	/**
+	 * Getter for syncWorkers.
+	 * @return syncWorkers.
+	 */
+	public int getSyncWorkers() {
+		return syncWorkers;
+	}
+
+	/**
+	 * Setter for syncWorkers.
+	 * @param syncWorkers the new value for syncWorkers.
+	 */
+	public void setSyncWorkers(final int syncWorkers) {
+		this.syncWorkers = syncWorkers;
+	}
+
+	/**
+	 * Getter for shardingTemplateElement.
+	 * @return shardingTemplateElement.
+	 */
+	public String getShardingTemplateElement() {
+		return shardingTemplateElement;
+	}
+
+	/**
+	 * Setter for shardingTemplateElement.
+	 * @param shardingTemplateElement the new value for shardingTemplateElement.
+	 */
+	public void setShardingTemplateElement(final String shardingTemplateElement) {
+		this.shardingTemplateElement = shardingTemplateElement;
+	}
+
+	/**
+	 * Getter for cacheSnapshot.
+	 * @return cacheSnapshot.
+	 */
+	public SGSCacheSnapshot getCacheSnapshot() {
+		return cacheSnapshot;
+	}
+
+	/**
+	 * Setter for cacheSnapshot.
+	 * @param cacheSnapshot the new value for cacheSnapshot.
+	 */
+	public void setCacheSnapshot(final SGSCacheSnapshot cacheSnapshot) {
+		this.cacheSnapshot = cacheSnapshot;
+	}
+
+	/**
+	 * Getter for fingerprintStore.
+	 * @return fingerprintStore.
+	 */
+	public EntityFingerprintStore getFingerprintStore() {
+		return fingerprintStore;
+	}
+
+	/**
+	 * Setter for fingerprintStore.
+	 * @param fingerprintStore the new value for fingerprintStore.
+	 */
+	public void setFingerprintStore(final EntityFingerprintStore fingerprintStore) {
+		this.fingerprintStore = fingerprintStore;
+	}
+
+	/**
+	 * Getter for traceOperations.
+	 * @return traceOperations.
+	 */
+	public boolean getTraceOperations() {
+		return traceOperations;
+	}
+
+	/**
+	 * Setter for traceOperations.
+	 * @param traceOperations the new value for traceOperations.
+	 */
+	public void setTraceOperations(final boolean traceOperations) {
+		this.traceOperations = traceOperations;
+	}
+
+	/**
+	 * Getter for slowestTracesLogged.
+	 * @return slowestTracesLogged.
+	 */
+	public int getSlowestTracesLogged() {
+		return slowestTracesLogged;
+	}
+
+	/**
+	 * Setter for slowestTracesLogged.
+	 * @param slowestTracesLogged the new value for slowestTracesLogged.
+	 */
+	public void setSlowestTracesLogged(final int slowestTracesLogged) {
+		this.slowestTracesLogged = slowestTracesLogged;
+	}
+
+	/**
+	 * Getter for backgroundStartup.
+	 * @return backgroundStartup.
+	 */
+	public boolean getBackgroundStartup() {
+		return backgroundStartup;
+	}
+
+	/**
+	 * Setter for backgroundStartup.
+	 * @param backgroundStartup the new value for backgroundStartup.
+	 */
+	public void setBackgroundStartup(final boolean backgroundStartup) {
+		this.backgroundStartup = backgroundStartup;
+	}
+
+	/**
+	 * Writes the snapshot of the cache and the fingerprints of the entities, if any,
+	 * when the service is stopped.
+	 */
+	@PreDestroy
+	public void destroy() {
+		if (cacheSnapshot != null) {
+			cacheSnapshot.stop();
+		}
+		if (fingerprintStore != null) {
+			fingerprintStore.save();
+		}
+	}
+
+	/**
+	 * Removes the fingerprint of an entity whose memberships are modified outside of a
+	 * synchronization, so it is not skipped by the next synchronization.
+	 * @param userId The id of the entity.
+	 */
+	private void forgetFingerprint(final String userId) {
+		if (fingerprintStore != null) {
+			fingerprintStore.remove(userId);
+		}
+	}
+
+	/**
+	 * Starts the trace of an operation, if the operations are traced.
+	 * @return The trace, null if the operations are not traced.
+	 */
+	private OperationTrace beginTrace() {
+		if (traceOperations) {
+			return OperationTrace.begin();
+		}
+		return null;
+	}
+
+	/**
+	 * Ends the trace of an operation.
+	 * @param trace The trace (may be null).
+	 */
+	private static void endTrace(final OperationTrace trace) {
+		if (trace != null) {
+			trace.end();
+		}
+	}
+
+	/**
+	 * Attaches a trace to the result of an operation.
+	 * @param result The result of the operation.
+	 * @param trace The trace (may be null).
+	 * @return The traced copy of the result, or the result itself if there is no trace.
+	 */
+	private static GrouperOperationResultDTO traced(final GrouperOperationResultDTO result,
+			final OperationTrace trace) {
+		if (trace == null) {
+			return result;
+		}
+		return result.withTrace(trace);
+	}
+
 	/**
 	 * Adds a person to groups.
 	 * @param personDescription The description of the person.
@@ -492,16 +783,31 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 	 * has been performed.
 	 */
 	public GrouperOperationResultDTO addToGroups(final IEntityDescription personDescription) {
+		final long start = SGSMetrics.instance().start();
+		final OperationTrace trace = beginTrace();
 		GrouperOperationResultDTO result = GrouperOperationResultDTO.RESULT_OK;
-		for (String[] attrValues : personDescription.getValuesArrays()) {
-			result =  addToGroups(personDescription.getType(),
-					personDescription.getId(),
-					attrValues);
-			if (result.isError()) {
-				return result;
+		forgetFingerprint(personDescription.getId());
+		final GrouperSession session = grouperSessionUtil.createSession();
+		try {
+
+			// The subject is retrieved once for all the values arrays.
+			final Subject subject = grouperDAO.retrieveSubject(personDescription.getId());
+			for (String[] attrValues : personDescription.getValuesArrays()) {
+				result = handlesEmptyGroupsOrFoldersDefinitionTemplates(session, attrValues);
+				if (!result.isError()) {
+					result =  addToGroups(personDescription.getType(), subject, session, attrValues);
+				}
+				if (result.isError()) {
+					break;
+				}
 			}
+		} catch (EscoGrouperException e) {
+			result = new GrouperOperationResultDTO(e);
 		}
-		return result;
+		grouperSessionUtil.stopSession(session);
+		endTrace(trace);
+		SGSMetrics.instance().record("service.addToGroups", start, result);
+		return traced(result, trace);
 	}
 
 	/**
@@ -511,15 +817,545 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 	 * has been performed.
 	 */
 	public GrouperOperationResultDTO updateMemberships(final IEntityDescription personDescription) {
-		GrouperOperationResultDTO result = GrouperOperationResultDTO.RESULT_OK;
-		for (String[] attrValues : personDescription.getValuesArrays()) {
-			result =  updateGroups(personDescription.getType(),
-					personDescription.getId(), attrValues);
+		final GrouperSession session = grouperSessionUtil.createSession();
+		final GrouperOperationResultDTO result = updateMemberships(session, personDescription);
+		grouperSessionUtil.stopSession(session);
+		if (fingerprintStore != null && !result.isError()) {
+			fingerprintStore.update(personDescription);
+		}
+		return result;
+	}
+
+	/**
+	 * Updates the memberships of a person, using an already opened Grouper session.
+	 * @param session The Grouper session.
+	 * @param personDescription The description of the person.
+	 * @return The result object which contains the informations about how the operation
+	 * has been performed.
+	 */
+	protected GrouperOperationResultDTO updateMemberships(final GrouperSession session,
+			final IEntityDescription personDescription) {
+		final long start = SGSMetrics.instance().start();
+		final OperationTrace trace = beginTrace();
+		GrouperOperationResultDTO result = null;
+		try {
+			result = doUpdateMemberships(session, personDescription);
+		} finally {
+			endTrace(trace);
+			SGSMetrics.instance().record("service.updateMemberships", start, result);
+		}
+		return traced(result, trace);
+	}
+
+	/**
+	 * Updates the memberships of a person, using an already opened Grouper session.
+	 * @param session The Grouper session.
+	 * @param personDescription The description of the person.
+	 * @return The result of the Grouper operation.
+	 */
+	private GrouperOperationResultDTO doUpdateMemberships(final GrouperSession session,
+			final IEntityDescription personDescription) {
+		final String userId = personDescription.getId();
+
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(SEP);
+			LOGGER.debug("Starting to update memberships ");
+			LOGGER.debug("for the user: " + userId);
+			LOGGER.debug("Type: " + personDescription.getType() + ".");
+			LOGGER.debug(SEP);
+		}
+
+		try {
+			final Subject subject = grouperDAO.retrieveSubject(userId);
+			final Set<String> previousManagedGroups = new HashSet<String>();
+			GrouperOperationResultDTO result =
+				grouperDAO.retrieveManagedGroups(session, subject, previousManagedGroups);
+
 			if (result.isError()) {
-				return result;
+				LOGGER.error("Error while retrieving the previous managed groups for user: " + userId);
+				LOGGER.error(result.getException(), result.getException());
+			} else {
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("Previous managed groups " + previousManagedGroups);
+				}
+
+				// One diff for all the values arrays.
+				final Map<GroupOrFolderDefinition, String[]> desiredMemberships =
+					computeDesiredMemberships(personDescription.getType(), personDescription.getValuesArrays());
+				result = updateGroups(subject, session, previousManagedGroups, desiredMemberships);
+			}
+
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug(SEP);
+				LOGGER.debug("End of updating memberships.");
+				LOGGER.debug(SEP);
 			}
+			return result;
+
+		} catch (EscoGrouperException e) {
+			return new GrouperOperationResultDTO(e);
 		}
-		return result;
+	}
+
+	/**
+	 * Updates the memberships of a batch of persons.
+	 * The Grouper session is opened once for the whole batch and the evaluated
+	 * definitions are shared through the cache of the definitions manager.
+	 * @param personsDescriptions The descriptions of the persons.
+	 * @return The report which contains the result of the operation for each person.
+	 * @see org.esco.grouper.services.ISarapisGroupService#syncMemberships(java.lang.Iterable)
+	 */
+	public BatchSyncReport syncMemberships(final Iterable<IEntityDescription> personsDescriptions) {
+		final long start = SGSMetrics.instance().start();
+
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info(SEP);
+			LOGGER.info("Starting to synchronize a batch of memberships.");
+			LOGGER.info(SEP);
+		}
+
+		final BatchSyncReport report = new BatchSyncReport();
+		if (syncWorkers > 1 && shardingTemplateElement != null) {
+			syncMembershipsInParallel(personsDescriptions, report);
+		} else {
+			syncMemberships(personsDescriptions, report);
+		}
+		if (fingerprintStore != null) {
+			fingerprintStore.save();
+		}
+
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info(SEP);
+			LOGGER.info("End of the batch synchronization: " + report + ".");
+			LOGGER.info(SEP);
+		}
+		if (traceOperations && LOGGER.isInfoEnabled()) {
+			for (String entityId : report.getSlowest(slowestTracesLogged)) {
+				LOGGER.info("Slow update for the entity " + entityId + ": "
+						+ report.getResult(entityId).getTrace() + ".");
+			}
+		}
+		SGSMetrics.instance().record("service.syncMemberships", start, report.hasErrors());
+		return report;
+	}
+
+	/**
+	 * Reconciles the managed groups with a full population, group by group.
+	 * @param population The descriptions of all the persons.
+	 * @return The report which contains the members added and removed for each group.
+	 * @see org.esco.grouper.services.ISarapisGroupService#reconcileMemberships(java.lang.Iterable)
+	 */
+	public ReconciliationReport reconcileMemberships(final Iterable<IEntityDescription> population) {
+		final long start = SGSMetrics.instance().start();
+
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info(SEP);
+			LOGGER.info("Starting to reconcile the managed groups.");
+			LOGGER.info(SEP);
+		}
+
+		final ReconciliationReport report = new ReconciliationReport();
+
+		// The reconciliation may remove memberships of entities which are not part of the population.
+		if (fingerprintStore != null) {
+			fingerprintStore.clear();
+			fingerprintStore.save();
+		}
+		final GrouperSession session = grouperSessionUtil.createSession();
+		try {
+			// Computes the desired members of each group for the whole population.
+			final Map<String, GroupOrFolderDefinition> definitions =
+				new LinkedHashMap<String, GroupOrFolderDefinition>();
+			final Map<String, String[]> definitionsValues = new HashMap<String, String[]>();
+			final Map<String, Set<String>> desiredMembers = new HashMap<String, Set<String>>();
+			int nbPersons = 0;
+
+			for (IEntityDescription personDescription : population) {
+				nbPersons++;
+				for (String[] attrValues : personDescription.getValuesArrays()) {
+					final GrouperOperationResultDTO result =
+						handlesEmptyGroupsOrFoldersDefinitionTemplates(session, attrValues);
+					if (result.isError()) {
+						LOGGER.error("Error while creating the empty groups or folders for user: "
+								+ personDescription.getId());
+					}
+				}
+				final Map<GroupOrFolderDefinition, String[]> desiredMemberships =
+					computeDesiredMemberships(personDescription.getType(), personDescription.getValuesArrays());
+				for (Map.Entry<GroupOrFolderDefinition, String[]> desiredMembership : desiredMemberships.entrySet()) {
+					final String groupName = desiredMembership.getKey().getPath();
+					Set<String> members = desiredMembers.get(groupName);
+					if (members == null) {
+						members = new HashSet<String>();
+						desiredMembers.put(groupName, members);
+						definitions.put(groupName, desiredMembership.getKey());
+						definitionsValues.put(groupName, desiredMembership.getValue());
+					}
+					members.add(personDescription.getId());
+				}
+			}
+
+			// The managed groups without any desired member are reconciled too.
+			final Set<String> emptiedGroups = grouperDAO.retrieveAllManagedGroupsNames(session);
+			emptiedGroups.removeAll(definitions.keySet());
+
+			if (LOGGER.isInfoEnabled()) {
+				LOGGER.info("Reconciling " + (definitions.size() + emptiedGroups.size()) + " group(s) for "
+						+ nbPersons + " person(s).");
+			}
+
+			for (Map.Entry<String, GroupOrFolderDefinition> definition : definitions.entrySet()) {
+				final String groupName = definition.getKey();
+				report.addGroup(grouperDAO.reconcileGroup(session, definition.getValue(), groupName,
+						desiredMembers.get(groupName), definitionsValues.get(groupName)));
+			}
+			final Set<String> noMember = Collections.emptySet();
+			for (String groupName : emptiedGroups) {
+				report.addGroup(grouperDAO.reconcileGroup(session, null, groupName, noMember));
+			}
+		} catch (EscoGrouperException e) {
+			LOGGER.error("Error while reconciling the managed groups.");
+			report.setResult(new GrouperOperationResultDTO(e));
+		} catch (RuntimeException e) {
+			LOGGER.error(e, e);
+			report.setResult(new GrouperOperationResultDTO(e));
+		} finally {
+			grouperSessionUtil.stopSession(session);
+		}
+
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info(SEP);
+			LOGGER.info("End of the reconciliation: " + report + ".");
+			LOGGER.info(SEP);
+		}
+		SGSMetrics.instance().record("service.reconcileMemberships", start, report.hasErrors());
+		return report;
+	}
+
+	/**
+	 * Plans the synchronization of a batch of persons without writing to Grouper.
+	 * Only read-only queries are performed: the resolution of the groups and folders
+	 * and the retrieval of the current memberships.
+	 * @param personsDescriptions The descriptions of the persons.
+	 * @param planFile The path of the plan file (null to only count the operations).
+	 * @return The plan.
+	 * @see org.esco.grouper.services.ISarapisGroupService#planMemberships(java.lang.Iterable, java.lang.String)
+	 */
+	public ChangePlan planMemberships(final Iterable<IEntityDescription> personsDescriptions,
+			final String planFile) {
+		final long start = SGSMetrics.instance().start();
+
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info(SEP);
+			LOGGER.info("Starting to plan the synchronization of a batch.");
+			LOGGER.info(SEP);
+		}
+
+		final ChangePlan plan;
+		if (planFile == null) {
+			plan = new ChangePlan();
+		} else {
+			plan = new ChangePlan(planFile);
+		}
+
+		final GrouperSession session = grouperSessionUtil.createSession();
+		try {
+			final String managerId = session.getMember().getUuid();
+
+			// Balance of the memberships for each group, used to plan the deletion of the empty groups.
+			final Map<String, Integer> membersBalances = new HashMap<String, Integer>();
+
+			for (IEntityDescription personDescription : personsDescriptions) {
+				final String userId = personDescription.getId();
+				try {
+					final Subject subject = grouperDAO.retrieveSubject(userId);
+					for (String[] attrValues : personDescription.getValuesArrays()) {
+						final Iterator<GroupOrFolderDefinition> it =
+							definitionsManager.getGroupsOrFoldersTemplatesToCreate(attrValues);
+						while (it.hasNext()) {
+							planGroupOrFolder(session, plan, it.next(), attrValues);
+						}
+					}
+
+					final Map<String, String> currentMemberships =
+						grouperDAO.retrieveImmediateMembershipsCreators(subject);
+					final Map<GroupOrFolderDefinition, String[]> desiredMemberships =
+						computeDesiredMemberships(personDescription.getType(), personDescription.getValuesArrays());
+					final Set<String> desiredGroups = new HashSet<String>(desiredMemberships.size() * 2);
+
+					for (Map.Entry<GroupOrFolderDefinition, String[]> desiredMembership : desiredMemberships.entrySet()) {
+						final GroupOrFolderDefinition groupDefinition = desiredMembership.getKey();
+						final String groupName = groupDefinition.getPath();
+						desiredGroups.add(groupName);
+						if (!currentMemberships.containsKey(groupName)) {
+							planGroupOrFolder(session, plan, groupDefinition, desiredMembership.getValue());
+							plan.record(ChangePlan.Operation.ADD_MEMBER, groupName, userId);
+							addToBalance(membersBalances, groupName, 1);
+						}
+					}
+					for (Map.Entry<String, String> currentMembership : currentMemberships.entrySet()) {
+						final String groupName = currentMembership.getKey();
+						if (managerId.equals(currentMembership.getValue()) && !desiredGroups.contains(groupName)) {
+							plan.record(ChangePlan.Operation.REMOVE_MEMBER, groupName, userId);
+							addToBalance(membersBalances, groupName, -1);
+						}
+					}
+				} catch (EscoGrouperException e) {
+					LOGGER.error("Error while planning the memberships for user: " + userId);
+					plan.recordError();
+				}
+			}
+
+			// The groups which lose all their members.
+			if (grouperDAO.getDeleteEmptyGroups()) {
+				for (Map.Entry<String, Integer> balance : membersBalances.entrySet()) {
+					final String groupName = balance.getKey();
+					if (balance.getValue() < 0 && grouperDAO.canDeleteEmptyGroup(session, groupName)
+							&& grouperDAO.countImmediateMembers(session, groupName) + balance.getValue() <= 0) {
+						plan.record(ChangePlan.Operation.DELETE_GROUP, groupName, null);
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			LOGGER.error(e, e);
+			plan.recordError();
+		} finally {
+			plan.close();
+			grouperSessionUtil.stopSession(session);
+		}
+
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info(SEP);
+			LOGGER.info("End of the planning: " + plan + ".");
+			LOGGER.info(SEP);
+		}
+		SGSMetrics.instance().record("service.planMemberships", start, plan.countErrors() > 0);
+		return plan;
+	}
+
+	/**
+	 * Plans the creation of a group or folder, if it does not exist, with its containing
+	 * folders, its privileges and its memberships.
+	 * @param session The Grouper session.
+	 * @param plan The plan.
+	 * @param definition The definition of the group or folder.
+	 * @param values The values used to evaluate the templates.
+	 */
+	protected void planGroupOrFolder(final GrouperSession session,
+			final ChangePlan plan,
+			final GroupOrFolderDefinition definition,
+			final String...values) {
+		final String path = definition.getPath();
+		if (plan.isCreationPlanned(path) || grouperDAO.exists(session, definition)) {
+			return;
+		}
+
+		if (!definition.isRoot()) {
+			planGroupOrFolder(session, plan,
+					definitionsManager.getDefinition(definition.getContainingPathAsTemplate(), values), values);
+		}
+		if (!plan.recordCreation(definition.isFolder(), path)) {
+			return;
+		}
+
+		if (definition.isGroup()) {
+			for (int i = 0; i < definition.countPrivileges(); i++) {
+				final PrivilegeDefinition privilege = definition.getPrivilege(i);
+				final GroupOrFolderDefinition privilegedGroup =
+					definitionsManager.getDefinition(privilege.getPath().getString(), values);
+				planGroupOrFolder(session, plan, privilegedGroup, values);
+				plan.record(ChangePlan.Operation.GRANT_PRIVILEGE, path,
+						privilege.getPrivilege() + ":" + privilegedGroup.getPath());
+			}
+
+			for (int i = 0; i < definition.countContainingGroupsPaths(); i++) {
+				final EvaluableStringCondition pathCondition = definition.getContainingGroupPath(i);
+				final GroupOrFolderDefinition containingGroup =
+					definitionsManager.getDefinition(pathCondition.getEvaluableString().getString(), values);
+				planGroupOrFolder(session, plan, containingGroup, values);
+				if (pathCondition.isMatchingCondition(definition.getExtension())) {
+					plan.record(ChangePlan.Operation.ADD_GROUP_MEMBER, containingGroup.getPath(), path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the balance of the memberships of a group.
+	 * @param balances The balances by group name.
+	 * @param groupName The name of the group.
+	 * @param delta The number of added (positive) or removed (negative) members.
+	 */
+	private static void addToBalance(final Map<String, Integer> balances, final String groupName, final int delta) {
+		final Integer balance = balances.get(groupName);
+		if (balance == null) {
+			balances.put(groupName, delta);
+		} else {
+			balances.put(groupName, balance + delta);
+		}
+	}
+
+	/**
+	 * Updates serially the memberships of a list of persons, in a dedicated Grouper session.
+	 * @param personsDescriptions The descriptions of the persons.
+	 * @param report The report used to store the result for each person.
+	 */
+	protected void syncMemberships(final Iterable<IEntityDescription> personsDescriptions,
+			final BatchSyncReport report) {
+		final GrouperSession session = grouperSessionUtil.createSession();
+		try {
+			for (IEntityDescription personDescription : personsDescriptions) {
+				if (fingerprintStore != null && fingerprintStore.isUnchanged(personDescription)) {
+					if (LOGGER.isDebugEnabled()) {
+						LOGGER.debug("User " + personDescription.getId() + " unchanged - Skipped.");
+					}
+					report.addResult(personDescription.getId(), GrouperOperationResultDTO.RESULT_OK);
+					continue;
+				}
+				GrouperOperationResultDTO result;
+				try {
+					result = updateMemberships(session, personDescription);
+				} catch (RuntimeException e) {
+					LOGGER.error(e, e);
+					result = new GrouperOperationResultDTO(e);
+				}
+				if (result.isError()) {
+					LOGGER.error("Error while synchronizing the memberships for user: "
+							+ personDescription.getId());
+				} else if (fingerprintStore != null) {
+					fingerprintStore.update(personDescription);
+				}
+				report.addResult(personDescription.getId(), result);
+			}
+		} finally {
+			grouperSessionUtil.stopSession(session);
+		}
+	}
+
+	/**
+	 * Updates the memberships of a batch of persons with a pool of workers.
+	 * The persons are sharded by the value of the sharding template element: each shard
+	 * is processed serially by one worker so the groups and folders of a shard
+	 * are never created concurrently, while different shards are processed in parallel.
+	 * The persons of several shards are processed serially once all the shards are done.
+	 * Each worker reuses its session for all the shards it processes, and releases it
+	 * when the pool is shut down.
+	 * @param personsDescriptions The descriptions of the persons.
+	 * @param report The report used to store the result for each person.
+	 */
+	protected void syncMembershipsInParallel(final Iterable<IEntityDescription> personsDescriptions,
+			final BatchSyncReport report) {
+
+		final List<IEntityDescription> multiShardsEntities = new ArrayList<IEntityDescription>();
+		final Map<String, List<IEntityDescription>> shards = shard(personsDescriptions, multiShardsEntities);
+		final int nbWorkers = Math.max(1, Math.min(syncWorkers, shards.size()));
+
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("Synchronizing " + shards.size() + " shard(s) by " + shardingTemplateElement
+					+ " with " + nbWorkers + " worker(s), then " + multiShardsEntities.size()
+					+ " entities of several shards.");
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(nbWorkers, new ThreadFactory() {
+			private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+			public Thread newThread(final Runnable worker) {
+				return threadFactory.newThread(new Runnable() {
+					public void run() {
+						grouperSessionUtil.reuseSessionsInCurrentThread();
+						try {
+							worker.run();
+						} finally {
+							grouperSessionUtil.releaseSession();
+						}
+					}
+				});
+			}
+		});
+		try {
+			final Map<Future<?>, List<IEntityDescription>> futures =
+				new LinkedHashMap<Future<?>, List<IEntityDescription>>(shards.size() * 2);
+			for (final Map.Entry<String, List<IEntityDescription>> shard : shards.entrySet()) {
+				futures.put(executor.submit(new Runnable() {
+					public void run() {
+						if (LOGGER.isDebugEnabled()) {
+							LOGGER.debug("Synchronizing the shard " + shard.getKey()
+									+ " (" + shard.getValue().size() + " entities).");
+						}
+						syncMemberships(shard.getValue(), report);
+					}
+				}), shard.getValue());
+			}
+			for (Map.Entry<Future<?>, List<IEntityDescription>> future : futures.entrySet()) {
+				try {
+					future.getKey().get();
+				} catch (ExecutionException e) {
+					LOGGER.error(e.getCause(), e.getCause());
+					addMissingResults(future.getValue(), report, e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.error(e, e);
+			throw new EscoGrouperException(e);
+		} finally {
+			executor.shutdown();
+		}
+
+		// The entities of several shards may use the groups and folders of any shard.
+		if (!multiShardsEntities.isEmpty()) {
+			try {
+				syncMemberships(multiShardsEntities, report);
+			} catch (RuntimeException e) {
+				LOGGER.error(e, e);
+				addMissingResults(multiShardsEntities, report, e);
+			}
+		}
+	}
+
+	/**
+	 * Reports an error for the entities which have not been processed.
+	 * @param personsDescriptions The descriptions of the persons.
+	 * @param report The report used to store the result for each person.
+	 * @param cause The cause of the error.
+	 */
+	private static void addMissingResults(final List<IEntityDescription> personsDescriptions,
+			final BatchSyncReport report, final Throwable cause) {
+		final EscoGrouperException error = new EscoGrouperException(
+				"Entity not processed: " + cause.getMessage());
+		error.initCause(cause);
+		for (IEntityDescription personDescription : personsDescriptions) {
+			if (report.getResult(personDescription.getId()) == null) {
+				report.addResult(personDescription.getId(), new GrouperOperationResultDTO(error));
+			}
+		}
+	}
+
+	/**
+	 * Shards the descriptions of persons by the value of the sharding template element.
+	 * @param personsDescriptions The descriptions of the persons.
+	 * @param multiShardsEntities The list used to store the persons of several shards.
+	 * @return The lists of persons by value of the sharding template element.
+	 */
+	protected Map<String, List<IEntityDescription>> shard(final Iterable<IEntityDescription> personsDescriptions,
+			final List<IEntityDescription> multiShardsEntities) {
+		final EntitySharding sharding = new EntitySharding(shardingTemplateElement);
+		final Map<String, List<IEntityDescription>> shards = new LinkedHashMap<String, List<IEntityDescription>>();
+
+		for (IEntityDescription personDescription : personsDescriptions) {
+			final String key = sharding.shardOf(personDescription);
+			if (key == null) {
+				multiShardsEntities.add(personDescription);
+				continue;
+			}
+			List<IEntityDescription> shard = shards.get(key);
+			if (shard == null) {
+				shard = new ArrayList<IEntityDescription>();
+				shards.put(key, shard);
+			}
+			shard.add(personDescription);
+		}
+		return shards;
 	}
 
 	/**
@@ -528,6 +1364,8 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 	 * @return The result of the Grouper operation.
 	 */
 	public GrouperOperationResultDTO removeFromAllGroups(final String userId) {
+		final long start = SGSMetrics.instance().start();
+		final OperationTrace trace = beginTrace();
 
 		if (LOGGER.isDebugEnabled()) {
 			LOGGER.debug(SEP);
@@ -535,6 +1373,7 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 			LOGGER.debug("for the user: " + userId);
 			LOGGER.debug(SEP);
 		}
+		forgetFingerprint(userId);
 		final GrouperSession session = grouperSessionUtil.createSession();
 		GrouperOperationResultDTO result = grouperDAO.removeFromAllGroups(session, userId);
 
@@ -550,7 +1389,9 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 			LOGGER.debug(SEP);
 		}
 
-		return result;
+		endTrace(trace);
+		SGSMetrics.instance().record("service.removeFromAllGroups", start, result);
+		return traced(result, trace);
 	}
 	/**
 	 * Removes a person from the groups, including the groups not managed by this service.
@@ -558,6 +1399,8 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 	 * @return The result of the Grouper operation.
 	 */
 	public GrouperOperationResultDTO removeFromManagedGroups(final String userId) {
+		final long start = SGSMetrics.instance().start();
+		final OperationTrace trace = beginTrace();
 
 		if (LOGGER.isDebugEnabled()) {
 			LOGGER.debug(SEP);
@@ -565,6 +1408,7 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 			LOGGER.debug("for the user: " + userId);
 			LOGGER.debug(SEP);
 		}
+		forgetFingerprint(userId);
 		final GrouperSession session = grouperSessionUtil.createSession();
 		GrouperOperationResultDTO result = grouperDAO.removeFromManagedGroups(session, userId);
 
@@ -580,6 +1424,32 @@ public class SarapisGroupServiceImpl implements ISarapisGroupService {
 			LOGGER.debug(SEP);
 		}
 
+		endTrace(trace);
+		SGSMetrics.instance().record("service.removeFromManagedGroups", start, result);
+		return traced(result, trace);
+	}
+
+	/**
+	 * Rebuilds the local index of the memberships managed by this service
+	 * from the memberships stored in Grouper.
+	 * @return The result of the Grouper operation.
+	 * @see org.esco.grouper.services.ISarapisGroupService#rebuildManagedMembershipsIndex()
+	 */
+	public GrouperOperationResultDTO rebuildManagedMembershipsIndex() {
+		final long start = SGSMetrics.instance().start();
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info(SEP);
+			LOGGER.info("Rebuilding the managed memberships index.");
+			LOGGER.info(SEP);
+		}
+		final GrouperSession session = grouperSessionUtil.createSession();
+		final GrouperOperationResultDTO result = grouperDAO.rebuildManagedMembershipsIndex(session);
+		if (result.isError()) {
+			LOGGER.error("Error while rebuilding the managed memberships index.");
+			LOGGER.error(result.getException(), result.getException());
+		}
+		grouperSessionUtil.stopSession(session);
+		SGSMetrics.instance().record("service.rebuildManagedMembershipsIndex", start, result);
 		return result;
 	}
 }
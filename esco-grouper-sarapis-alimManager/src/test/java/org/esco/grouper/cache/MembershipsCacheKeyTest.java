@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.ehcache.CacheManager;
+
+import org.esco.grouper.domain.beans.GroupOrFolderDefinition;
+import org.esco.grouper.domain.beans.PersonType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the keys of the memberships caches, and of the lookups with the reused probe keys.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class MembershipsCacheKeyTest {
+
+    /**
+     * Empties the cache.
+     */
+    @Before
+    public void setUp() {
+        SGSCache.instance();
+        CacheManager.getInstance().clearAll();
+    }
+
+    /**
+     * Empties the cache.
+     */
+    @After
+    public void tearDown() {
+        CacheManager.getInstance().clearAll();
+    }
+
+    /**
+     * The keys built for the same type and values are equal and have the same hash value.
+     */
+    @Test
+    public void testEquality() {
+        final MembershipsCacheKey key = MembershipsCacheKey.of(PersonType.TEACHER, "0450000A", "DIR");
+        final MembershipsCacheKey same = MembershipsCacheKey.of(PersonType.TEACHER, "0450000A", "DIR");
+        assertEquals(key, same);
+        assertEquals(key.hashCode(), same.hashCode());
+        assertFalse(key.equals(MembershipsCacheKey.of(PersonType.STUDENT, "0450000A", "DIR")));
+        assertFalse(key.equals(MembershipsCacheKey.of(PersonType.TEACHER, "0450000A")));
+        assertFalse(key.equals(MembershipsCacheKey.of(PersonType.TEACHER, "0450000B", "DIR")));
+    }
+
+    /**
+     * The values given to build a stored key are copied.
+     */
+    @Test
+    public void testStoredKeyCopiesValues() {
+        final String[] values = {"0450000A", "DIR"};
+        final MembershipsCacheKey key = MembershipsCacheKey.of(PersonType.TEACHER, values);
+        final int hash = key.hashCode();
+        values[0] = "0450000B";
+        assertEquals(hash, key.hashCode());
+        assertEquals("0450000A", key.getAttributes()[0]);
+    }
+
+    /**
+     * A reused probe key finds the stored keys, for successive types and values.
+     */
+    @Test
+    public void testProbeKeyReuse() {
+        final Map<MembershipsCacheKey, String> stored = new HashMap<MembershipsCacheKey, String>();
+        stored.put(MembershipsCacheKey.of(PersonType.TEACHER, "0450000A"), "teacher");
+        stored.put(MembershipsCacheKey.of(PersonType.STUDENT, "0450000A", "1ES"), "student");
+
+        final MembershipsCacheKey probe = new MembershipsCacheKey();
+        assertEquals("teacher", stored.get(probe.reset(PersonType.TEACHER, new String[] {"0450000A"})));
+        assertEquals(PersonType.TEACHER, probe.getType());
+        assertEquals("student", stored.get(probe.reset(PersonType.STUDENT, new String[] {"0450000A", "1ES"})));
+        assertEquals(PersonType.STUDENT, probe.getType());
+        assertNull(stored.get(probe.reset(PersonType.STUDENT, new String[] {"0450000A"})));
+        assertEquals(MembershipsCacheKey.of(PersonType.STUDENT, "0450000A").hashCode(), probe.hashCode());
+    }
+
+    /**
+     * A probe key reset without values does not retain the values of the previous lookup.
+     */
+    @Test
+    public void testProbeKeyReleasesValues() {
+        final MembershipsCacheKey probe = new MembershipsCacheKey();
+        probe.reset(PersonType.TEACHER, new String[] {"0450000A"});
+        probe.reset(PersonType.TEACHER, null);
+        assertNull(probe.getAttributes());
+        assertFalse(probe.equals(MembershipsCacheKey.of(PersonType.TEACHER, "0450000A")));
+    }
+
+    /**
+     * The memberships cached are found by the lookups, which give the cached array.
+     */
+    @Test
+    public void testCacheHit() {
+        final SGSCache cache = SGSCache.instance();
+        final GroupOrFolderDefinition[] definitions = new GroupOrFolderDefinition[0];
+        final String[] values = {"0450000A", "DIR"};
+        cache.cacheMemberships(definitions, PersonType.TEACHER, values);
+
+        assertSame(definitions, cache.getMemberships(PersonType.TEACHER, "0450000A", "DIR"));
+        assertSame(definitions, cache.getMemberships(PersonType.TEACHER, "0450000A", "DIR"));
+        assertNull(cache.getMemberships(PersonType.STUDENT, "0450000A", "DIR"));
+        assertNull(cache.getMembershipsForTemplates(PersonType.TEACHER, "0450000A", "DIR"));
+
+        // The values of the caller are not retained by the cache.
+        values[1] = "ENS";
+        assertNull(cache.getMemberships(PersonType.TEACHER, values));
+        assertSame(definitions, cache.getMemberships(PersonType.TEACHER, "0450000A", "DIR"));
+        assertTrue(cache.getMembershipsKeys().contains(MembershipsCacheKey.of(PersonType.TEACHER, "0450000A", "DIR")));
+    }
+}
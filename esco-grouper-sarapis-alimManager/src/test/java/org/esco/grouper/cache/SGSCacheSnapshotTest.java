@@ -0,0 +1,193 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import net.sf.ehcache.CacheManager;
+
+import org.esco.grouper.domain.beans.GroupOrFolderDefinition;
+import org.esco.grouper.domain.beans.GroupOrFolderDefinitionsManager;
+import org.esco.grouper.domain.beans.PersonType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the snapshot of the SGS cache: the cache is written then loaded again.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class SGSCacheSnapshotTest {
+
+    /** Hash of the definitions used by the tests. */
+    private static final String DEFINITIONS_HASH = "0123456789abcdef";
+
+    /** Folder of the snapshot files. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** The memberships evaluated again by the definitions manager. */
+    private final List<String> evaluated = new ArrayList<String>();
+
+    /** The snapshot file. */
+    private File file;
+
+    /**
+     * Definitions manager which records the memberships evaluated while loading the snapshot.
+     */
+    private class RecordingDefinitionsManager extends GroupOrFolderDefinitionsManager {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Records the evaluation of the memberships.
+         * @param type The type of the member of the groups.
+         * @param attributes The attributes of the member of the groups.
+         * @return An empty iterator.
+         * @see GroupOrFolderDefinitionsManager#getMemberships(PersonType, String[])
+         */
+        @Override
+        public Iterator<GroupOrFolderDefinition> getMemberships(final PersonType type,
+                final String...attributes) {
+            evaluated.add("M " + type + " " + Arrays.asList(attributes));
+            return Collections.<GroupOrFolderDefinition>emptyList().iterator();
+        }
+
+        /**
+         * Records the evaluation of the memberships for templates.
+         * @param type The type of the member of the groups.
+         * @param attributes The attributes of the member of the groups.
+         * @return An empty iterator.
+         * @see GroupOrFolderDefinitionsManager#getMembershipsForTemplates(PersonType, String[])
+         */
+        @Override
+        public Iterator<GroupOrFolderDefinition> getMembershipsForTemplates(final PersonType type,
+                final String...attributes) {
+            evaluated.add("T " + type + " " + Arrays.asList(attributes));
+            return Collections.<GroupOrFolderDefinition>emptyList().iterator();
+        }
+    }
+
+    /**
+     * Empties the cache.
+     */
+    @Before
+    public void setUp() {
+        SGSCache.instance();
+        CacheManager.getInstance().clearAll();
+        file = new File(folder.getRoot(), "sgs-cache.snapshot");
+    }
+
+    /**
+     * Empties the cache.
+     */
+    @After
+    public void tearDown() {
+        CacheManager.getInstance().clearAll();
+    }
+
+    /**
+     * Builds a snapshot on the snapshot file.
+     * @return The snapshot.
+     * @throws Exception
+     */
+    private SGSCacheSnapshot snapshot() throws Exception {
+        final SGSCacheSnapshot snapshot = new SGSCacheSnapshot();
+        snapshot.setSnapshotFile(file.getPath());
+        snapshot.setDefinitionsManager(new RecordingDefinitionsManager());
+        snapshot.afterPropertiesSet();
+        return snapshot;
+    }
+
+    /**
+     * Fills the cache.
+     */
+    private static void fillCache() {
+        final SGSCache cache = SGSCache.instance();
+        cache.cacheMemberships(new GroupOrFolderDefinition[0], PersonType.TEACHER, "0450000A", "with\ttab");
+        cache.cacheMemebrshipsForTemplates(new GroupOrFolderDefinition[0], PersonType.STUDENT, "0450000B");
+        cache.cacheEmptyTemplate("esco:etablissements:with\\backslash");
+        cache.cacheInGroupsMembershipsCache("esco:admin:central");
+        cache.cacheInGroupsPrivilegesCache("esco:admin:line\nbreak");
+    }
+
+    /**
+     * The snapshot restores the cache.
+     * @throws Exception
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        fillCache();
+        final SGSCacheSnapshot snapshot = snapshot();
+        snapshot.start(DEFINITIONS_HASH);
+        snapshot.stop();
+        assertTrue(file.exists());
+
+        CacheManager.getInstance().clearAll();
+        final SGSCache cache = SGSCache.instance();
+        assertFalse(cache.hasInGroupsMembershipsCache("esco:admin:central"));
+
+        snapshot().start(DEFINITIONS_HASH);
+        assertTrue(cache.hasInGroupsMembershipsCache("esco:admin:central"));
+        assertTrue(cache.hasInGroupsPrivielgesCache("esco:admin:line\nbreak"));
+        assertEquals(Arrays.asList("esco:etablissements:with\\backslash"), cache.getEmptyTemplatesPaths());
+        assertEquals(2, evaluated.size());
+        assertTrue(evaluated.contains("M TEACHER [0450000A, with\ttab]"));
+        assertTrue(evaluated.contains("T STUDENT [0450000B]"));
+    }
+
+    /**
+     * The snapshot is discarded when the definitions have changed.
+     * @throws Exception
+     */
+    @Test
+    public void testDefinitionsChanged() throws Exception {
+        fillCache();
+        final SGSCacheSnapshot snapshot = snapshot();
+        snapshot.start(DEFINITIONS_HASH);
+        snapshot.stop();
+
+        CacheManager.getInstance().clearAll();
+        snapshot().start("fedcba9876543210");
+        assertFalse(SGSCache.instance().hasInGroupsMembershipsCache("esco:admin:central"));
+        assertTrue(evaluated.isEmpty());
+    }
+
+    /**
+     * The snapshot is not written before the definitions are parsed.
+     * @throws Exception
+     */
+    @Test
+    public void testNotWrittenWithoutDefinitions() throws Exception {
+        fillCache();
+        snapshot().save();
+        assertFalse(file.exists());
+    }
+}
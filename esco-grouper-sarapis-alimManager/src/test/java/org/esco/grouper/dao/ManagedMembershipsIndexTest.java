@@ -0,0 +1,243 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the managed memberships index: journal replay and compaction.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class ManagedMembershipsIndexTest {
+
+    /** Encoding of the journal. */
+    private static final String ENCODING = "UTF-8";
+
+    /** Folder of the journal files. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** The journal file. */
+    private File journal;
+
+    /** The index under test. */
+    private ManagedMembershipsIndex index;
+
+    /**
+     * Builds the index on a journal which does not exist yet.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        journal = new File(folder.getRoot(), "managed-memberships.idx");
+        index = open();
+    }
+
+    /**
+     * Closes the index.
+     */
+    @After
+    public void tearDown() {
+        index.close();
+    }
+
+    /**
+     * Opens an index on the journal file.
+     * @return The index.
+     * @throws Exception
+     */
+    private ManagedMembershipsIndex open() throws Exception {
+        final ManagedMembershipsIndex result = new ManagedMembershipsIndex();
+        result.setIndexFile(journal.getPath());
+        result.setMinCompactionLines(4);
+        result.setCompactionRatio(2);
+        result.afterPropertiesSet();
+        return result;
+    }
+
+    /**
+     * Opens the index again, i.e. replays the journal.
+     * @throws Exception
+     */
+    private void reopen() throws Exception {
+        index.close();
+        index = open();
+    }
+
+    /**
+     * Counts the lines of the journal file, header excluded.
+     * @return The number of lines.
+     * @throws IOException
+     */
+    private int countJournalLines() throws IOException {
+        final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journal), ENCODING));
+        try {
+            int count = -1;
+            while (reader.readLine() != null) {
+                count++;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Builds a set of group names.
+     * @param groupNames The group names.
+     * @return The set.
+     */
+    private static Set<String> groups(final String...groupNames) {
+        return new HashSet<String>(Arrays.asList(groupNames));
+    }
+
+    /**
+     * The index is not used until it has been rebuilt when the journal does not exist.
+     */
+    @Test
+    public void testNotInitializedWithoutJournal() {
+        assertFalse(index.isInitialized());
+        index.add("u1", "esco:admin");
+        assertEquals(Collections.emptySet(), index.getManagedGroups("u1"));
+        assertFalse(journal.exists());
+    }
+
+    /**
+     * A journal with an invalid header is not used.
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidHeader() throws Exception {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(journal), ENCODING);
+        writer.write("not an index\n+\tu1\tesco:admin\n");
+        writer.close();
+        reopen();
+        assertFalse(index.isInitialized());
+        assertEquals(0, index.countMemberships());
+    }
+
+    /**
+     * The updates appended to the journal are replayed when the index is opened again.
+     * @throws Exception
+     */
+    @Test
+    public void testReplay() throws Exception {
+        index.rebuild(Collections.singletonMap("u1", groups("esco:admin")));
+        assertTrue(index.isInitialized());
+
+        index.add("u1", "esco:profs");
+        index.add("u2", "esco:profs");
+        index.add("u2", "esco:eleves");
+        index.remove("u1", "esco:admin");
+        // Already indexed or not indexed: nothing is appended.
+        index.add("u2", "esco:eleves");
+        index.remove("u3", "esco:admin");
+        reopen();
+
+        assertTrue(index.isInitialized());
+        assertEquals(groups("esco:profs"), index.getManagedGroups("u1"));
+        assertEquals(groups("esco:profs", "esco:eleves"), index.getManagedGroups("u2"));
+        assertEquals(3, index.countMemberships());
+        assertEquals(2, index.countGroups());
+    }
+
+    /**
+     * The groups without any member are not counted anymore.
+     */
+    @Test
+    public void testRemoveAll() {
+        final Map<String, Set<String>> memberships = new HashMap<String, Set<String>>();
+        memberships.put("u1", groups("esco:admin", "esco:profs"));
+        memberships.put("u2", groups("esco:profs"));
+        index.rebuild(memberships);
+        assertEquals(2, index.countGroups());
+
+        index.removeAll("u1");
+        assertEquals(Collections.emptySet(), index.getManagedGroups("u1"));
+        assertEquals(1, index.countMemberships());
+        assertEquals(1, index.countGroups());
+
+        index.add("u1", "esco:direction");
+        assertEquals(groups("esco:direction"), index.getManagedGroups("u1"));
+        assertEquals(groups("esco:profs"), index.getManagedGroups("u2"));
+    }
+
+    /**
+     * The journal is compacted when it becomes too large compared to the indexed memberships.
+     * @throws Exception
+     */
+    @Test
+    public void testCompaction() throws Exception {
+        index.rebuild(Collections.singletonMap("u1", groups("esco:admin")));
+        assertEquals(1, countJournalLines());
+
+        for (int i = 0; i < 10; i++) {
+            index.add("u2", "esco:profs");
+            index.remove("u2", "esco:profs");
+        }
+        index.add("u2", "esco:eleves");
+        // At most minCompactionLines or compactionRatio lines by membership.
+        assertTrue(countJournalLines() <= 4);
+
+        reopen();
+        assertEquals(groups("esco:admin"), index.getManagedGroups("u1"));
+        assertEquals(groups("esco:eleves"), index.getManagedGroups("u2"));
+        assertEquals(2, index.countMemberships());
+    }
+
+    /**
+     * A rebuild replaces the content of the index and of the journal.
+     * @throws Exception
+     */
+    @Test
+    public void testRebuild() throws Exception {
+        index.rebuild(Collections.singletonMap("u1", groups("esco:admin")));
+        index.add("u2", "esco:profs");
+        index.rebuild(Collections.singletonMap("u3", groups("esco:eleves")));
+        assertEquals(1, countJournalLines());
+
+        reopen();
+        assertEquals(Collections.emptySet(), index.getManagedGroups("u1"));
+        assertEquals(Collections.emptySet(), index.getManagedGroups("u2"));
+        assertEquals(groups("esco:eleves"), index.getManagedGroups("u3"));
+    }
+}
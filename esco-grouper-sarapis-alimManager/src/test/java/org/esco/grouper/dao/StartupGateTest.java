@@ -0,0 +1,187 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.esco.grouper.exceptions.EscoGrouperException;
+import org.junit.Test;
+
+/**
+ * Tests of the startup gate.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class StartupGateTest {
+
+    /** Timeout of the waits, in milliseconds. */
+    private static final long TIMEOUT = 5000;
+
+    /**
+     * Starts a thread which waits for a path.
+     * @param gate The gate.
+     * @param path The path.
+     * @param done Latch counted down once the wait is over.
+     * @param error The error of the wait, if any.
+     * @return The thread.
+     */
+    private static Thread await(final StartupGate gate, final String path,
+            final CountDownLatch done, final AtomicReference<EscoGrouperException> error) {
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    gate.await(path);
+                } catch (EscoGrouperException e) {
+                    error.set(e);
+                }
+                done.countDown();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * An open gate never blocks.
+     */
+    @Test
+    public void testOpenByDefault() {
+        final StartupGate gate = new StartupGate();
+        assertTrue(gate.isOpen());
+        gate.await("esco:etablissements:0450000A");
+    }
+
+    /**
+     * A closed gate without any path stays open.
+     */
+    @Test
+    public void testCloseWithoutPaths() {
+        final StartupGate gate = new StartupGate();
+        gate.close(Arrays.<String>asList(), Thread.currentThread());
+        assertTrue(gate.isOpen());
+    }
+
+    /**
+     * A path waits for its containing folders, the other subtrees are not blocked.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testAwaitContainingFolder() throws InterruptedException {
+        final StartupGate gate = new StartupGate();
+        gate.close(Arrays.asList("esco", "esco:admin"), new Thread());
+        assertFalse(gate.isOpen());
+
+        final CountDownLatch otherDone = new CountDownLatch(1);
+        final AtomicReference<EscoGrouperException> otherError = new AtomicReference<EscoGrouperException>();
+        await(gate, "cfa:etablissements", otherDone, otherError);
+        assertTrue(otherDone.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<EscoGrouperException> error = new AtomicReference<EscoGrouperException>();
+        await(gate, "esco:admin:central", done, error);
+        gate.release("esco");
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        gate.release("esco:admin");
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNull(error.get());
+        assertNull(otherError.get());
+    }
+
+    /**
+     * The startup thread itself never waits.
+     */
+    @Test
+    public void testOwnerDoesNotWait() {
+        final StartupGate gate = new StartupGate();
+        gate.close(Arrays.asList("esco"), Thread.currentThread());
+        gate.await("esco:admin");
+    }
+
+    /**
+     * The callers of a failed path, or of a path in a failed folder, fail.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testFailedPath() throws InterruptedException {
+        final StartupGate gate = new StartupGate();
+        gate.close(Arrays.asList("esco", "esco:admin"), new Thread());
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<EscoGrouperException> error = new AtomicReference<EscoGrouperException>();
+        await(gate, "esco:admin:central", done, error);
+        gate.fail("esco", "Unable to create esco.");
+        gate.release("esco:admin");
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("Unable to create esco.", error.get().getMessage());
+
+        gate.open();
+        try {
+            gate.await("esco:other");
+            fail("The failure of the containing folder should be reported once the gate is open.");
+        } catch (EscoGrouperException e) {
+            assertEquals("Unable to create esco.", e.getMessage());
+        }
+        gate.await("cfa");
+    }
+
+    /**
+     * Failing all the paths releases all the waiting callers.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testFailAll() throws InterruptedException {
+        final StartupGate gate = new StartupGate();
+        gate.close(Arrays.asList("esco", "cfa"), new Thread());
+
+        final CountDownLatch done = new CountDownLatch(2);
+        final AtomicReference<EscoGrouperException> escoError = new AtomicReference<EscoGrouperException>();
+        final AtomicReference<EscoGrouperException> cfaError = new AtomicReference<EscoGrouperException>();
+        await(gate, "esco:admin", done, escoError);
+        await(gate, "cfa:admin", done, cfaError);
+        gate.failAll("Startup checks interrupted.");
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("Startup checks interrupted.", escoError.get().getMessage());
+        assertEquals("Startup checks interrupted.", cfaError.get().getMessage());
+    }
+
+    /**
+     * Opening the gate releases the paths not released yet.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testOpen() throws InterruptedException {
+        final StartupGate gate = new StartupGate();
+        gate.close(Arrays.asList("esco"), new Thread());
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<EscoGrouperException> error = new AtomicReference<EscoGrouperException>();
+        await(gate, "esco:admin", done, error);
+        gate.open();
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNull(error.get());
+        assertTrue(gate.isOpen());
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.esco.grouper.domain.beans.GrouperOperationResultDTO;
+import org.esco.grouper.exceptions.EscoGrouperException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the asynchronous group service: coalescing of the requests of a user.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class AsyncSarapisGroupServiceTest {
+
+    /** Timeout of the waits, in milliseconds. */
+    private static final long TIMEOUT = 5000;
+
+    /** Id of the user whose request blocks the worker. */
+    private static final String BLOCKING_USER = "blocking";
+
+    /** The operations applied by the group service. */
+    private final List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+
+    /** Latch counted down when the request of the blocking user starts. */
+    private final CountDownLatch blockingStarted = new CountDownLatch(1);
+
+    /** Latch which releases the request of the blocking user. */
+    private final CountDownLatch blockingReleased = new CountDownLatch(1);
+
+    /** The service under test. */
+    private AsyncSarapisGroupService service;
+
+    /**
+     * Starts the service with one worker and a group service which records the operations.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        service = new AsyncSarapisGroupService();
+        service.setGroupService(recordingGroupService());
+        service.afterPropertiesSet();
+    }
+
+    /**
+     * Stops the service.
+     */
+    @After
+    public void tearDown() {
+        blockingReleased.countDown();
+        service.stop();
+    }
+
+    /**
+     * Builds a group service which records the updates and the removals.
+     * The update of the blocking user waits until it is released.
+     * @return The group service.
+     */
+    private ISarapisGroupService recordingGroupService() {
+        return (ISarapisGroupService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ISarapisGroupService.class}, new InvocationHandler() {
+                    public Object invoke(final Object proxy, final Method method, final Object[] args)
+                        throws InterruptedException {
+                        if ("updateMemberships".equals(method.getName())) {
+                            final IEntityDescription description = (IEntityDescription) args[0];
+                            if (BLOCKING_USER.equals(description.getId())) {
+                                blockingStarted.countDown();
+                                blockingReleased.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                            }
+                            applied.add("update " + description.getId() + " " + description.getAttributeValue(0));
+                            return GrouperOperationResultDTO.RESULT_OK;
+                        }
+                        if ("removeFromManagedGroups".equals(method.getName())) {
+                            applied.add("remove " + args[0]);
+                            return GrouperOperationResultDTO.RESULT_OK;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Builds the description of a person.
+     * @param id The id of the person.
+     * @param value The value of the first attribute.
+     * @return The description.
+     */
+    private static IEntityDescription person(final String id, final String value) {
+        final IEntityDescription person = new EntityDescriptionImpl(id);
+        person.setAttributeValue(0, value);
+        return person;
+    }
+
+    /**
+     * Blocks the worker with the request of the blocking user.
+     * @return The future of the blocking request.
+     * @throws InterruptedException
+     */
+    private Future<GrouperOperationResultDTO> blockWorker() throws InterruptedException {
+        final Future<GrouperOperationResultDTO> future = service.updateMemberships(person(BLOCKING_USER, "0"));
+        assertTrue(blockingStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        return future;
+    }
+
+    /**
+     * The pending request of a user is replaced by the latest one.
+     * @throws Exception
+     */
+    @Test
+    public void testCoalescing() throws Exception {
+        final Future<GrouperOperationResultDTO> blocking = blockWorker();
+
+        final Future<GrouperOperationResultDTO> first = service.updateMemberships(person("u1", "A"));
+        final Future<GrouperOperationResultDTO> second = service.updateMemberships(person("u1", "B"));
+        final Future<GrouperOperationResultDTO> other = service.updateMemberships(person("u2", "C"));
+        assertSame(first, second);
+        assertEquals(2, service.countPending());
+
+        blockingReleased.countDown();
+        assertSame(GrouperOperationResultDTO.RESULT_OK, blocking.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertSame(GrouperOperationResultDTO.RESULT_OK, first.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertSame(GrouperOperationResultDTO.RESULT_OK, other.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList("update blocking 0", "update u1 B", "update u2 C"), applied);
+        assertEquals(0, service.countPending());
+    }
+
+    /**
+     * A removal replaces the pending update of the user, and conversely.
+     * @throws Exception
+     */
+    @Test
+    public void testRemovalCoalescing() throws Exception {
+        blockWorker();
+
+        final Future<GrouperOperationResultDTO> update = service.updateMemberships(person("u1", "A"));
+        assertSame(update, service.removeFromManagedGroups("u1"));
+        final Future<GrouperOperationResultDTO> removal = service.removeFromManagedGroups("u2");
+        assertSame(removal, service.updateMemberships(person("u2", "B")));
+
+        blockingReleased.countDown();
+        update.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        removal.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("update blocking 0", "remove u1", "update u2 B"), applied);
+    }
+
+    /**
+     * A request started can't be replaced anymore: the next request is applied after it.
+     * @throws Exception
+     */
+    @Test
+    public void testStartedRequestNotReplaced() throws Exception {
+        final Future<GrouperOperationResultDTO> blocking = blockWorker();
+        final Future<GrouperOperationResultDTO> next = service.updateMemberships(person(BLOCKING_USER, "1"));
+        assertTrue(blocking != next);
+
+        blockingReleased.countDown();
+        next.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("update blocking 0", "update blocking 1"), applied);
+    }
+
+    /**
+     * The pending requests are applied when the service stops, then the requests are refused.
+     * @throws Exception
+     */
+    @Test
+    public void testStop() throws Exception {
+        blockWorker();
+        final Future<GrouperOperationResultDTO> pending = service.updateMemberships(person("u1", "A"));
+
+        blockingReleased.countDown();
+        service.stop();
+        assertTrue(pending.isDone());
+        assertEquals(Arrays.asList("update blocking 0", "update u1 A"), applied);
+        try {
+            service.updateMemberships(person("u2", "B"));
+            fail("The requests should be refused once the service is stopped.");
+        } catch (EscoGrouperException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Several workers need a sharding template element.
+     * @throws Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSeveralWorkersWithoutSharding() throws Exception {
+        final AsyncSarapisGroupService sharded = new AsyncSarapisGroupService();
+        sharded.setGroupService(recordingGroupService());
+        sharded.setWorkers(2);
+        sharded.afterPropertiesSet();
+    }
+}
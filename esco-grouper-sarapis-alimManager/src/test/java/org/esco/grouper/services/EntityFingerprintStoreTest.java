@@ -0,0 +1,168 @@
+/**
+ * Copyright © 2008 GIP-RECIA (https://www.recia.fr/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.esco.grouper.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.esco.grouper.domain.beans.PersonType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the store of the entities fingerprints.
+ * @author GIP RECIA
+ * 17 October 2026
+ *
+ */
+public class EntityFingerprintStoreTest {
+
+    /** Hash of the definitions used by the tests. */
+    private static final String DEFINITIONS_HASH = "0123456789abcdef";
+
+    /** Folder of the store files. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** The store file. */
+    private File file;
+
+    /**
+     * Initializes the path of the store file.
+     */
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "fingerprints.txt");
+    }
+
+    /**
+     * Opens a store on the store file.
+     * @param definitionsHash The hash of the definitions.
+     * @return The store.
+     * @throws Exception
+     */
+    private EntityFingerprintStore open(final String definitionsHash) throws Exception {
+        final EntityFingerprintStore store = new EntityFingerprintStore();
+        store.setStoreFile(file.getPath());
+        store.afterPropertiesSet();
+        store.load(definitionsHash);
+        return store;
+    }
+
+    /**
+     * Builds the description of an entity.
+     * @param id The id of the entity.
+     * @param type The type of the entity.
+     * @param values The values of the attributes.
+     * @return The description.
+     */
+    private static IEntityDescription entity(final String id, final PersonType type, final String...values) {
+        final IEntityDescription entity = new EntityDescriptionImpl(id);
+        entity.setType(type);
+        for (int i = 0; i < values.length; i++) {
+            entity.setAttributeValue(i, values[i]);
+        }
+        return entity;
+    }
+
+    /**
+     * The fingerprint depends on the type and on all the values, with their boundaries.
+     */
+    @Test
+    public void testFingerprint() {
+        final long fingerprint = EntityFingerprintStore.fingerprint(
+                entity("u1", PersonType.TEACHER, "0450000A", "Maths"));
+        assertEquals(fingerprint, EntityFingerprintStore.fingerprint(
+                entity("u2", PersonType.TEACHER, "0450000A", "Maths")));
+        assertTrue(fingerprint != EntityFingerprintStore.fingerprint(
+                entity("u1", PersonType.STUDENT, "0450000A", "Maths")));
+        assertTrue(fingerprint != EntityFingerprintStore.fingerprint(
+                entity("u1", PersonType.TEACHER, "0450000B", "Maths")));
+        assertTrue(fingerprint != EntityFingerprintStore.fingerprint(
+                entity("u1", PersonType.TEACHER, "0450000AMaths")));
+    }
+
+    /**
+     * Only the entities unchanged since their last update are skipped.
+     * @throws Exception
+     */
+    @Test
+    public void testIsUnchanged() throws Exception {
+        final EntityFingerprintStore store = open(DEFINITIONS_HASH);
+        final IEntityDescription entity = entity("u1", PersonType.TEACHER, "0450000A");
+        assertFalse(store.isUnchanged(entity));
+
+        store.update(entity);
+        assertTrue(store.isUnchanged(entity));
+        assertFalse(store.isUnchanged(entity("u1", PersonType.TEACHER, "0450000B")));
+
+        store.remove("u1");
+        assertFalse(store.isUnchanged(entity));
+        assertEquals(4, store.getChecked());
+        assertEquals(1, store.getSkipped());
+    }
+
+    /**
+     * The fingerprints are written and loaded again for the same definitions.
+     * @throws Exception
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        final EntityFingerprintStore store = open(DEFINITIONS_HASH);
+        final IEntityDescription teacher = entity("u1", PersonType.TEACHER, "0450000A");
+        final IEntityDescription student = entity("id with\tseparator", PersonType.STUDENT, "0450000B");
+        store.update(teacher);
+        store.update(student);
+        store.save();
+
+        final EntityFingerprintStore loaded = open(DEFINITIONS_HASH);
+        assertEquals(2, loaded.getFingerprintsCount());
+        assertTrue(loaded.isUnchanged(teacher));
+        assertTrue(loaded.isUnchanged(student));
+    }
+
+    /**
+     * The fingerprints are discarded when the definitions have changed.
+     * @throws Exception
+     */
+    @Test
+    public void testDefinitionsChanged() throws Exception {
+        final EntityFingerprintStore store = open(DEFINITIONS_HASH);
+        final IEntityDescription entity = entity("u1", PersonType.TEACHER, "0450000A");
+        store.update(entity);
+        store.save();
+
+        final EntityFingerprintStore loaded = open("fedcba9876543210");
+        assertEquals(0, loaded.getFingerprintsCount());
+        assertFalse(loaded.isUnchanged(entity));
+    }
+
+    /**
+     * The store is not written when nothing has changed.
+     * @throws Exception
+     */
+    @Test
+    public void testNotWrittenIfUnchanged() throws Exception {
+        final EntityFingerprintStore store = open(DEFINITIONS_HASH);
+        store.save();
+        assertFalse(file.exists());
+    }
+}
@@ -16,10 +16,13 @@
 package org.esco.grouper.subject.provider;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -53,6 +56,9 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
 
 	private static Log log = LogFactory.getLog(LdapSourceAdapter.class);
 
+	/** Default number of ids searched by one LDAP request in getSubjectsByIds. */
+	private static final int DEFAULT_IDS_CHUNK_SIZE = 100;
+
 	private String nameAttributeName = null;
 	private String subjectIDAttributeName = null;
 	private String descriptionAttributeName = null;
@@ -230,6 +236,110 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
 		return this.getSubjectByIdentifier(id, true);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * The ids are searched by chunks, with one LDAP request by chunk, when the searchType
+	 * "searchSubjectsByIds" is defined: its "termfilter" (e.g. (uid=%TERM%)) is applied to each id
+	 * of a chunk, the terms are combined in an OR filter (|(uid=a)(uid=b)...) which replaces
+	 * %TERMS% in its "filter", and its optional "chunkSize" gives the number of ids by request.
+	 * Otherwise, the subjects are searched one by one.
+	 * The ids which can't be found are not in the result.
+	 */
+	@Override
+	public Map<String, Subject> getSubjectsByIds(Collection<String> ids) {
+		Search search = getLocalSearch("searchSubjectsByIds");
+		if (search == null) {
+			log.debug("searchType: \"searchSubjectsByIds\" not defined, the subjects are searched one by one.");
+			return super.getSubjectsByIds(ids);
+		}
+		Map<String, Subject> result = new HashMap<String, Subject>();
+		String filter = search.getParam("filter");
+		String termFilter = search.getParam("termfilter");
+		if (filter == null || termFilter == null) {
+			log.error("Search filter or termfilter not found for search type:  " + search.getSearchType());
+			return result;
+		}
+		filter = filter.trim();
+		termFilter = termFilter.trim();
+		int chunkSize = DEFAULT_IDS_CHUNK_SIZE;
+		String chunkSizeParam = search.getParam("chunkSize");
+		if (chunkSizeParam != null) {
+			try {
+				chunkSize = Integer.parseInt(chunkSizeParam.trim());
+			} catch (NumberFormatException e) {
+				log.error("Invalid chunkSize for search type: " + search.getSearchType() + " - " + chunkSizeParam);
+			}
+			if (chunkSize < 1) {
+				chunkSize = DEFAULT_IDS_CHUNK_SIZE;
+			}
+		}
+
+		// The subject ids are lower cased by createSubject: the results are mapped back to the given ids,
+		// several given ids may differ only by their case.
+		Map<String, List<String>> requestedIds = new HashMap<String, List<String>>();
+		for (String id : ids) {
+			List<String> sameIds = requestedIds.get(id.toLowerCase());
+			if (sameIds == null) {
+				sameIds = new ArrayList<String>(1);
+				requestedIds.put(id.toLowerCase(), sameIds);
+			}
+			if (!sameIds.contains(id)) {
+				sameIds.add(id);
+			}
+		}
+		List<String> chunk = new ArrayList<String>(chunkSize);
+		for (List<String> sameIds : requestedIds.values()) {
+			chunk.add(sameIds.get(0));
+			if (chunk.size() == chunkSize) {
+				getSubjectsChunk(search, filter, termFilter, chunk, requestedIds, result);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			getSubjectsChunk(search, filter, termFilter, chunk, requestedIds, result);
+		}
+		log.debug("getSubjectsByIds: " + result.size() + " subject(s) found for " + requestedIds.size() + " id(s)");
+		return result;
+	}
+
+	/**
+	 * Searches a chunk of subjects with one LDAP request.
+	 * @param search The search.
+	 * @param filter The filter, with the %TERMS% placeholder.
+	 * @param termFilter The filter of one id, with the %TERM% placeholder.
+	 * @param ids The ids of the chunk.
+	 * @param requestedIds The requested ids, by lower cased id.
+	 * @param result The found subjects, by requested id.
+	 */
+	protected void getSubjectsChunk(Search search, String filter, String termFilter, List<String> ids,
+			Map<String, List<String>> requestedIds, Map<String, Subject> result) {
+		StringBuilder terms = new StringBuilder("(|");
+		for (String id : ids) {
+			terms.append(termFilter.replace("%TERM%", escapeSearchFilter(id)));
+		}
+		terms.append(")");
+		Iterator<SearchResult> ldapResults = searchLdap(search, filter.replace("%TERMS%", terms), allAttributeNames);
+		if (ldapResults == null) {
+			return;
+		}
+		while (ldapResults.hasNext()) {
+			SearchResult si = ldapResults.next();
+			Subject subject = createSubject(si.getAttributes());
+			if (subject != null) {
+				List<String> sameIds = requestedIds.get(subject.getId());
+				if (sameIds == null) {
+					log.debug("Unexpected subject in the results: " + subject.getId());
+				} else if (!result.containsKey(sameIds.get(0))) {
+					for (String requestedId : sameIds) {
+						result.put(requestedId, subject);
+					}
+				} else if (!multipleResults) {
+					log.error("Search is not unique for the id: " + sameIds.get(0));
+				}
+			}
+		}
+	}
+
 	protected void setLocalSearches(HashMap<String, Search> searches1) {
 		this.localSearches = searches1;
 	}
@@ -397,14 +507,11 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
 	}
 
 	protected Iterator<SearchResult> getLdapResults(Search search, String searchValue, String[] attributeNames) {
-		Ldap ldap = null;
 		String filter = null;
 		Iterator<SearchResult> results = null;
 		int cp;
 		String aff = null;
 
-		if (!initialized) initializeLdap();
-
 		if ((cp=searchValue.indexOf(',')) >0 ) {
 			int lb, rb;
 			if ( (lb=searchValue.indexOf('['))>cp && (rb=searchValue.indexOf(']'))>lb ) {
@@ -434,6 +541,22 @@ public class LdapSourceAdapter extends BaseSourceAdapter {
 			}
 			filter = filter.replaceAll("%TERM%", escapeSearchFilter(searchValue));
 		}
+		return searchLdap(search, filter, attributeNames);
+	}
+
+	/**
+	 * Performs an LDAP search with a pooled connection.
+	 * @param search The search (used for the logs).
+	 * @param filter The LDAP filter.
+	 * @param attributeNames The attributes to retrieve.
+	 * @return The results, null if the search has failed.
+	 */
+	protected Iterator<SearchResult> searchLdap(Search search, String filter, String[] attributeNames) {
+		Ldap ldap = null;
+		Iterator<SearchResult> results = null;
+
+		if (!initialized) initializeLdap();
+
 		log.debug("searchType: " + search.getSearchType() + " filter: " + filter);
 
 		try  {